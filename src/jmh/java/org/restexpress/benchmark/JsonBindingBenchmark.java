@@ -0,0 +1,92 @@
+package org.restexpress.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restexpress.util.SerializeUtil;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * application/json方式注入复杂参数:每次调用创建ObjectMapper(原来SerializeUtil.get()的行为) vs 按JavaType缓存的共享ObjectReader。
+ * 每次操作分配的字节数用 -prof gc 查看(gc.alloc.rate.norm)
+ * @author hanst
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBindingBenchmark {
+	private static final byte[] JSON = ("{\"id\":42,\"name\":\"restexpress\",\"created\":\"2016-10-18 10:30:00\","
+			+ "\"tags\":[\"netty\",\"spring\",\"jackson\"],\"unknown\":true}").getBytes();
+
+	private final SimpleDateFormat sharedSdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	private JavaType type;
+	private ByteBuf heapBody;
+	private ByteBuf directBody;
+
+	public static class Order {
+		public Long id;
+		public String name;
+		public Date created;
+		public List<String> tags;
+	}
+
+	@Setup
+	public void setup() {
+		type = TypeFactory.defaultInstance().constructType(Order.class);
+		SerializeUtil.reader(type);
+		heapBody = Unpooled.wrappedBuffer(JSON);
+		directBody = Unpooled.directBuffer(JSON.length).writeBytes(JSON);
+	}
+
+	@TearDown
+	public void tearDown() {
+		heapBody.release();
+		directBody.release();
+	}
+
+	//原来的实现:每次调用都new一个ThreadLocal,等于每个请求创建并配置一个ObjectMapper,再从ByteBufInputStream读
+	@Benchmark
+	public Object mapperPerRequest() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		mapper.setDateFormat(sharedSdf);
+		mapper.setTimeZone(TimeZone.getDefault());
+		return mapper.readValue(new ByteBufInputStream(heapBody.duplicate()), type);
+	}
+
+	@Benchmark
+	public Object sharedReaderHeap() throws Exception {
+		return SerializeUtil.readValue(heapBody, type);
+	}
+
+	@Benchmark
+	public Object sharedReaderDirect() throws Exception {
+		return SerializeUtil.readValue(directBody, type);
+	}
+}
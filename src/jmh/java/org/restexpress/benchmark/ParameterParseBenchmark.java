@@ -0,0 +1,97 @@
+package org.restexpress.benchmark;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.intf.impl.ActionParameterPlan;
+import org.restexpress.intf.impl.SpringMVCHttpRequestParameterParseImpl;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * SpringMVCHttpRequestParameterParseImpl.parse:预编译的参数绑定计划 vs 每个请求都重新反射(原来的实现),
+ * 以及表单提交(body直接在ByteBuf上解析,只解码绑定的参数,同名参数绑定到数组)
+ * @author hanst
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterParseBenchmark {
+	private SpringMVCHttpRequestParameterParseImpl parser;
+	private ActionParameterPlan plan;
+	private Method action;
+	private Request request;
+	private Response response;
+	private ActionParameterPlan formPlan;
+	private FullHttpRequest formRequest;
+
+	public static class SampleController {
+		public Object find(Request request, Response response, @RequestParam Long id,
+				@RequestParam String name, @RequestParam(required = false) Integer page) {
+			return null;
+		}
+
+		public Object save(Request request, Response response, @RequestParam Long id,
+				@RequestParam String name, @RequestParam String[] tag) {
+			return null;
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		parser = new SpringMVCHttpRequestParameterParseImpl();
+		action = SampleController.class.getMethod("find", Request.class, Response.class,
+				Long.class, String.class, Integer.class);
+		plan = parser.plan(action);
+		request = new Request(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+				"/sample/find.json?id=42&name=restexpress&page=3"), null);
+		response = new Response();
+
+		formPlan = parser.plan(SampleController.class.getMethod("save", Request.class, Response.class,
+				Long.class, String.class, String[].class));
+		formRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/sample/save.json",
+				Unpooled.copiedBuffer("id=42&name=rest%20express&tag=netty&tag=spring&tag=jackson"
+						+ "&remark=%E4%B8%AD%E6%96%87&a=1&b=2&c=3&d=4&e=5", CharsetUtil.UTF_8));
+		formRequest.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/x-www-form-urlencoded");
+	}
+
+	@Benchmark
+	public Object[] compiledPlan() throws Exception {
+		return parser.parse(plan, request, response);
+	}
+
+	//每次新建Request,body重新解析
+	@Benchmark
+	public Object[] formPost() throws Exception {
+		return parser.parse(formPlan, new Request((FullHttpRequest) formRequest.duplicate(), null), response);
+	}
+
+	//原来的实现:每个请求都获取参数名,clone参数类型和注解数组
+	@Benchmark
+	public Object[] reflectPerRequest() throws Exception {
+		return parser.parse(ActionParameterPlan.compile(action), request, response);
+	}
+}
@@ -0,0 +1,66 @@
+package org.restexpress.benchmark;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restexpress.Request;
+
+/**
+ * Request的创建和常见的访问:不读参数的接口,按名字取一个查询参数,以及读取整个getQueryStringMap。
+ * 每次新建FullHttpRequest(以前的实现会把查询参数加到它的header里),
+ * 用-prof gc(benchmark profile默认开启)的gc.alloc.rate.norm比较每个请求分配的字节数
+ * @author hanst
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+	private static final String URL = "/api/orders/42.json?page=3&size=20&sort=created&tag=a&tag=b&q=rest%20express";
+
+	private static FullHttpRequest httpRequest(HttpMethod method) {
+		FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, URL, Unpooled.EMPTY_BUFFER);
+		request.headers().set(HttpHeaders.Names.HOST, "localhost");
+		request.headers().set(HttpHeaders.Names.ACCEPT, "application/json");
+		return request;
+	}
+
+	@Benchmark
+	public HttpMethod untouchedQuery() {
+		return new Request(httpRequest(HttpMethod.GET), null, null).getEffectiveHttpMethod();
+	}
+
+	@Benchmark
+	public HttpMethod untouchedQueryPost() {
+		return new Request(httpRequest(HttpMethod.POST), null, null).getEffectiveHttpMethod();
+	}
+
+	@Benchmark
+	public String singleParameter() {
+		return new Request(httpRequest(HttpMethod.GET), null, null).getHeader("q");
+	}
+
+	@Benchmark
+	public Map<String, String> queryStringMap() {
+		return new Request(httpRequest(HttpMethod.GET), null, null).getQueryStringMap();
+	}
+}
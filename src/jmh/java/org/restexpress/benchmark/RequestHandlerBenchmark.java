@@ -0,0 +1,117 @@
+package org.restexpress.benchmark;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.intf.impl.LocalLeaseDistributeLock;
+import org.restexpress.intf.impl.SpringMVCHttpRequestParameterParseImpl;
+import org.restexpress.pipeline.DefaultRequestHandler;
+import org.restexpress.response.DefaultHttpResponseWriter;
+import org.restexpress.route.RouteDependencies;
+import org.restexpress.route.RouteMapping;
+import org.restexpress.route.RouteResolver;
+import org.restexpress.route.parameterized.ParameterizedRoute;
+import org.restexpress.serialization.DefaultSerializationProvider;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * 完整的请求处理:DefaultRequestHandler.channelRead0在EmbeddedChannel上从请求到写出响应,
+ * 包括路由,参数绑定,action调用和JSON/XML序列化,不包括http编解码和网络IO
+ * @author hanst
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestHandlerBenchmark {
+	private EmbeddedChannel channel;
+
+	public static class Order {
+		public Long id;
+		public String name;
+		public Date created;
+		public List<String> tags;
+	}
+
+	public static class OrderController {
+		public Object find(Request request, Response response, @RequestParam Long id) {
+			Order order = new Order();
+			order.id = id;
+			order.name = "restexpress";
+			order.created = new Date();
+			order.tags = Arrays.asList("netty", "spring", "jackson");
+			return order;
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		Method action = OrderController.class.getMethod("find", Request.class, Response.class, Long.class);
+		ParameterizedRoute route = new ParameterizedRoute("/api/orders/{id}.{format}", new OrderController(), action,
+				HttpMethod.GET, true, null, Arrays.asList("json", "xml"), "json",
+				Collections.<String> emptySet(), Collections.<String, Object> emptyMap(), null);
+		//不启动spring容器,直接绑定路由依赖的服务
+		route.setDependencies(new RouteDependencies(new SpringMVCHttpRequestParameterParseImpl(),
+				LocalLeaseDistributeLock.getDefault()));
+		RouteMapping mapping = new RouteMapping();
+		mapping.addRoute(route);
+		DefaultRequestHandler handler = new DefaultRequestHandler(new RouteResolver(mapping),
+				new DefaultSerializationProvider(), new DefaultHttpResponseWriter(), true);
+		channel = new EmbeddedChannel(handler);
+	}
+
+	@TearDown
+	public void tearDown() {
+		channel.finish();
+	}
+
+	@Benchmark
+	public Object json() {
+		return roundTrip("/api/orders/42.json");
+	}
+
+	@Benchmark
+	public Object xml() {
+		return roundTrip("/api/orders/42.xml");
+	}
+
+	@Benchmark
+	public Object notFound() {
+		return roundTrip("/api/customers/42.json");
+	}
+
+	private Object roundTrip(String uri) {
+		channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri));
+		//和真实的读循环一样,读完一批后由channelReadComplete flush
+		channel.pipeline().fireChannelReadComplete();
+		Object response = channel.readOutbound();
+		ReferenceCountUtil.release(response);
+		return response;
+	}
+}
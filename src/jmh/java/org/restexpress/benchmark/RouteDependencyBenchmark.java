@@ -0,0 +1,83 @@
+package org.restexpress.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.restexpress.intf.DistributeLock;
+import org.restexpress.intf.HttpRequestParameterParseIntf;
+import org.restexpress.intf.impl.SpringMVCHttpRequestParameterParseImpl;
+import org.restexpress.route.RouteDependencies;
+import org.springframework.context.support.StaticApplicationContext;
+
+/**
+ * Route.invoke里每个请求依赖的spring服务:按类型getBean(原来的实现) vs 绑定时解析好的RouteDependencies快照
+ * @author hanst
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteDependencyBenchmark {
+	//容器里的其它bean,按类型查找的时候都要遍历
+	private static final int OTHER_BEANS = 200;
+
+	private StaticApplicationContext ctx;
+	private RouteDependencies dependencies;
+
+	public static class NoopLock implements DistributeLock {
+		@Override
+		public boolean lock(String key, long expire) {
+			return true;
+		}
+
+		@Override
+		public void unlock(String key) {
+		}
+	}
+
+	public static class OtherService {
+	}
+
+	@Setup
+	public void setup() {
+		ctx = new StaticApplicationContext();
+		for (int i = 0; i < OTHER_BEANS; i++)
+			ctx.registerSingleton("service" + i, OtherService.class);
+		ctx.registerSingleton("parameterParser", SpringMVCHttpRequestParameterParseImpl.class);
+		ctx.registerSingleton("distributeLock", NoopLock.class);
+		ctx.refresh();
+		dependencies = RouteDependencies.resolve(ctx);
+	}
+
+	@TearDown
+	public void tearDown() {
+		ctx.close();
+	}
+
+	//原来的实现:带ticket的post每个请求按类型查找两次
+	@Benchmark
+	public void getBeanPerRequest(Blackhole bh) {
+		bh.consume(ctx.getBean(DistributeLock.class));
+		bh.consume(ctx.getBean(HttpRequestParameterParseIntf.class));
+	}
+
+	@Benchmark
+	public void routeSnapshot(Blackhole bh) {
+		bh.consume(dependencies.getDistributeLock());
+		bh.consume(dependencies.getParameterParser());
+	}
+}
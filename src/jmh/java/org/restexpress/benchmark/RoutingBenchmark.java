@@ -0,0 +1,86 @@
+package org.restexpress.benchmark;
+
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.route.Action;
+import org.restexpress.route.Route;
+import org.restexpress.route.RouteMapping;
+import org.restexpress.route.parameterized.ParameterizedRoute;
+import org.restexpress.url.UrlMatch;
+
+/**
+ * RouteMapping.getActionFor在10/100/1000个路由下的耗时,命中最后注册的路由(线性扫描的最坏情况)和不命中两种情况,
+ * linearScan是原来逐个路由正则匹配的实现,作为对比
+ * @author hanst
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+	@Param({ "10", "100", "1000" })
+	public int routes;
+
+	private RouteMapping mapping;
+	private String lastPath;
+	private String missPath;
+
+	public static class SampleController {
+		public Object read(Request request, Response response) {
+			return null;
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		Method action = SampleController.class.getMethod("read", Request.class, Response.class);
+		SampleController controller = new SampleController();
+		mapping = new RouteMapping();
+		for (int i = 0; i < routes; i++)
+			mapping.addRoute(new ParameterizedRoute("/api/resource" + i + "/{id}.{format}", controller, action,
+					HttpMethod.GET, true, null, Collections.<String> emptyList(), "json",
+					Collections.<String> emptySet(), Collections.<String, Object> emptyMap(), null));
+		lastPath = "/api/resource" + (routes - 1) + "/42.json";
+		missPath = "/api/unknown/42.json";
+	}
+
+	@Benchmark
+	public Action hitLast() {
+		return mapping.getActionFor(HttpMethod.GET, lastPath);
+	}
+
+	@Benchmark
+	public Action miss() {
+		return mapping.getActionFor(HttpMethod.GET, missPath);
+	}
+
+	@Benchmark
+	public Action linearScan() {
+		for (Route route : mapping.getRoutesFor(HttpMethod.GET)) {
+			UrlMatch match = route.match(lastPath);
+			if (match != null)
+				return new Action(route, match);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,115 @@
+package org.restexpress.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restexpress.serialization.ByteBufSerializer;
+import org.restexpress.serialization.SerializationProcessor;
+import org.restexpress.serialization.json.GsonJsonProcessor;
+import org.restexpress.serialization.json.JacksonJsonProcessor;
+import org.restexpress.serialization.xml.XstreamXmlProcessor;
+
+/**
+ * JacksonJsonProcessor,GsonJsonProcessor和XstreamXmlProcessor的序列化(ByteBuffer和写入池化的ByteBuf)和反序列化
+ * @author hanst
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+	@Param({ "jackson", "gson", "xstream" })
+	public String processor;
+
+	private SerializationProcessor serializer;
+	private Order order;
+	private ByteBuf serialized;
+
+	public static class Item {
+		public String sku;
+		public int quantity;
+		public double price;
+	}
+
+	public static class Order {
+		public Long id;
+		public String name;
+		public Date created;
+		public List<String> tags;
+		public List<Item> items;
+	}
+
+	@Setup
+	public void setup() {
+		if ("gson".equals(processor))
+			serializer = new GsonJsonProcessor();
+		else if ("xstream".equals(processor))
+			serializer = new XstreamXmlProcessor();
+		else
+			serializer = new JacksonJsonProcessor();
+
+		order = new Order();
+		order.id = 42L;
+		order.name = "restexpress";
+		order.created = new Date();
+		order.tags = Arrays.asList("netty", "spring", "jackson");
+		order.items = new ArrayList<Item>();
+		for (int i = 0; i < 10; i++) {
+			Item item = new Item();
+			item.sku = "SKU-" + i;
+			item.quantity = i + 1;
+			item.price = 9.99 * (i + 1);
+			order.items.add(item);
+		}
+		serialized = Unpooled.wrappedBuffer(serializer.serialize(order));
+	}
+
+	@TearDown
+	public void tearDown() {
+		serialized.release();
+	}
+
+	@Benchmark
+	public ByteBuffer serialize() {
+		return serializer.serialize(order);
+	}
+
+	@Benchmark
+	public int serializeToPooledBuf() {
+		ByteBuf out = PooledByteBufAllocator.DEFAULT.buffer();
+		try {
+			((ByteBufSerializer) serializer).serialize(order, out);
+			return out.readableBytes();
+		} finally {
+			out.release();
+		}
+	}
+
+	@Benchmark
+	public Object deserialize() {
+		return serializer.deserialize(serialized.duplicate(), Order.class);
+	}
+}
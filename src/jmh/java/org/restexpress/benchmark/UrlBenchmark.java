@@ -0,0 +1,56 @@
+package org.restexpress.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restexpress.url.QueryStringParser;
+import org.restexpress.url.UrlMatch;
+import org.restexpress.url.UrlPattern;
+
+/**
+ * 单个url的处理:UrlPattern.match(正则匹配加参数提取)和QueryStringParser解析查询参数
+ * @author hanst
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlBenchmark {
+	private static final String URL = "/api/orders/42/items/7.json?page=3&size=20&sort=created&tag=a&tag=b&q=rest%20express";
+
+	private UrlPattern pattern;
+
+	@Setup
+	public void setup() {
+		pattern = new UrlPattern("/api/orders/{orderId}/items/{itemId}.{format}");
+	}
+
+	@Benchmark
+	public UrlMatch urlPatternMatch() {
+		return pattern.match(URL);
+	}
+
+	@Benchmark
+	public boolean urlPatternMiss() {
+		return pattern.matches("/api/customers/42.json");
+	}
+
+	@Benchmark
+	public Map<String, List<String>> queryString() {
+		return new QueryStringParser(URL, true).getParameters();
+	}
+}
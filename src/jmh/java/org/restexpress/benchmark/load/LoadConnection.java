@@ -0,0 +1,95 @@
+package org.restexpress.benchmark.load;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.util.ArrayDeque;
+
+/**
+ * 压测客户端的一个keep-alive连接,同时保持pipeline个请求在途(http/1.1 pipelining),
+ * 响应按请求顺序返回,用队列里的发送时间计算延迟。只在连接的EventLoop线程里访问
+ * @author hanst
+ *
+ */
+public class LoadConnection extends SimpleChannelInboundHandler<FullHttpResponse> {
+	private final LoadGenerator generator;
+	private final int pipeline;
+	private final ArrayDeque<Long> inFlight = new ArrayDeque<Long>();
+	private long completed;
+	private long errors;
+	private ChannelHandlerContext ctx;
+
+	public LoadConnection(LoadGenerator generator, int pipeline) {
+		this.generator = generator;
+		this.pipeline = pipeline;
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+		for (int i = 0; i < pipeline; i++)
+			send();
+		ctx.flush();
+		super.channelActive(ctx);
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) throws Exception {
+		Long start = inFlight.poll();
+		if (start == null)
+			return;
+		if (generator.isRecording()) {
+			generator.getHistogram().record((System.nanoTime() - start) / 1000);
+			completed++;
+			if (response.getStatus().code() >= 400)
+				errors++;
+		}
+		if (generator.isRunning())
+			send();
+		else if (inFlight.isEmpty())
+			ctx.close();
+	}
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		ctx.flush();
+		super.channelReadComplete(ctx);
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+		errors++;
+		System.out.println("连接异常:" + cause);
+		ctx.close();
+	}
+
+	private void send() {
+		FullHttpRequest request;
+		if (generator.getBody() == null) {
+			request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, generator.getUri());
+		} else {
+			request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, generator.getUri(),
+					Unpooled.wrappedBuffer(generator.getBody()));
+			request.headers().set(HttpHeaders.Names.CONTENT_TYPE, generator.getContentType());
+			HttpHeaders.setContentLength(request, generator.getBody().length);
+		}
+		HttpHeaders.setHost(request, generator.getHost());
+		inFlight.add(System.nanoTime());
+		ctx.write(request);
+	}
+
+	public long getCompleted() {
+		return completed;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+}
@@ -0,0 +1,248 @@
+package org.restexpress.benchmark.load;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.restexpress.RestExpress;
+import org.restexpress.metrics.ConcurrentHistogram;
+import org.restexpress.util.Configuration;
+import org.restexpress.util.Environment;
+
+/**
+ * 进程内的压测工具:在回环地址上启动RestExpress(src/jmh/resources下的netty.properties和loadtest-context.xml,
+ * 带SampleController),用netty的http/1.1客户端按指定的连接数和pipelining深度压测,
+ * 输出HdrHistogram风格的延迟分布(p50/p99/p999)和每秒请求数。
+ * 不需要外部网络,修改ServerBootstrapFactory,channel handler factory或者线程池配置后可以在本机对比。
+ * <p/>
+ * 客户端是闭环的(收到响应才发下一个),排队造成的延迟会被低估(coordinated omission),对比不同版本的时候保持参数一致
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec@load -Dload.args="-c 64 -p 4 -d 30 -u /load/hello.json"
+ *
+ * -c     连接数,默认16
+ * -p     每个连接在途的请求数(pipelining),默认1
+ * -w     预热秒数,不记录,默认5
+ * -d     压测秒数,默认30
+ * -u     请求的uri,默认/load/hello.json
+ * -b     POST的body,指定后使用POST方法
+ * -ct    POST的Content-Type,默认application/json
+ * -t     客户端io线程数,默认2
+ * -port  服务端口,默认18081
+ * -workers 服务端业务线程数,默认netty.properties里的executorThreadCount
+ * </pre>
+ * 工作目录下的netty.properties会覆盖classpath里的配置,可以用来切换服务端的其它参数
+ * @author hanst
+ *
+ */
+public class LoadGenerator {
+	//最多记录1小时的延迟(微秒)
+	static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+
+	//所有连接共用,记录是线程安全的
+	private final ConcurrentHistogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS);
+
+	private int connections = 16;
+	private int pipeline = 1;
+	private int warmupSeconds = 5;
+	private int durationSeconds = 30;
+	private String uri = "/load/hello.json";
+	private byte[] body;
+	private String contentType = "application/json";
+	private int clientThreads = 2;
+	private int port = 18081;
+	private int workers = -1;
+	private String host;
+
+	private volatile boolean running;
+	private volatile boolean recording;
+
+	public static void main(String[] args) throws Exception {
+		LoadGenerator generator = new LoadGenerator();
+		generator.parse(args);
+		generator.run();
+		//RestExpress的I/O线程不是daemon线程
+		System.exit(0);
+	}
+
+	private void parse(String[] args) {
+		//exec插件把-Dload.args作为一个参数传进来,按空白重新切分
+		StringBuilder joined = new StringBuilder();
+		for (String arg : args)
+			joined.append(arg).append(' ');
+		String[] options = joined.toString().trim().split("\\s+");
+		for (int i = 0; i + 1 < options.length; i += 2) {
+			String name = options[i];
+			String value = options[i + 1];
+			if ("-c".equals(name))
+				connections = Integer.parseInt(value);
+			else if ("-p".equals(name))
+				pipeline = Integer.parseInt(value);
+			else if ("-w".equals(name))
+				warmupSeconds = Integer.parseInt(value);
+			else if ("-d".equals(name))
+				durationSeconds = Integer.parseInt(value);
+			else if ("-u".equals(name))
+				uri = value;
+			else if ("-b".equals(name))
+				body = value.getBytes(Charset.forName("UTF-8"));
+			else if ("-ct".equals(name))
+				contentType = value;
+			else if ("-t".equals(name))
+				clientThreads = Integer.parseInt(value);
+			else if ("-port".equals(name))
+				port = Integer.parseInt(value);
+			else if ("-workers".equals(name))
+				workers = Integer.parseInt(value);
+			else
+				throw new IllegalArgumentException("未知参数:" + name);
+		}
+		host = "127.0.0.1:" + port;
+	}
+
+	private void run() throws Exception {
+		RestExpress server = startServer();
+		EventLoopGroup group = new NioEventLoopGroup(clientThreads);
+		try {
+			List<LoadConnection> handlers = new ArrayList<LoadConnection>();
+			List<Channel> channels = connect(group, handlers);
+
+			System.out.println(String.format("%d个连接,pipelining %d,预热%d秒,压测%d秒 %s %s", connections, pipeline,
+					warmupSeconds, durationSeconds, body == null ? "GET" : "POST", uri));
+			Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+			recording = true;
+			long start = System.nanoTime();
+			Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+			recording = false;
+			long elapsed = System.nanoTime() - start;
+			running = false;
+
+			for (Channel channel : channels)
+				channel.closeFuture().await(10, TimeUnit.SECONDS);
+			report(handlers, elapsed);
+		} finally {
+			group.shutdownGracefully().sync();
+			server.shutdown(true);
+			RestExpress.getSpringCtx().close();
+		}
+	}
+
+	private RestExpress startServer() throws Exception {
+		if (workers < 0)
+			workers = Environment.load(new String[] {}, Configuration.class).getExecutorThreadCount();
+		return new RestExpress(new String[] { "start", Integer.toString(port), Integer.toString(workers),
+				Integer.toString(port + 1) });
+	}
+
+	private List<Channel> connect(EventLoopGroup group, final List<LoadConnection> handlers) throws InterruptedException {
+		running = true;
+		Bootstrap bootstrap = new Bootstrap().group(group).channel(NioSocketChannel.class)
+				.option(ChannelOption.TCP_NODELAY, true);
+		List<Channel> channels = new ArrayList<Channel>();
+		for (int i = 0; i < connections; i++) {
+			final LoadConnection handler = new LoadConnection(this, pipeline);
+			handlers.add(handler);
+			channels.add(bootstrap.handler(new ChannelInitializer<SocketChannel>() {
+				@Override
+				protected void initChannel(SocketChannel ch) {
+					ch.pipeline().addLast(new HttpClientCodec(), new HttpObjectAggregator(16 * 1024 * 1024), handler);
+				}
+			}).connect("127.0.0.1", port).sync().channel());
+		}
+		return channels;
+	}
+
+	private void report(List<LoadConnection> handlers, long elapsedNanos) {
+		ConcurrentHistogram.Snapshot snapshot = histogram.snapshot();
+		long completed = 0;
+		long errors = 0;
+		for (LoadConnection handler : handlers) {
+			completed += handler.getCompleted();
+			errors += handler.getErrors();
+		}
+		double seconds = elapsedNanos / 1e9;
+		System.out.println();
+		System.out.println("延迟分布(毫秒):");
+		outputPercentileDistribution(System.out, snapshot, 1000.0);
+		System.out.println();
+		System.out.println(String.format("请求数: %d, 错误数: %d, 用时: %.2f秒", completed, errors, seconds));
+		System.out.println(String.format("吞吐量: %.1f req/s", completed / seconds));
+		System.out.println(String.format("p50: %.3fms  p90: %.3fms  p99: %.3fms  p999: %.3fms  max: %.3fms",
+				snapshot.getValueAtPercentile(50) / 1000.0, snapshot.getValueAtPercentile(90) / 1000.0,
+				snapshot.getValueAtPercentile(99) / 1000.0, snapshot.getValueAtPercentile(99.9) / 1000.0,
+				snapshot.getMax() / 1000.0));
+	}
+
+	/**
+	 * 按HdrHistogram的outputPercentileDistribution格式输出,每次把剩余的比例减半
+	 * @param out
+	 * @param scale 输出时值除以的比例,例如1000把微秒输出为毫秒
+	 */
+	static void outputPercentileDistribution(PrintStream out, ConcurrentHistogram.Snapshot snapshot, double scale) {
+		out.println(String.format("%12s %14s %10s %14s", "Value", "Percentile", "TotalCount", "1/(1-Percentile)"));
+		out.println();
+		long total = snapshot.getTotalCount();
+		if (total == 0)
+			return;
+		double percentile = 0;
+		double step = 50;
+		while (true) {
+			long value = snapshot.getValueAtPercentile(percentile);
+			//最大值所在的桶按上界不计入getCountAtOrBelow
+			long count = (value >= snapshot.getMax() ? total : snapshot.getCountAtOrBelow(value));
+			double reached = 100.0 * count / total;
+			out.println(String.format("%12.3f %14.12f %10d %14.2f", value / scale, reached / 100, count,
+					reached >= 100 ? Double.POSITIVE_INFINITY : 1 / (1 - reached / 100)));
+			if (count >= total)
+				break;
+			percentile += step;
+			step /= 2;
+			if (percentile > 100 || step < 1e-7)
+				percentile = 100;
+		}
+		out.println(String.format("#[Mean    = %12.3f, Max        = %12.3f]", snapshot.getMean() / scale,
+				snapshot.getMax() / scale));
+		out.println(String.format("#[Min     = %12.3f, Total count = %12d]", snapshot.getValueAtPercentile(0) / scale,
+				total));
+	}
+
+	ConcurrentHistogram getHistogram() {
+		return histogram;
+	}
+
+	boolean isRunning() {
+		return running;
+	}
+
+	boolean isRecording() {
+		return recording;
+	}
+
+	String getUri() {
+		return uri;
+	}
+
+	String getHost() {
+		return host;
+	}
+
+	byte[] getBody() {
+		return body;
+	}
+
+	String getContentType() {
+		return contentType;
+	}
+}
@@ -0,0 +1,67 @@
+package org.restexpress.benchmark.load;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.domain.ex.ServerResponse;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * 压测用的controller,覆盖最常见的几种action:
+ * <ul>
+ * <li>/load/hello.json 不带参数,最小的响应</li>
+ * <li>/load/find.json?id=42&name=abc GET参数绑定,返回一个对象</li>
+ * <li>/load/list.json?size=100 返回一个集合,测序列化</li>
+ * <li>/load/echo.json application/json方式POST一个Order,原样返回</li>
+ * </ul>
+ * @author hanst
+ *
+ */
+@Controller
+@RequestMapping("/load")
+public class SampleController {
+
+	public static class Order {
+		public Long id;
+		public String name;
+		public Date created;
+		public List<String> tags;
+	}
+
+	public Object hello(Request request, Response response) {
+		return ServerResponse.SUCCESS_RESPONSE;
+	}
+
+	public Object find(Request request, Response response, @RequestParam Long id, @RequestParam String name) {
+		return order(id, name);
+	}
+
+	public Object list(Request request, Response response, @RequestParam(required = false) Integer size) {
+		int count = (size == null ? 100 : size);
+		List<Order> orders = new ArrayList<Order>(count);
+		for (int i = 0; i < count; i++)
+			orders.add(order((long) i, "order-" + i));
+		return orders;
+	}
+
+	public Object echo(Order order) {
+		return order;
+	}
+
+	private Order order(Long id, String name) {
+		Order order = new Order();
+		order.id = id;
+		order.name = name;
+		order.created = new Date();
+		List<String> tags = new ArrayList<String>();
+		tags.add("netty");
+		tags.add("spring");
+		order.tags = tags;
+		return order;
+	}
+}
@@ -43,6 +43,18 @@ public abstract class Flags
 		public static final String NO_AUTHENTICATION = "no.authentication";
 		public static final String NO_AUTHORIZATION = "no.authorization";
 	}
+
+	public static final class Upload
+	{
+		// multipart/form-data bodies of the route are decoded as they arrive, instead of being aggregated.
+		public static final String STREAMING = "streaming.upload";
+	}
+
+	public static final class Download
+	{
+		// java.io.File results of the route are written from the file (see FileDownload).
+		public static final String STREAMING = "streaming.download";
+	}
 	
 	private Flags()
 	{
@@ -40,6 +40,18 @@ public abstract class Parameters
 		// Force the service to return a 200 OK response.
 		public static final String IGNORE_HTTP_STATUS = "_ignore_http_status";
 	}
+
+	public static final class Executor
+	{
+		// Name of the Bulkhead (isolated executor) the route's controller runs on.
+		public static final String BULKHEAD = "bulkhead";
+	}
+
+	public static final class Deadline
+	{
+		// Default time budget of the route in milliseconds, when the request has no timeout header.
+		public static final String TIMEOUT = "timeout.ms";
+	}
 	
 	private Parameters()
 	{
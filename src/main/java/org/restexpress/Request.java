@@ -22,13 +22,10 @@ import io.netty.buffer.ByteBufInputStream;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
-import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpVersion;
-import io.netty.handler.codec.http.QueryStringDecoder;
 
 import java.io.InputStream;
 import java.net.InetSocketAddress;
-import java.net.URLDecoder;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.HashMap;
@@ -36,13 +33,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.restexpress.exception.BadRequestException;
+import org.restexpress.multipart.MultipartHttpRequest;
+import org.restexpress.multipart.MultipartUpload;
 import org.restexpress.route.Route;
 import org.restexpress.route.RouteResolver;
 import org.restexpress.serialization.SerializationProvider;
 import org.restexpress.serialization.SerializationSettings;
+import org.restexpress.url.FormParameters;
+import org.restexpress.url.QueryParameters;
 import org.restexpress.url.QueryStringParser;
 
 /**
@@ -64,8 +66,14 @@ public class Request
 	private HttpMethod effectiveHttpMethod;
 	private Route resolvedRoute;
 	private String correlationId;
+	private long receivedNanos = System.nanoTime();
+	private long deadlineNanos = 0;
 	private Map<String, Object> attachments;
 	private Map<String, String> queryStringMap;
+	private QueryParameters queryParameters;
+	private FormParameters formParameters;
+	// Query-string parameters are only copied into the headers when the header collection is used.
+	private boolean queryHeadersAdded = false;
 
 	private SerializationSettings serializationSettings;
 
@@ -95,13 +103,8 @@ public class Request
 		super();
 		this.httpRequest = request;
 		this.httpVersion = request.getProtocolVersion();
-		this.effectiveHttpMethod = request.getMethod();
 		this.routeResolver = routeResolver;
 		this.serializationProvider = serializationProvider;
-	    createCorrelationId();
-        this.queryStringMap = new HashMap<String, String>();
-		parseQueryString(request);
-		determineEffectiveHttpMethod(request);
 	}
 
 	public Request(InetSocketAddress socketAddress, FullHttpRequest request, RouteResolver routes, SerializationProvider serializationProvider)
@@ -117,12 +120,60 @@ public class Request
 	 * Return the Correlation ID for this request.  The Correlation ID is unique for each request within
 	 * this VM instance.  Restarting the VM will reset the correlation ID to zero.  It is not a GUID.
 	 * It is useful, however, in correlating events in the pipeline (e.g. timing, etc.).  
+	 * The ID is assigned the first time it is requested.
 	 */
 	public String getCorrelationId()
 	{
+		if (correlationId == null)
+		{
+			createCorrelationId();
+		}
+
 		return correlationId;
 	}
 
+	/**
+	 * Return the System.nanoTime() at which this request was created, so observers
+	 * can measure the latency without keeping a timer per request.
+	 */
+	public long getReceivedNanos()
+	{
+		return receivedNanos;
+	}
+
+	/**
+	 * Set the System.nanoTime() after which the client no longer waits for the response.
+	 * Zero means the request has no deadline.
+	 */
+	public void setDeadlineNanos(long deadlineNanos)
+	{
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	public boolean hasDeadline()
+	{
+		return (deadlineNanos != 0);
+	}
+
+	/**
+	 * Return the time budget left before the deadline, so actions can pass it on to
+	 * downstream calls (e.g. as their timeout).
+	 * 
+	 * @return milliseconds left, zero if the deadline has passed, or Long.MAX_VALUE if
+	 * the request has no deadline.
+	 */
+	public long getRemainingMillis()
+	{
+		if (!hasDeadline()) return Long.MAX_VALUE;
+
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+	}
+
+	public boolean isDeadlineExceeded()
+	{
+		return (hasDeadline() && deadlineNanos - System.nanoTime() <= 0);
+	}
+
 	/**
 	 * Return the HTTP method of the request.
 	 * 
@@ -141,6 +192,11 @@ public class Request
 	 */
 	public HttpMethod getEffectiveHttpMethod()
 	{
+		if (effectiveHttpMethod == null)
+		{
+			effectiveHttpMethod = determineEffectiveHttpMethod();
+		}
+
 		return effectiveHttpMethod;
 	}
 
@@ -285,21 +341,57 @@ public class Request
 	{
 		if (shouldDecode)
 		{
-			QueryStringDecoder qsd = new QueryStringDecoder(getBody().toString(ContentType.CHARSET), ContentType.CHARSET, false);
-			return qsd.parameters();
+			return getFormParameters().toMap();
 		}
 
 		QueryStringParser qsp = new QueryStringParser(getBody().toString(ContentType.CHARSET), false);
 		return qsp.getParameters();
 	}
 
+	/**
+	 * Returns a view of the url-form-encoded body that is parsed in place, without converting
+	 * the body to a String. Values are URL-decoded when read and repeated names are kept.
+	 * The view is only valid while the request body has not been released.
+	 * 
+	 * @return the form parameters of the body.
+	 */
+	public FormParameters getFormParameters()
+	{
+		if (formParameters == null)
+		{
+			formParameters = new FormParameters(getBody());
+		}
+
+		return formParameters;
+	}
+
+	/**
+	 * Returns the multipart/form-data body of a route declared with useStreamingMultipartUpload(),
+	 * decoded while it arrived instead of being aggregated. Parts larger than uploadSpillThreshold
+	 * are in temporary files, which are deleted when the request completes; use FileUpload.renameTo()
+	 * to keep one.
+	 * 
+	 * @return the decoded parts, or null if the body was not streamed.
+	 */
+	public MultipartUpload getMultipartUpload()
+	{
+		if (httpRequest instanceof MultipartHttpRequest)
+		{
+			return ((MultipartHttpRequest) httpRequest).getUpload();
+		}
+
+		return null;
+	}
+
 	public void setBody(ByteBuf body)
     {
 		httpRequest.content().setBytes(0, body);
+		formParameters = null;
     }
 
 	public void clearHeaders()
 	{
+		queryHeadersAdded = true;
 		httpRequest.headers().clear();
 	}
 
@@ -318,7 +410,13 @@ public class Request
 	 */
 	public String getHeader(String name)
 	{
-		return httpRequest.headers().get(name);
+		String value = httpRequest.headers().get(name);
+
+		if (value != null || queryHeadersAdded) return value;
+
+		// Until the query-string is copied into the headers nothing has been added after it,
+		// so an HTTP header still takes precedence over a query-string parameter.
+		return getQueryParameters().get(name, true);
 	}
 
 	/**
@@ -335,6 +433,7 @@ public class Request
 	 */
 	public List<String> getHeaders(String name)
 	{
+		addQueryStringAsHeaders();
 		return httpRequest.headers().getAll(name);
 	}
 	
@@ -372,6 +471,7 @@ public class Request
 	*/
 	public Set<String> getHeaderNames()
 	{
+		addQueryStringAsHeaders();
 		return httpRequest.headers().names();
 	}
 	
@@ -385,6 +485,7 @@ public class Request
 	*/
 	public void addHeader(String name, String value)
     {
+		addQueryStringAsHeaders();
 		httpRequest.headers().add(name, value);
     }
 	
@@ -494,11 +595,35 @@ public class Request
 		return null;
 	}
 
+	/**
+	 * Return the first (not URL-decoded) value of each query-string parameter.
+	 * The map is built on first use; prefer getQueryParameters() for single lookups.
+	 */
 	public Map<String, String> getQueryStringMap()
 	{
+		if (queryStringMap == null)
+		{
+			QueryParameters parameters = getQueryParameters();
+			queryStringMap = (parameters.isEmpty() ? new HashMap<String, String>() : parameters.toFirstRawValueMap());
+		}
+
 		return queryStringMap;
 	}
 
+	/**
+	 * Return a view of the query-string parameters over the raw URI. Names and values
+	 * are only extracted (and values URL-decoded) when they are read.
+	 */
+	public QueryParameters getQueryParameters()
+	{
+		if (queryParameters == null)
+		{
+			queryParameters = new QueryParameters(httpRequest.getUri());
+		}
+
+		return queryParameters;
+	}
+
 	public boolean isKeepAlive()
 	{
 		return HttpHeaders.isKeepAlive(httpRequest);
@@ -675,54 +800,34 @@ public class Request
 	// SECTION: UTILITY - PRIVATE
 
 	/**
-	 * Add the query string parameters to the request as headers.
-	 * Also parses the query string into the queryStringMap, if applicable. Note, if the query string
-	 * contains multiple of the same parameter name, the headers will contain them all, but the
-	 * queryStringMap will only contain the first one.  This will be fixed in a future release.
+	 * Copy the query-string parameters (URL-decoded) into the headers, as earlier versions
+	 * did in the constructor, before the header collection is read as a whole or modified.
 	 */
-	private void parseQueryString(final HttpRequest request)
+	private void addQueryStringAsHeaders()
 	{
-		if (!request.getUri().contains("?")) return;
+		if (queryHeadersAdded) return;
 
-		Map<String, List<String>> parameters = new QueryStringParser(request.getUri(), true).getParameters();
+		queryHeadersAdded = true;
+		QueryParameters parameters = getQueryParameters();
 
-		if (parameters == null || parameters.isEmpty()) return;
-
-		queryStringMap = new HashMap<String, String>(parameters.size());
-		
-		for (Entry<String, List<String>> entry : parameters.entrySet())
+		for (int i = 0; i < parameters.size(); i++)
 		{
-			queryStringMap.put(entry.getKey(), entry.getValue().get(0));
-
-			for (String value : entry.getValue())
-			{
-				try
-                {
-	                request.headers().add(entry.getKey(), URLDecoder.decode(value, ContentType.ENCODING));
-                }
-                catch (Exception e)
-                {
-	                request.headers().add(entry.getKey(), value);
-                }
-			}
+			httpRequest.headers().add(parameters.getName(i), parameters.getValue(i));
 		}
 	}
 
-	/**
-	 * If the request HTTP method is post, allow a query string parameter to determine
-	 * the request HTTP method of the post (e.g. _method=DELETE or _method=PUT).  This
-	 * supports DELETE and PUT from the browser.
-	 */
-	private void determineEffectiveHttpMethod(HttpRequest request)
+	private HttpMethod determineEffectiveHttpMethod()
 	{
-		if (!HttpMethod.POST.equals(request.getMethod())) return;
+		if (!HttpMethod.POST.equals(httpRequest.getMethod())) return httpRequest.getMethod();
 
-		String methodString = request.headers().get(Parameters.Query.METHOD_TUNNEL);
+		String methodString = getHeader(Parameters.Query.METHOD_TUNNEL);
 
 		if ("PUT".equalsIgnoreCase(methodString) || "DELETE".equalsIgnoreCase(methodString))
 		{
-			effectiveHttpMethod = HttpMethod.valueOf(methodString.toUpperCase());
+			return HttpMethod.valueOf(methodString.toUpperCase());
 		}
+
+		return httpRequest.getMethod();
 	}
 	
 	private void createCorrelationId()
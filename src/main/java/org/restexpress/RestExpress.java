@@ -22,6 +22,7 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.ChannelGroupFuture;
 import io.netty.channel.group.DefaultChannelGroup;
@@ -30,14 +31,9 @@ import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.GlobalEventExecutor;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.DataOutputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -46,27 +42,38 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.restexpress.admin.AdminConsole;
 import org.restexpress.domain.metadata.RouteMetadata;
 import org.restexpress.domain.metadata.ServerMetadata;
 import org.restexpress.exception.DefaultExceptionMapper;
 import org.restexpress.exception.ExceptionMapping;
 import org.restexpress.exception.ServiceException;
+import org.restexpress.metrics.EventLoopMonitor;
+import org.restexpress.intf.HttpRequestParameterParseIntf;
+import org.restexpress.intf.PreparableParameterParseIntf;
 import org.restexpress.intf.SpringInitCompleteAware;
-import org.restexpress.intf.SystemStatIntf;
+import org.restexpress.pipeline.AdmissionController;
+import org.restexpress.pipeline.Bulkheads;
 import org.restexpress.pipeline.DefaultRequestHandler;
 import org.restexpress.pipeline.MessageObserver;
 import org.restexpress.pipeline.PipelineInitializer;
 import org.restexpress.pipeline.Postprocessor;
 import org.restexpress.pipeline.Preprocessor;
+import org.restexpress.pipeline.RouteMetricsObserver;
 import org.restexpress.pipeline.WebSocketHandler;
 import org.restexpress.pipeline.factory.AbstractChannelHandlerFactory;
 import org.restexpress.pipeline.factory.HttpServerChannelHandlerFactory;
 import org.restexpress.plugin.Plugin;
 import org.restexpress.response.DefaultHttpResponseWriter;
+import org.restexpress.route.Route;
 import org.restexpress.route.RouteBuilder;
 import org.restexpress.route.RouteDeclaration;
+import org.restexpress.route.RouteDependencies;
+import org.restexpress.route.RouteMapping;
 import org.restexpress.route.RouteResolver;
 import org.restexpress.route.parameterized.ParameterizedRouteBuilder;
 import org.restexpress.route.regex.RegexRouteBuilder;
@@ -81,6 +88,8 @@ import org.restexpress.util.DefaultShutdownHook;
 import org.restexpress.util.Environment;
 import org.restexpress.util.StringUtil;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -120,6 +129,8 @@ public class RestExpress
 	private ExceptionMapping exceptionMap = new DefaultExceptionMapper();
 	private List<Plugin> plugins = new ArrayList<Plugin>();
 	private RouteDeclaration routeDeclarations = new RouteDeclaration();
+	//已经创建的路由表,spring容器refresh后需要刷新这些路由的依赖快照.非shareable的handler每个连接一个路由表，所以用弱引用
+	private Set<RouteMapping> routeMappings = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<RouteMapping, Boolean>()));
 	 
 	private SerializationProvider serializationProvider = null;
 	
@@ -132,6 +143,13 @@ public class RestExpress
 	private static boolean shouldOutboundEncode = false;
 	
 	private DefaultEventExecutorGroup defaultEventExecutorGroup = null;
+	private Bulkheads bulkheads = null;
+	private AdmissionController admissionController = null;
+	private boolean admissionControllerResolved = false;
+	private RouteMetricsObserver routeMetrics = null;
+	private PooledByteBufAllocator childAllocator = null;
+	private AdminConsole adminConsole = null;
+	private EventLoopMonitor eventLoopMonitor = null;
 
 	/**
 	 * Change the default behavior for serialization.
@@ -312,13 +330,24 @@ public class RestExpress
 		System.out.println("io sub线程数:" + ioSubThreadCount);
 		setPort(port).setExecutorThreadCount(threadCount).
 		    setIoMainThreadCount(ioMainThreadCount).setIoSubThreadCount(ioSubThreadCount)
+			.setAcceptorCount(config.getAcceptorCount())
 			.setConnectTimeoutMillis(config.getConnectTimeoutMillis())
 			.setKeepAlive(config.isKeepAlive()).setMaxContentSize(config.getMaxContentSize())
 			.setReceiveBufferSize(config.getReceiveBufferSize())
 			.setReuseAddress(config.isReuseAddress()).setSoLinger(config.getSoLinger())
 			.setUseTcpNoDelay(config.isUseTcpNoDelay()).setSendBufferSize(config.getSendBufferSize()).
 			setBackLog(config.getBackLog());			
+		if (config.isRouteMetrics())
+			addMessageObserver(getRouteMetrics());
 		springCtx = new ClassPathXmlApplicationContext(config.getSpringConfigFile());
+		springCtx.addApplicationListener(new ApplicationListener<ContextRefreshedEvent>() {
+			@Override
+			public void onApplicationEvent(ContextRefreshedEvent event) {
+				refreshRouteDependencies();
+				if (adminConsole != null)
+					adminConsole.getRegistry().refresh();
+			}
+		});
 		//必须要先执行初始化spring后的事件，才执行defineRoutes,否则defineRoutes开始接收请求的时候，有东西没初始化完
 		execSpringInitFinish();
 		defineRoutes(this);
@@ -348,7 +377,7 @@ public class RestExpress
 		try{
 			Socket client = new Socket("127.0.0.1", port); 
 			 dos = new DataOutputStream(client.getOutputStream());
-			 dos.writeBytes(SHUT_DOWN_COMMAND);
+			 dos.writeBytes(SHUT_DOWN_COMMAND + "\r\n");
 			 dos.close();
 			 client.close();
         } catch (Exception e) {
@@ -357,101 +386,20 @@ public class RestExpress
         }		
 	}
 
+	/**
+	 * 在boss线程池上启动管理端口,见AdminConsole
+	 * @param shutdownPort
+	 */
 	private void registShutdownServer(final int shutdownPort) {
-        new Thread(new Runnable() {			
+		adminConsole = new AdminConsole(this, config, SHUT_DOWN_COMMAND, new Runnable() {
 			@Override
-			public void run() {				 
-				ServerSocket myserver = null;
-		        BufferedReader br = null;
-		        try {
-		        	myserver = new ServerSocket();
-		        	myserver.bind(new InetSocketAddress("127.0.0.1", shutdownPort));
-		        } catch (Exception e) {
-		        	System.out.println("绑定端口失败:" + shutdownPort);
-		            return;
-		        }
-		        
-		        while(true)
-		            try {
-		                Socket sock = myserver.accept();//这里会阻塞，直到收到命令
-		                sock.setSoTimeout(0); //本地通信设置较短时间
-		                br = new BufferedReader(new InputStreamReader(sock.getInputStream()));		                
-		                String readContent = br.readLine();
-		                // 判断收到信息是否是停止标志,可以在这里获取更多信息		                
-		                BufferedWriter os = new BufferedWriter(new OutputStreamWriter(sock.getOutputStream(),"UTF-8"));
-		                if (SHUT_DOWN_COMMAND.equals(readContent)) {		                	
-		                	os.write("stop server..\r\n");		                	
-		        			doShutdown(); 
-		        			br.close();
-		        			sock.close();
-		        			myserver.close();		        		
-		                    return;
-		                }
-		                if ("nettyconfig".equals(readContent)) {                    
-		                	os.write("connectTimeout:" + config.getConnectTimeoutMillis()/1000);
-		                	os.write("\r\n");
-		                	os.write("receiveBufferSize:" + config.getReceiveBufferSize());
-		                	os.write("\r\n");
-		                	os.write("sendBufferSize:" + config.getSendBufferSize());
-		                	os.write("\r\n");
-		                	os.write("maxContentSize:" + config.getMaxContentSize());
-		                	os.write("\r\n");
-		                	os.write("useTcpNoDelay:" + config.isUseTcpNoDelay());
-		                	os.write("\r\n");
-		                	os.write("executorThreadCount:" + config.getExecutorThreadCount());
-		                	os.write("\r\n");
-		                	os.write("keepAlive:" + config.isKeepAlive());
-		                	os.write("\r\n");
-		                	os.write("permissionCheck:" + config.getPermissionCheck());
-		                	os.write("\r\n");
-		                	os.write("listen Port:" + config.getListenPort());
-		                	os.write("\r\n");
-		                	os.write("shutdown Port:" + config.getShutdownPort());
-		                	os.write("\r\n");
-		                	os.write("ioThreadCount:" + config.getIoThreadCount());
-		                	os.write("\r\n");
-		                	os.write("backLog:" + config.getBackLog());
-		                	os.write("\r\n");
-		                	os.write("soLinger:" + config.getSoLinger());
-		                	os.write("\r\n");
-		                }
-		                else{		                	
-		                	Map<String,SystemStatIntf> com = getSpringCtx().getBeansOfType(SystemStatIntf.class);
-		                	
-		                	if (readContent.equals("help")){
-		                		for(String key: com.keySet()){			                		
-		                			SystemStatIntf ssi = com.get(key);
-		                			for(int i = 0; i < ssi.getCommand().length; i++){
-		                				os.write(ssi.getCommand()[i] + ": " + ssi.commandDesc()[i]);
-		                				os.write("\r\n");
-		                			}
-		                			os.write("\r\n");
-		                		}
-		                		os.write("nettyconfig: server startup param");	
-		                	}
-		                	else{				                	
-		                		boolean found = false;
-		                		for(String key: com.keySet()){
-		                			SystemStatIntf ssi = com.get(key);
-		                			for(int i = 0; i < ssi.getCommand().length; i++)
-		                				if (readContent.equals(ssi.getCommand()[i])){
-		                					os.write(ssi.getStat(readContent));
-		                					os.write("\r\n");
-		                					found = true;
-		                				}
-		                		}
-		                		if (!found)
-		                			os.write("unknown command:" + readContent + ",type help!");
-		                	}
-		                }
-		                os.flush();
-	                	os.close();
-		                br.close();               		             
-		        } catch (Exception e) {
-		        	System.out.println(e.getMessage());
-		        }
+			public void run() {
+				doShutdown();
 			}
-		}).start();
+		});
+		if (eventLoopMonitor != null)
+			adminConsole.getRegistry().register(eventLoopMonitor);
+		adminConsole.bind(bootstrapFactory.newBossBootstrap(), shutdownPort);
     }
 
 	private void doShutdown() {
@@ -831,6 +779,21 @@ public class RestExpress
 		return this;
 	}
 
+	/**
+	 * Set the number of listening channels bound to the same address with
+	 * SO_REUSEPORT. Each one is registered on its own boss event loop and
+	 * the kernel spreads incoming connections across them. Only honored by
+	 * the epoll transport; the default of 1 binds a single channel.
+	 * 
+	 * @param value the number of listening channels.
+	 * @return the RestExpress instance.
+	 */
+	public RestExpress setAcceptorCount(int value)
+	{
+		serverSettings.setAcceptorCount(value);
+		return this;
+	}
+
 	/**
 	 * Returns the number of background request-handling (executor) threads.
 	 *
@@ -919,6 +882,62 @@ public class RestExpress
 
 	}
 	
+	/**
+	 * 路由独占的线程池,按netty.properties里的bulkheads/bulkheadRoutes创建
+	 * @return
+	 */
+	public synchronized Bulkheads getBulkheads(){
+		if (bulkheads == null)
+			bulkheads = Bulkheads.fromConfig(config);
+		return bulkheads;
+	}
+
+	/**
+	 * 按业务线程池排队时间限流,netty.properties里loadShedTarget=0(默认)时为null
+	 * @return
+	 */
+	public synchronized AdmissionController getAdmissionController(){
+		if (!admissionControllerResolved) {
+			admissionController = AdmissionController.fromConfig(config);
+			admissionControllerResolved = true;
+		}
+		return admissionController;
+	}
+
+	/**
+	 * 按路由统计的请求数,状态码和延迟,netty.properties里routeMetrics=false时不会加到MessageObserver里
+	 * @return
+	 */
+	public synchronized RouteMetricsObserver getRouteMetrics(){
+		if (routeMetrics == null)
+			routeMetrics = new RouteMetricsObserver();
+		return routeMetrics;
+	}
+
+	/**
+	 * 已经打开的channel,包括侦听端口和所有客户端连接,关闭的channel自动移除
+	 * @return
+	 */
+	public static ChannelGroup getAllChannels(){
+		return allChannels;
+	}
+
+	/**
+	 * 客户端连接使用的allocator,bind之前为null
+	 * @return
+	 */
+	public PooledByteBufAllocator getChildAllocator(){
+		return childAllocator;
+	}
+
+	/**
+	 * I/O线程和业务线程的排队延迟,netty.properties里eventLoopMonitorInterval=0或者bind之前为null
+	 * @return
+	 */
+	public EventLoopMonitor getEventLoopMonitor(){
+		return eventLoopMonitor;
+	}
+
 	public DefaultEventExecutorGroup getDefaultEventExecutorGroup(){
 		if (getExecutorThreadCount() > 0 && defaultEventExecutorGroup == null)
 			defaultEventExecutorGroup = new DefaultEventExecutorGroup(getExecutorThreadCount());
@@ -958,6 +977,8 @@ public class RestExpress
 			requestHandler.setResponseWriter(new DefaultHttpResponseWriter());
 			requestHandler.setRouteResolver(createRouteResolver());
 			requestHandler.setShouldEnforceHttpSpec(enforceHttpSpec);
+			requestHandler.setBulkheads(getBulkheads());
+			requestHandler.setAdmissionController(getAdmissionController());
 			requestHandler.setSerializationProvider(serializationProvider());
 			// Add MessageObservers to the request handler here, if desired...
 			requestHandler.addMessageObserver(messageObservers.toArray(new MessageObserver[0]));
@@ -1025,13 +1046,46 @@ public class RestExpress
 			System.out.println(getName() + " server listening on port " + ipAddress.toString());
 		}
 
-		Channel channel = bootstrap.bind(ipAddress).channel();
-		allChannels.add(channel);
+		int acceptors = serverSettings.getAcceptorCount();
+		if (acceptors > 1 && !bootstrapFactory.isEpoll())
+		{
+			System.out.println("acceptorCount:" + acceptors + ",SO_REUSEPORT只支持epoll,只绑定一个侦听channel");
+			acceptors = 1;
+		}
+		if (acceptors > 1)
+		{
+			int bossLoops = 0;
+			for (Iterator<EventExecutor> it = bootstrap.group().iterator(); it.hasNext(); it.next())
+				bossLoops++;
+			if (acceptors > bossLoops)
+				System.out.println("acceptorCount:" + acceptors + "大于boss线程数" + bossLoops + ",部分侦听channel共用一个线程");
+			bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+		}
+
+		// SO_REUSEPORT时每次bind都在boss线程池的下一个线程上注册一个新的侦听channel
+		Channel channel = null;
+		for (int i = 0; i < acceptors; i++)
+		{
+			Channel acceptor = bootstrap.bind(ipAddress).channel();
+			allChannels.add(acceptor);
+			if (channel == null) channel = acceptor;
+		}
+		monitorEventLoops();
 
 		bindPlugins();
 		return channel;
 	}
 
+	private void monitorEventLoops() {
+		long interval = (config == null ? 0 : config.getEventLoopMonitorInterval());
+		if (interval <= 0 || eventLoopMonitor != null)
+			return;
+		eventLoopMonitor = new EventLoopMonitor(interval, config.getIoRation())
+				.monitor("boss", bootstrapFactory.getBossGroup())
+				.monitor("worker", bootstrapFactory.getWorkerGroup())
+				.monitor("executor", getDefaultEventExecutorGroup());
+	}
+
 	//TODO: netty5 不需要这么麻烦
 	private void setIoRation(ServerBootstrap bootstrap) {
 		if (bootstrap.group() != null){
@@ -1069,7 +1123,8 @@ public class RestExpress
 		bootstrap.option(ChannelOption.ALLOCATOR,new PooledByteBufAllocator(false));
 		
 		//非I/O 线程使用，池化heap buffer,在4.0.36netty,使用websocket用非heap内存分配模型有内存泄露
-		bootstrap.childOption(ChannelOption.ALLOCATOR,new PooledByteBufAllocator(false));
+		childAllocator = new PooledByteBufAllocator(false);
+		bootstrap.childOption(ChannelOption.ALLOCATOR,childAllocator);
 		
 	    bootstrap.childOption(ChannelOption.MAX_MESSAGES_PER_READ, Integer.MAX_VALUE);
 		bootstrap.childOption(ChannelOption.SO_RCVBUF, getReceiveBufferSize());
@@ -1126,9 +1181,12 @@ public class RestExpress
 	 */
 	public void shutdown(boolean shouldWait)
 	{
+		if (eventLoopMonitor != null)
+			eventLoopMonitor.stop();
 		ChannelGroupFuture channelFuture = allChannels.close();
 		bootstrapFactory.shutdownGracefully(shouldWait);
 		channelFuture.awaitUninterruptibly();
+		getBulkheads().shutdown();
 		shutdownPlugins();
 	}
 
@@ -1137,7 +1195,46 @@ public class RestExpress
 	 */
 	private RouteResolver createRouteResolver()
 	{
-		return new RouteResolver(routeDeclarations.createRouteMapping(routeDefaults));
+		RouteMapping mapping = routeDeclarations.createRouteMapping(routeDefaults);
+		bindRouteDependencies(mapping, RouteDependencies.resolve(springCtx));
+		routeMappings.add(mapping);
+		return new RouteResolver(mapping);
+	}
+
+	/**
+	 * 把spring服务的快照绑定到每个路由上,同时让参数解析实现预先编译每个action的参数绑定,
+	 * 而不是在第一次请求的时候
+	 * @param mapping
+	 * @param dependencies
+	 */
+	private void bindRouteDependencies(RouteMapping mapping, RouteDependencies dependencies)
+	{
+		HttpRequestParameterParseIntf intf = dependencies.getParameterParser();
+		boolean preparable = (intf instanceof PreparableParameterParseIntf);
+
+		for (Route route : mapping.getAllRoutes())
+		{
+			route.setDependencies(dependencies);
+			if (preparable)
+				((PreparableParameterParseIntf) intf).prepare(route.getAction());
+		}
+	}
+
+	/**
+	 * spring容器refresh后重新解析所有路由依赖的服务
+	 */
+	public void refreshRouteDependencies()
+	{
+		RouteDependencies dependencies = RouteDependencies.resolve(springCtx);
+		List<RouteMapping> mappings;
+		synchronized (routeMappings)
+		{
+			mappings = new ArrayList<RouteMapping>(routeMappings);
+		}
+		for (RouteMapping mapping : mappings)
+		{
+			bindRouteDependencies(mapping, dependencies);
+		}
 	}
 
 	/**
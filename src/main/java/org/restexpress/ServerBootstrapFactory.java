@@ -17,6 +17,7 @@ package org.restexpress;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
 import io.netty.channel.epoll.Epoll;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollServerSocketChannel;
@@ -32,6 +33,7 @@ public class ServerBootstrapFactory
 {
 	private EventLoopGroup bossGroup;
 	private EventLoopGroup workerGroup;
+	private Class<? extends ServerChannel> serverChannelClass;
 
 	/**
 	 * 
@@ -52,6 +54,36 @@ public class ServerBootstrapFactory
 		return newNioServerBootstrap(ioMainThreadCount,ioSubThreadCount);
     }
 
+	/**
+	 * 在已经创建的boss线程池上侦听另一个端口(例如管理端口),不另外创建线程
+	 * @return
+	 */
+	public ServerBootstrap newBossBootstrap()
+	{
+		return new ServerBootstrap().group(bossGroup).channel(serverChannelClass);
+	}
+
+	public EventLoopGroup getBossGroup()
+	{
+		return bossGroup;
+	}
+
+	/**
+	 * @return ioSubThreadCount为0(boss线程同时处理I/O)时为null
+	 */
+	public EventLoopGroup getWorkerGroup()
+	{
+		return workerGroup;
+	}
+
+	/**
+	 * @return 最近一次newServerBootstrap是否使用epoll,只有epoll支持SO_REUSEPORT
+	 */
+	public boolean isEpoll()
+	{
+		return serverChannelClass == EpollServerSocketChannel.class;
+	}
+
 	public void shutdownGracefully(boolean shouldWait)
     {
 		Future<?> workerFuture = null;
@@ -69,6 +101,7 @@ public class ServerBootstrapFactory
 
 	private ServerBootstrap newNioServerBootstrap(int ioMainThreadCount,int ioSubThreadCount)
     {
+		serverChannelClass = NioServerSocketChannel.class;
 	    if (ioSubThreadCount > 0)
 		{
 			bossGroup = new NioEventLoopGroup(ioMainThreadCount);
@@ -87,6 +120,7 @@ public class ServerBootstrapFactory
 
 	private ServerBootstrap newEpollServerBootstrap(int ioMainThreadCount,int ioSubThreadCount)
     {
+		serverChannelClass = EpollServerSocketChannel.class;
 	    if (ioSubThreadCount > 0)
 	    {
 	    	bossGroup = new EpollEventLoopGroup(ioMainThreadCount);
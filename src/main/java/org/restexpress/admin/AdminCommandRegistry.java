@@ -0,0 +1,78 @@
+package org.restexpress.admin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.restexpress.RestExpress;
+import org.restexpress.intf.SystemStatIntf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 管理端口上业务注册的命令(spring里的SystemStatIntf),第一次使用时从spring读取一次后缓存,
+ * spring容器refresh后调用refresh()重新读取。不再每个命令都调用getBeansOfType。
+ * 框架自己的命令(例如EventLoopMonitor)通过register添加,refresh后保留
+ * @author hanst
+ *
+ */
+public class AdminCommandRegistry {
+	private static final Logger logger = LoggerFactory.getLogger(AdminCommandRegistry.class);
+
+	private volatile Map<String, SystemStatIntf> commands = null;
+	private volatile List<String> help = null;
+	private final List<SystemStatIntf> builtins = new CopyOnWriteArrayList<SystemStatIntf>();
+
+	public void register(SystemStatIntf ssi) {
+		builtins.add(ssi);
+		refresh();
+	}
+
+	public SystemStatIntf get(String command) {
+		return commands().get(command);
+	}
+
+	/**
+	 * @return 每个命令一行 "命令: 说明"
+	 */
+	public List<String> help() {
+		commands();
+		return help;
+	}
+
+	public void refresh() {
+		commands = null;
+	}
+
+	private Map<String, SystemStatIntf> commands() {
+		Map<String, SystemStatIntf> result = commands;
+		if (result != null)
+			return result;
+		synchronized (this) {
+			if (commands != null)
+				return commands;
+			result = new LinkedHashMap<String, SystemStatIntf>();
+			List<String> lines = new ArrayList<String>();
+			List<SystemStatIntf> all = new ArrayList<SystemStatIntf>(builtins);
+			if (RestExpress.getSpringCtx() != null)
+				all.addAll(RestExpress.getSpringCtx().getBeansOfType(SystemStatIntf.class).values());
+			for (SystemStatIntf ssi : all) {
+				for (int i = 0; i < ssi.getCommand().length; i++) {
+					if (result.containsKey(ssi.getCommand()[i]))
+						logger.warn("SystemStatIntf命令重复:" + ssi.getCommand()[i] + "," + ssi.getClass().getName()
+								+ ",使用" + result.get(ssi.getCommand()[i]).getClass().getName());
+					else
+						result.put(ssi.getCommand()[i], ssi);
+					lines.add(ssi.getCommand()[i] + ": " + ssi.commandDesc()[i]);
+				}
+				lines.add("");
+			}
+			help = Collections.unmodifiableList(lines);
+			commands = result;
+			return result;
+		}
+	}
+}
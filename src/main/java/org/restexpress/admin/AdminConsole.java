@@ -0,0 +1,157 @@
+package org.restexpress.admin;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import org.restexpress.RestExpress;
+import org.restexpress.util.Configuration;
+
+/**
+ * 管理端口(shutdownPort),只侦听127.0.0.1,用telnet或nc连接后按行输入命令:
+ * <ul>
+ * <li>help 所有命令</li>
+ * <li>nettyconfig 服务启动参数</li>
+ * <li>routes 每个路由累计的请求数和延迟</li>
+ * <li>top routes [n] 每秒输出请求数最多的n个路由(默认10)的qps和这一秒的延迟</li>
+ * <li>watch qps 每秒输出总的qps,错误数和在途请求数</li>
+ * <li>quit 断开连接</li>
+ * <li>stopCommandStr 停止服务</li>
+ * <li>业务注册的SystemStatIntf命令</li>
+ * </ul>
+ * top/watch持续输出,输入任意一行停止。
+ * <p/>
+ * 运行在服务的boss线程池上,不单独创建线程,可以同时有多个连接;SystemStatIntf的命令可能比较慢,
+ * 在GlobalEventExecutor里执行,不阻塞I/O线程
+ * @author hanst
+ *
+ */
+public class AdminConsole {
+	static final String NEWLINE = "\r\n";
+	private static final int MAX_LINE_LENGTH = 1024;
+
+	private final RestExpress restExpress;
+	private final Configuration config;
+	private final String stopCommand;
+	private final Runnable shutdownTask;
+	private final AdminCommandRegistry registry = new AdminCommandRegistry();
+	private final ChannelGroup sessions = new DefaultChannelGroup("RestExpress-admin", GlobalEventExecutor.INSTANCE);
+
+	/**
+	 * @param restExpress
+	 * @param config
+	 * @param stopCommand 停止服务的命令
+	 * @param shutdownTask 收到停止命令后在单独的线程里执行
+	 */
+	public AdminConsole(RestExpress restExpress, Configuration config, String stopCommand, Runnable shutdownTask) {
+		this.restExpress = restExpress;
+		this.config = config;
+		this.stopCommand = stopCommand;
+		this.shutdownTask = shutdownTask;
+	}
+
+	/**
+	 * 在boss线程池上侦听127.0.0.1:port,绑定失败只打印,不影响服务
+	 * @param bootstrap RestExpress的ServerBootstrapFactory.newBossBootstrap()
+	 * @param port
+	 */
+	public void bind(ServerBootstrap bootstrap, final int port) {
+		bootstrap.childHandler(new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				ChannelPipeline pipeline = ch.pipeline();
+				pipeline.addLast("line", new CommandLineDecoder());
+				pipeline.addLast("decoder", new StringDecoder(CharsetUtil.UTF_8));
+				pipeline.addLast("encoder", new StringEncoder(CharsetUtil.UTF_8));
+				pipeline.addLast("session", new AdminSession(AdminConsole.this));
+				sessions.add(ch);
+			}
+		});
+		bootstrap.bind(new InetSocketAddress("127.0.0.1", port)).addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if (future.isSuccess())
+					sessions.add(future.channel());
+				else
+					System.out.println("绑定端口失败:" + port);
+			}
+		});
+	}
+
+	public AdminCommandRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * @return 当前连接的会话数,不含侦听端口
+	 */
+	public int getSessionCount() {
+		return Math.max(0, sessions.size() - 1);
+	}
+
+	public void close() {
+		sessions.close();
+	}
+
+	RestExpress getRestExpress() {
+		return restExpress;
+	}
+
+	String getStopCommand() {
+		return stopCommand;
+	}
+
+	void shutdown() {
+		Thread thread = new Thread(shutdownTask, "restexpress-shutdown");
+		thread.start();
+	}
+
+	String nettyConfig() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("connectTimeout:" + config.getConnectTimeoutMillis() / 1000).append(NEWLINE);
+		sb.append("receiveBufferSize:" + config.getReceiveBufferSize()).append(NEWLINE);
+		sb.append("sendBufferSize:" + config.getSendBufferSize()).append(NEWLINE);
+		sb.append("maxContentSize:" + config.getMaxContentSize()).append(NEWLINE);
+		sb.append("useTcpNoDelay:" + config.isUseTcpNoDelay()).append(NEWLINE);
+		sb.append("executorThreadCount:" + config.getExecutorThreadCount()).append(NEWLINE);
+		sb.append("keepAlive:" + config.isKeepAlive()).append(NEWLINE);
+		sb.append("permissionCheck:" + config.getPermissionCheck()).append(NEWLINE);
+		sb.append("listen Port:" + config.getListenPort()).append(NEWLINE);
+		sb.append("shutdown Port:" + config.getShutdownPort()).append(NEWLINE);
+		sb.append("ioThreadCount:" + config.getIoThreadCount()).append(NEWLINE);
+		sb.append("backLog:" + config.getBackLog()).append(NEWLINE);
+		sb.append("soLinger:" + config.getSoLinger()).append(NEWLINE);
+		return sb.toString();
+	}
+
+	/**
+	 * 按行切分,连接关闭时最后一行没有换行也作为一个命令(旧版本的停止命令只发送命令不发送换行)
+	 */
+	private static class CommandLineDecoder extends LineBasedFrameDecoder {
+		CommandLineDecoder() {
+			super(MAX_LINE_LENGTH);
+		}
+
+		@Override
+		protected void decodeLast(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+			super.decodeLast(ctx, in, out);
+			if (in.isReadable() && in.readableBytes() <= MAX_LINE_LENGTH)
+				out.add(in.readBytes(in.readableBytes()));
+		}
+	}
+}
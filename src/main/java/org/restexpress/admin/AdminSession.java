@@ -0,0 +1,290 @@
+package org.restexpress.admin;
+
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.restexpress.RestExpress;
+import org.restexpress.intf.SystemStatIntf;
+import org.restexpress.metrics.ConcurrentHistogram;
+import org.restexpress.metrics.RouteMetrics;
+import org.restexpress.pipeline.RouteMetricsObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 管理端口的一个连接,每个连接一个实例。top/watch命令在连接所在的boss线程上每秒执行一次,
+ * 只读取RouteMetricsObserver的计数;客户端读得慢(channel不可写)时跳过这一次输出
+ * @author hanst
+ *
+ */
+class AdminSession extends SimpleChannelInboundHandler<String> {
+	private static final Logger logger = LoggerFactory.getLogger(AdminSession.class);
+	private static final String NEWLINE = AdminConsole.NEWLINE;
+	private static final int DEFAULT_TOP = 10;
+
+	private final AdminConsole console;
+	private ScheduledFuture<?> streaming = null;
+
+	AdminSession(AdminConsole console) {
+		this.console = console;
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, String msg) throws Exception {
+		String line = msg.trim();
+		//持续输出的时候输入任意一行停止
+		if (streaming != null) {
+			stopStreaming();
+			if (line.length() == 0)
+				return;
+		}
+		if (line.length() == 0)
+			return;
+
+		if (line.equals(console.getStopCommand())) {
+			ctx.writeAndFlush("stop server.." + NEWLINE).addListener(ChannelFutureListener.CLOSE);
+			console.shutdown();
+		} else if ("quit".equals(line) || "exit".equals(line)) {
+			ctx.writeAndFlush("bye" + NEWLINE).addListener(ChannelFutureListener.CLOSE);
+		} else if ("nettyconfig".equals(line)) {
+			ctx.writeAndFlush(console.nettyConfig());
+		} else if (isRouteCommand(line) && !routeMetricsEnabled()) {
+			ctx.writeAndFlush("route metrics disabled" + NEWLINE);
+		} else if ("routes".equals(line)) {
+			ctx.writeAndFlush(routes());
+		} else if (line.startsWith("top routes")) {
+			startStreaming(ctx, new TopRoutes(ctx, parseTop(line.substring("top routes".length()).trim())));
+		} else if ("watch qps".equals(line)) {
+			startStreaming(ctx, new WatchQps(ctx));
+		} else {
+			statCommand(ctx, line);
+		}
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		stopStreaming();
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+		logger.warn("管理端口连接异常,关闭连接:" + ctx.channel().remoteAddress(), cause);
+		ctx.close();
+	}
+
+	/**
+	 * help和业务命令在GlobalEventExecutor里执行,业务的getStat可能很慢,不能在I/O线程里调用
+	 */
+	private void statCommand(final ChannelHandlerContext ctx, final String line) {
+		GlobalEventExecutor.INSTANCE.execute(new Runnable() {
+			@Override
+			public void run() {
+				StringBuilder sb = new StringBuilder();
+				try {
+					if ("help".equals(line)) {
+						for (String help : console.getRegistry().help())
+							sb.append(help).append(NEWLINE);
+						sb.append("nettyconfig: server startup param").append(NEWLINE);
+						sb.append("routes: requests and latency of each route").append(NEWLINE);
+						sb.append("top routes [n]: busiest n routes every second, type enter to stop").append(NEWLINE);
+						sb.append("watch qps: total qps every second, type enter to stop").append(NEWLINE);
+						sb.append("quit: close this session").append(NEWLINE);
+					} else {
+						SystemStatIntf ssi = console.getRegistry().get(line);
+						if (ssi == null)
+							sb.append("unknown command:" + line + ",type help!").append(NEWLINE);
+						else
+							sb.append(ssi.getStat(line)).append(NEWLINE);
+					}
+				} catch (Exception e) {
+					sb.append(line + " failed:" + e.getMessage()).append(NEWLINE);
+				}
+				ctx.writeAndFlush(sb.toString());
+			}
+		});
+	}
+
+	private static boolean isRouteCommand(String line) {
+		return "routes".equals(line) || line.startsWith("top routes") || "watch qps".equals(line);
+	}
+
+	/**
+	 * routeMetrics=false时RouteMetricsObserver没有注册,读出来全是0,和PrometheusExposition一样不输出
+	 */
+	private static boolean routeMetricsEnabled() {
+		return RestExpress.getConfig() == null || RestExpress.getConfig().isRouteMetrics();
+	}
+
+	private String routes() {
+		RouteMetricsObserver observer = console.getRestExpress().getRouteMetrics();
+		StringBuilder sb = new StringBuilder();
+		for (RouteMetrics.Snapshot snapshot : observer.snapshot())
+			sb.append(snapshot.toString()).append(NEWLINE);
+		sb.append("inFlight=" + observer.getInFlight()).append(NEWLINE);
+		return sb.toString();
+	}
+
+	private static int parseTop(String value) {
+		try {
+			return value.length() == 0 ? DEFAULT_TOP : Math.max(1, Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			return DEFAULT_TOP;
+		}
+	}
+
+	private void startStreaming(ChannelHandlerContext ctx, Runnable task) {
+		stopStreaming();
+		task.run();
+		streaming = ctx.executor().scheduleAtFixedRate(task, 1, 1, TimeUnit.SECONDS);
+	}
+
+	private void stopStreaming() {
+		if (streaming != null) {
+			streaming.cancel(false);
+			streaming = null;
+		}
+	}
+
+	private static String time() {
+		return new SimpleDateFormat("HH:mm:ss").format(new Date());
+	}
+
+	/**
+	 * 按这一秒的请求数排序输出路由,延迟是这一秒内完成的请求的分布
+	 */
+	private class TopRoutes implements Runnable {
+		private final ChannelHandlerContext ctx;
+		private final int top;
+		private Map<String, RouteMetrics.Snapshot> previous = null;
+		private long previousNanos = System.nanoTime();
+
+		TopRoutes(ChannelHandlerContext ctx, int top) {
+			this.ctx = ctx;
+			this.top = top;
+		}
+
+		@Override
+		public void run() {
+			List<RouteMetrics.Snapshot> snapshots = console.getRestExpress().getRouteMetrics().snapshot();
+			long now = System.nanoTime();
+			double seconds = Math.max(1, now - previousNanos) / 1e9;
+			Map<String, RouteMetrics.Snapshot> before = previous;
+			Map<String, RouteMetrics.Snapshot> current = new HashMap<String, RouteMetrics.Snapshot>();
+			for (RouteMetrics.Snapshot snapshot : snapshots)
+				current.put(snapshot.getName(), snapshot);
+			previous = current;
+			previousNanos = now;
+			//第一次只记录基准
+			if (before == null || !ctx.channel().isWritable())
+				return;
+
+			List<Row> rows = new ArrayList<Row>();
+			for (RouteMetrics.Snapshot snapshot : snapshots) {
+				Row row = new Row(snapshot, before.get(snapshot.getName()));
+				if (row.requests > 0)
+					rows.add(row);
+			}
+			Collections.sort(rows, new Comparator<Row>() {
+				@Override
+				public int compare(Row o1, Row o2) {
+					return Long.compare(o2.requests, o1.requests);
+				}
+			});
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%s %-40s %10s %8s %8s %10s %10s", time(), "route", "qps", "err/s", "inFlight",
+					"p50(ms)", "p99(ms)")).append(NEWLINE);
+			for (int i = 0; i < rows.size() && i < top; i++) {
+				Row row = rows.get(i);
+				sb.append(String.format("%8s %-40s %10.1f %8.1f %8d %10.3f %10.3f", "", row.snapshot.getName(),
+						row.requests / seconds, row.errors / seconds, row.snapshot.getInFlight(),
+						row.latency.getValueAtPercentile(50) / 1000.0, row.latency.getValueAtPercentile(99) / 1000.0))
+						.append(NEWLINE);
+			}
+			ctx.writeAndFlush(sb.toString());
+		}
+	}
+
+	/**
+	 * 一个路由这一秒的变化
+	 */
+	private static class Row {
+		final RouteMetrics.Snapshot snapshot;
+		final long requests;
+		final long errors;
+		final ConcurrentHistogram.Snapshot latency;
+
+		Row(RouteMetrics.Snapshot snapshot, RouteMetrics.Snapshot before) {
+			this.snapshot = snapshot;
+			this.requests = snapshot.getRequests() - (before == null ? 0 : before.getRequests());
+			this.errors = snapshot.getErrors() - (before == null ? 0 : before.getErrors());
+			this.latency = (before == null ? snapshot.getLatency() : snapshot.getLatency().since(before.getLatency()));
+		}
+	}
+
+	/**
+	 * 每秒输出所有路由合计的qps,错误数,5xx数,在途请求数和业务线程池排队的任务数
+	 */
+	private class WatchQps implements Runnable {
+		private final ChannelHandlerContext ctx;
+		private long[] previous = null;
+		private long previousNanos = System.nanoTime();
+
+		WatchQps(ChannelHandlerContext ctx) {
+			this.ctx = ctx;
+		}
+
+		@Override
+		public void run() {
+			RouteMetricsObserver observer = console.getRestExpress().getRouteMetrics();
+			long[] current = new long[3];
+			for (RouteMetrics.Snapshot snapshot : observer.snapshot()) {
+				current[0] += snapshot.getRequests();
+				current[1] += snapshot.getErrors();
+				current[2] += snapshot.getStatusClassCount(5);
+			}
+			long now = System.nanoTime();
+			double seconds = Math.max(1, now - previousNanos) / 1e9;
+			long[] before = previous;
+			previous = current;
+			previousNanos = now;
+			if (before == null || !ctx.channel().isWritable())
+				return;
+
+			ctx.writeAndFlush(String.format("%s qps=%.1f err/s=%.1f 5xx/s=%.1f inFlight=%d pendingTasks=%d%s", time(),
+					(current[0] - before[0]) / seconds, (current[1] - before[1]) / seconds,
+					(current[2] - before[2]) / seconds, observer.getInFlight(), pendingTasks(), NEWLINE));
+		}
+
+		private long pendingTasks() {
+			EventExecutorGroup group = console.getRestExpress().getDefaultEventExecutorGroup();
+			if (group == null)
+				return 0;
+			long pending = 0;
+			Iterator<EventExecutor> it = group.iterator();
+			while (it.hasNext()) {
+				EventExecutor executor = it.next();
+				if (executor instanceof SingleThreadEventExecutor)
+					pending += ((SingleThreadEventExecutor) executor).pendingTasks();
+			}
+			return pending;
+		}
+	}
+}
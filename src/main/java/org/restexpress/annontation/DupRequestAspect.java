@@ -6,9 +6,25 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
 import java.lang.annotation.RetentionPolicy;
 
+/**
+ * 申明action为幂等接口:同一个幂等key(默认是header里的ticket,见netty.properties的requestToken)
+ * 在ttl时间内再次请求时,直接返回第一次执行后序列化好的响应,不再执行action;
+ * 第一次还没执行完的重复请求等待第一次的结果,而不是直接返回重复提交
+ * @author hanst
+ *
+ */
 @Target({ElementType.PARAMETER, ElementType.METHOD})  
 @Retention(RetentionPolicy.RUNTIME)  
 @Documented  
 public @interface DupRequestAspect {
 	String description()  default "";
+	
+	//保存响应的时间,单位毫秒
+	long ttl() default 60 * 1000;
+	
+	//取幂等key的header名字,为空则使用netty.properties里的requestToken
+	String header() default "";
+	
+	//重复请求等待第一次执行结果的最长时间,单位毫秒,超时返回重复提交
+	long waitTimeout() default 30 * 1000;
 }
@@ -0,0 +1,21 @@
+package org.restexpress.annontation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * action的默认处理时限:请求没有带超时header(netty.properties的deadlineHeader)时,
+ * 从请求到达开始计算,超过时限还在排队的请求不再执行。带了header时取两者中较小的
+ * @author hanst
+ *
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RequestTimeout {
+	//单位毫秒
+	long value();
+}
@@ -0,0 +1,19 @@
+package org.restexpress.annontation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * action按流式上传处理multipart/form-data请求,和RouteBuilder.useStreamingMultipartUpload()一样:
+ * 请求体不受maxContentSize限制,边接收边解码,大的part写到临时文件,文件绑定到FileUpload类型的参数
+ * @author hanst
+ *
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface StreamingUpload {
+}
@@ -57,4 +57,13 @@ extends ServiceException
 	{
 		super(HttpResponseStatus.BAD_REQUEST, message, cause);
 	}
+
+	/**
+	 * @param message
+	 * @param writableStackTrace false to skip filling in the stack trace.
+	 */
+	public BadRequestException(String message, boolean writableStackTrace)
+	{
+		super(HttpResponseStatus.BAD_REQUEST, message, writableStackTrace);
+	}
 }
@@ -69,6 +69,17 @@ extends ServiceException
 		super(STATUS, message, cause);
 		setAllowedMethods(allowed);
 	}
+
+	/**
+	 * @param message
+	 * @param allowed
+	 * @param writableStackTrace false to skip filling in the stack trace.
+	 */
+	public MethodNotAllowedException(String message, List<HttpMethod> allowed, boolean writableStackTrace)
+	{
+		super(STATUS, message, writableStackTrace);
+		setAllowedMethods(allowed);
+	}
 	
 	public void setAllowedMethods(List<HttpMethod> allowed)
 	{
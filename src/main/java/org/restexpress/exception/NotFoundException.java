@@ -56,4 +56,13 @@ extends ServiceException
 	{
 		super(STATUS, message, cause);
 	}
+
+	/**
+	 * @param message
+	 * @param writableStackTrace false to skip filling in the stack trace.
+	 */
+	public NotFoundException(String message, boolean writableStackTrace)
+	{
+		super(STATUS, message, writableStackTrace);
+	}
 }
@@ -38,6 +38,7 @@ extends RuntimeException
 	private UUID id;
 	private HttpResponseStatus httpStatus;
 	private Map<String, String> headers;
+	private boolean stackless = false;
 
 	
 	// SECTION: CONSTRUCTORS
@@ -100,6 +101,22 @@ extends RuntimeException
 		initialize(status);
 	}
 
+	/**
+	 * For errors thrown on hot paths (e.g. unresolvable routes, bad parameters) where the
+	 * stack trace is never looked at. Skips fillInStackTrace() and defers creating the id
+	 * until getId() is called.
+	 * 
+	 * @param status
+	 * @param message
+	 * @param writableStackTrace false to create a stackless exception.
+	 */
+	protected ServiceException(HttpResponseStatus status, String message, boolean writableStackTrace)
+	{
+		super(message, null, false, writableStackTrace);
+		this.stackless = !writableStackTrace;
+		setHttpStatus(status);
+	}
+
 	
 	// SECTION: ACCESSORS - PUBLIC
 
@@ -110,9 +127,23 @@ extends RuntimeException
 
 	public UUID getId()
 	{
+		if (id == null)
+		{
+			initializeId();
+		}
+
 		return id;
 	}
 
+	/**
+	 * @return true if created without a stack trace, so the serialized response depends
+	 * only on the status and message.
+	 */
+	public boolean isStackless()
+	{
+		return stackless;
+	}
+
 	@Override
 	public String toString()
 	{
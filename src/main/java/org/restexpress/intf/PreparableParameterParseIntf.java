@@ -0,0 +1,14 @@
+package org.restexpress.intf;
+
+import java.lang.reflect.Method;
+
+/**
+ * 可以在路由构建的时候预先处理action的参数解析实现,比如把参数名,注解,类型转换提前编译好,
+ * 避免每个请求都去反射
+ * @author hanst
+ *
+ */
+public interface PreparableParameterParseIntf extends HttpRequestParameterParseIntf {
+	//路由构建的时候对每个action调用一次
+	void prepare(Method action);
+}
@@ -12,7 +12,7 @@ public interface SystemStatIntf {
 	 */
 	public String getStat(String command);
 	/**
-	 * telnet 里输入的命令,不能为null,"",不能重复,不能是help,nettyconfig，作为保留字
+	 * telnet 里输入的命令,不能为null,"",不能重复,不能是help,nettyconfig,routes,top routes,watch qps,quit,exit，作为保留字
 	 * @return
 	 */
 	public String[] getCommand();
@@ -0,0 +1,243 @@
+package org.restexpress.intf.impl;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.netty.handler.codec.http.multipart.FileUpload;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.domain.ex.SessionInfo;
+import org.restexpress.util.SerializeUtil;
+import org.springframework.core.LocalVariableTableParameterNameDiscoverer;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * action方法参数绑定的执行计划,在路由构建的时候对每个Method编译一次,之后每个请求直接按计划取值转换,
+ * 不再每次请求都去读字节码获取参数名,clone参数类型/注解数组,以及走一长串cls.equals判断
+ * <p/>
+ * 实例是不可变的，可以被多个线程共享
+ * @author hanst
+ *
+ */
+public final class ActionParameterPlan {
+	private static final LocalVariableTableParameterNameDiscoverer localVar = new LocalVariableTableParameterNameDiscoverer();
+
+	/**
+	 * 参数的绑定方式,对应SpringMVCHttpRequestParameterParseImpl原来的cls.equals(...)判断顺序
+	 */
+	public enum Kind {
+		REQUEST, RESPONSE, STRING, INTEGER, LONG, BYTE, SHORT, DOUBLE, SESSION, COMPLEX,
+		//String[],Long[]等,绑定同名参数的全部值(a=1&a=2)
+		ARRAY,
+		//流式上传的文件(Request.getMultipartUpload()),FileUpload[]绑定同名的全部文件
+		FILE, FILES,
+		//基本类型不支持注入,保持原来的行为,传null
+		UNSUPPORTED;
+
+		/**
+		 * 把http参数的值转换成目标类型,只对数值类型有意义
+		 * @throws NumberFormatException
+		 */
+		Object convert(Object value) {
+			if (!(value instanceof String))
+				return value;
+			String s = (String) value;
+			switch (this) {
+			case INTEGER:
+				return Integer.valueOf(s);
+			case LONG:
+				return Long.valueOf(s);
+			case BYTE:
+				return Byte.valueOf(s);
+			case SHORT:
+				return Short.valueOf(s);
+			case DOUBLE:
+				return Double.valueOf(s);
+			default:
+				return value;
+			}
+		}
+	}
+
+	private final Method action;
+	private final Kind[] kinds;
+	private final Class<?>[] types;
+	//先用RequestParam里的别名，如果没有定义别名，则使用参数本身名字
+	private final String[] names;
+	//参数本身的名字,用于从url path里获取参数值
+	private final String[] declaredNames;
+	private final boolean[] requestParam;
+	private final boolean[] required;
+	private final JavaType[] javaTypes;
+	private final Class<?>[] sessionImpls;
+	//ARRAY参数元素的绑定方式
+	private final Kind[] componentKinds;
+	private final Set<String> declaredNameSet;
+
+	private ActionParameterPlan(Method action) {
+		this.action = action;
+		Class<?>[] paramTypes = action.getParameterTypes();
+		Type[] genericTypes = action.getGenericParameterTypes();
+		Annotation[][] paramsAn = action.getParameterAnnotations();
+		String[] discovered = localVar.getParameterNames(action);
+		int count = paramTypes.length;
+
+		this.kinds = new Kind[count];
+		this.types = paramTypes;
+		this.names = new String[count];
+		this.declaredNames = (discovered == null ? new String[count] : discovered);
+		this.requestParam = new boolean[count];
+		this.required = new boolean[count];
+		this.javaTypes = new JavaType[count];
+		this.sessionImpls = new Class<?>[count];
+		this.componentKinds = new Kind[count];
+
+		for (int i = 0; i < count; i++) {
+			Class<?> cls = paramTypes[i];
+			String paramName = null;
+			//和原来的实现一样，只看第一个注解
+			if (paramsAn[i].length > 0 && paramsAn[i][0] instanceof RequestParam) {
+				RequestParam rp = (RequestParam) paramsAn[i][0];
+				requestParam[i] = true;
+				required[i] = rp.required();
+				if (rp.value().length() > 0)
+					paramName = rp.value();
+			}
+			names[i] = (paramName == null ? declaredNames[i] : paramName);
+			kinds[i] = kindOf(cls);
+			if (kinds[i] == Kind.ARRAY) {
+				componentKinds[i] = kindOf(cls.getComponentType());
+			} else if (kinds[i] == Kind.COMPLEX) {
+				javaTypes[i] = TypeFactory.defaultInstance().constructType(genericTypes[i]);
+				//预先创建ObjectReader,第一个请求不用再解析反序列化器
+				SerializeUtil.reader(javaTypes[i]);
+			} else if (kinds[i] == Kind.SESSION)
+				sessionImpls[i] = sessionImplOf(cls);
+		}
+		Set<String> declared = new HashSet<String>();
+		for (String name : declaredNames)
+			if (name != null)
+				declared.add(name);
+		this.declaredNameSet = declared;
+	}
+
+	/**
+	 * 编译action的参数绑定计划
+	 * @param action
+	 * @return
+	 */
+	public static ActionParameterPlan compile(Method action) {
+		return new ActionParameterPlan(action);
+	}
+
+	private static Kind kindOf(Class<?> cls) {
+		if (cls.equals(Request.class))
+			return Kind.REQUEST;
+		if (cls.equals(Response.class))
+			return Kind.RESPONSE;
+		if (cls.equals(String.class))
+			return Kind.STRING;
+		if (cls.equals(Integer.class))
+			return Kind.INTEGER;
+		if (cls.equals(Long.class))
+			return Kind.LONG;
+		if (cls.equals(Byte.class))
+			return Kind.BYTE;
+		if (cls.equals(Short.class))
+			return Kind.SHORT;
+		if (cls.equals(Double.class))
+			return Kind.DOUBLE;
+		if (SessionInfo.class.isAssignableFrom(cls))
+			return Kind.SESSION;
+		if (cls.equals(FileUpload.class))
+			return Kind.FILE;
+		if (cls.isArray() && cls.getComponentType().equals(FileUpload.class))
+			return Kind.FILES;
+		if (cls.isArray() && isScalar(cls.getComponentType()))
+			return Kind.ARRAY;
+		if (!cls.isPrimitive())
+			return Kind.COMPLEX;
+		return Kind.UNSUPPORTED;
+	}
+
+	private static boolean isScalar(Class<?> cls) {
+		Kind kind = kindOf(cls);
+		return kind == Kind.STRING || kind == Kind.INTEGER || kind == Kind.LONG || kind == Kind.BYTE
+				|| kind == Kind.SHORT || kind == Kind.DOUBLE;
+	}
+
+	/**
+	 * SessionInfo子类通过getSessionImpl()指定获取会话的spring服务，这里只在编译的时候创建一次实例
+	 */
+	private static Class<?> sessionImplOf(Class<?> cls) {
+		try {
+			return ((SessionInfo) cls.newInstance()).getSessionImpl();
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	public Method getAction() {
+		return action;
+	}
+
+	public int size() {
+		return kinds.length;
+	}
+
+	public Kind getKind(int i) {
+		return kinds[i];
+	}
+
+	public Class<?> getType(int i) {
+		return types[i];
+	}
+
+	public String getName(int i) {
+		return names[i];
+	}
+
+	/**
+	 * 参数在代码里申明的名字,编译时没有调试信息的话为null
+	 */
+	public String getDeclaredName(int i) {
+		return declaredNames[i];
+	}
+
+	public boolean isRequestParam(int i) {
+		return requestParam[i];
+	}
+
+	public boolean isRequired(int i) {
+		return required[i];
+	}
+
+	public JavaType getJavaType(int i) {
+		return javaTypes[i];
+	}
+
+	public Class<?> getSessionImpl(int i) {
+		return sessionImpls[i];
+	}
+
+	/**
+	 * ARRAY参数元素的绑定方式(STRING或者数值类型)
+	 */
+	public Kind getComponentKind(int i) {
+		return componentKinds[i];
+	}
+
+	/**
+	 * @return name是不是某个参数在代码里申明的名字(这些名字也从url path和header里取值)
+	 */
+	public boolean isDeclaredName(String name) {
+		return declaredNameSet.contains(name);
+	}
+}
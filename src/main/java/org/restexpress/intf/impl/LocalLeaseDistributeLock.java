@@ -0,0 +1,180 @@
+package org.restexpress.intf.impl;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.restexpress.intf.DistributeLock;
+
+/**
+ * 进程内的DistributeLock实现,用于防止表单重复提交。
+ * <p/>
+ * 租约表按key的hash分成多个ConcurrentHashMap,加锁和解锁都是CAS操作,不阻塞;
+ * 租约到期由netty的HashedWheelTimer清理,解锁时取消对应的到期任务。
+ * <p/>
+ * 单机部署时直接使用,spring里没有定义DistributeLock时Route默认使用这个实现;
+ * 多机部署时可以用 new LocalLeaseDistributeLock(redisLock) 放在远程锁前面作为近端缓存,
+ * 同一台机器上的重复请求不再访问远程锁
+ * @author hanst
+ *
+ */
+public class LocalLeaseDistributeLock implements DistributeLock {
+	private static final int DEFAULT_STRIPES = 16;
+	private static volatile LocalLeaseDistributeLock defaultLock;
+
+	private final ConcurrentMap<String, Lease>[] stripes;
+	private final int mask;
+	private final Timer timer;
+	//远程锁,为null时只在本进程内加锁
+	private final DistributeLock remote;
+
+	public LocalLeaseDistributeLock() {
+		this(null);
+	}
+
+	public LocalLeaseDistributeLock(DistributeLock remote) {
+		this(remote, DEFAULT_STRIPES, new HashedWheelTimer(new DefaultThreadFactory("restexpress-lease", true),
+				100, TimeUnit.MILLISECONDS, 2048));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public LocalLeaseDistributeLock(DistributeLock remote, int stripeCount, Timer timer) {
+		int size = 1;
+		while (size < stripeCount)
+			size <<= 1;
+		this.stripes = new ConcurrentMap[size];
+		for (int i = 0; i < size; i++)
+			stripes[i] = new ConcurrentHashMap<String, Lease>();
+		this.mask = size - 1;
+		this.timer = timer;
+		this.remote = remote;
+	}
+
+	/**
+	 * spring里没有定义DistributeLock时使用的进程内实现
+	 * @return
+	 */
+	public static LocalLeaseDistributeLock getDefault() {
+		if (defaultLock == null) {
+			synchronized (LocalLeaseDistributeLock.class) {
+				if (defaultLock == null)
+					defaultLock = new LocalLeaseDistributeLock();
+			}
+		}
+		return defaultLock;
+	}
+
+	@Override
+	public boolean lock(String key, long expire) {
+		if (!lockLocal(key, expire))
+			return false;
+		if (remote == null)
+			return true;
+		boolean locked = false;
+		try {
+			locked = remote.lock(key, expire);
+		} finally {
+			if (!locked)
+				unlockLocal(key);
+		}
+		return locked;
+	}
+
+	@Override
+	public void unlock(String key) {
+		try {
+			if (remote != null)
+				remote.unlock(key);
+		} finally {
+			unlockLocal(key);
+		}
+	}
+
+	/**
+	 * @return 本进程内持有的租约数
+	 */
+	public int size() {
+		int size = 0;
+		for (ConcurrentMap<String, Lease> stripe : stripes)
+			size += stripe.size();
+		return size;
+	}
+
+	/**
+	 * 停止清理到期租约的定时器
+	 */
+	public void close() {
+		timer.stop();
+	}
+
+	private boolean lockLocal(String key, long expire) {
+		ConcurrentMap<String, Lease> stripe = stripeOf(key);
+		Lease lease = new Lease(stripe, key, System.currentTimeMillis() + expire);
+		Lease old = stripe.putIfAbsent(key, lease);
+		//时间轮的精度是一个tick,到期但还没被清理的租约可以直接抢占
+		while (old != null) {
+			if (!old.isExpired())
+				return false;
+			if (stripe.replace(key, old, lease)) {
+				old.cancel();
+				break;
+			}
+			old = stripe.putIfAbsent(key, lease);
+		}
+		lease.schedule(timer, expire);
+		return true;
+	}
+
+	private void unlockLocal(String key) {
+		Lease lease = stripeOf(key).remove(key);
+		if (lease != null)
+			lease.cancel();
+	}
+
+	private ConcurrentMap<String, Lease> stripeOf(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return stripes[h & mask];
+	}
+
+	private static final class Lease implements TimerTask {
+		private final ConcurrentMap<String, Lease> stripe;
+		private final String key;
+		private final long deadline;
+		private volatile Timeout timeout;
+
+		Lease(ConcurrentMap<String, Lease> stripe, String key, long deadline) {
+			this.stripe = stripe;
+			this.key = key;
+			this.deadline = deadline;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() >= deadline;
+		}
+
+		void schedule(Timer timer, long expire) {
+			timeout = timer.newTimeout(this, expire, TimeUnit.MILLISECONDS);
+			//调度之前已经被解锁了
+			if (stripe.get(key) != this)
+				timeout.cancel();
+		}
+
+		void cancel() {
+			Timeout t = timeout;
+			if (t != null)
+				t.cancel();
+		}
+
+		@Override
+		public void run(Timeout timeout) {
+			stripe.remove(key, this);
+		}
+	}
+}
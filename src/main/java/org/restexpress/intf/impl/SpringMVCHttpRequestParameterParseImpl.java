@@ -1,14 +1,13 @@
 package org.restexpress.intf.impl;
 
-import java.io.UnsupportedEncodingException;
-import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
 import java.lang.reflect.Method;
-import java.lang.reflect.Type;
-import java.net.URLDecoder;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.restexpress.ContentType;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.restexpress.Request;
 import org.restexpress.Response;
 import org.restexpress.RestExpress;
@@ -16,14 +15,17 @@ import org.restexpress.domain.ex.SessionInfo;
 import org.restexpress.exception.BadRequestException;
 import org.restexpress.exception.ForbiddenException;
 import org.restexpress.exception.ServiceException;
-import org.restexpress.intf.HttpRequestParameterParseIntf;
+import org.restexpress.intf.PreparableParameterParseIntf;
 import org.restexpress.intf.SessionIntf;
+import org.restexpress.multipart.MultipartUpload;
+import org.restexpress.util.Configuration;
+import org.restexpress.url.FormParameters;
+import org.restexpress.url.QueryParameters;
 import org.restexpress.util.SerializeUtil;
-import org.springframework.core.LocalVariableTableParameterNameDiscoverer;
-import org.springframework.web.bind.annotation.RequestParam;
-import com.fasterxml.jackson.databind.JavaType;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.multipart.FileUpload;
 
 /**
  *  
@@ -51,11 +53,74 @@ import io.netty.handler.codec.http.HttpHeaders;
 	 * @param response
 	 * @return
  */
-public class SpringMVCHttpRequestParameterParseImpl implements HttpRequestParameterParseIntf {
-	private static LocalVariableTableParameterNameDiscoverer localVar = new LocalVariableTableParameterNameDiscoverer();
+public class SpringMVCHttpRequestParameterParseImpl implements PreparableParameterParseIntf, ApplicationListener<ContextRefreshedEvent> {
+	//每个action方法的参数绑定计划,路由构建的时候通过prepare编译好
+	private final ConcurrentMap<Method, ActionParameterPlan> plans = new ConcurrentHashMap<Method, ActionParameterPlan>();
+	//获取会话的spring服务,按bean名字和SessionInfo.getSessionImpl()各取一次,spring容器refresh后清空
+	private final ConcurrentMap<String, SessionIntf> sessionsByName = new ConcurrentHashMap<String, SessionIntf>();
+	private final ConcurrentMap<Class<?>, SessionIntf> sessionsByClass = new ConcurrentHashMap<Class<?>, SessionIntf>();
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		sessionsByName.clear();
+		sessionsByClass.clear();
+	}
+
+	private SessionIntf sessionBean(String name) {
+		SessionIntf si = sessionsByName.get(name);
+		if (si == null) {
+			si = (SessionIntf) RestExpress.getSpringCtx().getBean(name);
+			sessionsByName.put(name, si);
+		}
+		return si;
+	}
+
+	private SessionIntf sessionBean(Class<?> cls) {
+		if (cls == null)
+			return (SessionIntf) RestExpress.getSpringCtx().getBean(cls);
+		SessionIntf si = sessionsByClass.get(cls);
+		if (si == null) {
+			si = (SessionIntf) RestExpress.getSpringCtx().getBean(cls);
+			sessionsByClass.put(cls, si);
+		}
+		return si;
+	}
+
+	@Override
+	public void prepare(Method action) {
+		plan(action);
+	}
+
+	/**
+	 * 返回action的参数绑定计划,没有编译过的话编译一次并缓存
+	 * @param action
+	 * @return
+	 */
+	public ActionParameterPlan plan(Method action) {
+		ActionParameterPlan plan = plans.get(action);
+		if (plan == null) {
+			plan = ActionParameterPlan.compile(action);
+			ActionParameterPlan old = plans.putIfAbsent(action, plan);
+			if (old != null)
+				plan = old;
+		}
+		return plan;
+	}
 
 	@Override
 	public Object[] parse(Method action, Request request,Response response) throws Exception{
+		return parse(plan(action), request, response);
+	}
+
+	/**
+	 * 按编译好的计划从request里取出action需要的参数
+	 * @param plan
+	 * @param request
+	 * @param response
+	 * @return
+	 * @throws Exception
+	 */
+	public Object[] parse(ActionParameterPlan plan, Request request,Response response) throws Exception{
 		String contentType = request.getHeader(HttpHeaders.Names.CONTENT_TYPE);
 		boolean isjson = false;
 		if (contentType != null){ 
@@ -65,14 +130,15 @@ public class SpringMVCHttpRequestParameterParseImpl implements HttpRequestParame
 		//对路径进行统一会话校验，如果需要权限，则用户至少需要登录
 		SessionInfo sessionInfo = null;
 		SessionIntf si = null;		
-			if (request.getPath().indexOf(RestExpress.getConfig().getPermissionCheck()) >= 0)
+			Configuration config = RestExpress.getConfig();
+			if (config != null && request.getPath().indexOf(config.getPermissionCheck()) >= 0)
 			{			
 				if (si == null){
-					HashMap<String,String> privPath = RestExpress.getConfig().getSessionByPath();
+					HashMap<String,String> privPath = config.getSessionByPath();
 					if (privPath != null)
 						for(String path: privPath.keySet())
 							if (request.getPath().indexOf(path) >=0){
-								si = (SessionIntf) RestExpress.getSpringCtx().getBean(privPath.get(path));
+								si = sessionBean(privPath.get(path));
 								break;
 							}
 				}
@@ -84,136 +150,194 @@ public class SpringMVCHttpRequestParameterParseImpl implements HttpRequestParame
 					throw new ForbiddenException("未登录或会话已超时");			
 			}
 			
-			String[] paramNames = localVar.getParameterNames(action);
-			Map<String,Object> postValue = getPostValue(request,paramNames,request.isMethodPost(),isjson);
+			ParameterSource source = new ParameterSource(request, plan, request.isMethodPost(), isjson);
 						
 			//传过来的可能比action目标申明的方法参数少（有默认参数值）
-			Class[] types = action.getParameterTypes();	
-			Type[] gtype = action.getGenericParameterTypes();
-			Object[] values = new Object[types.length]; 
-			Annotation[][] paramsAn = action.getParameterAnnotations();
-			int i = 0;			 
-			for(Class cls: types){					
-				Annotation paramAn = null;
-				String paramName = null;				
-				if (paramsAn[i].length > 0){
-					paramAn = paramsAn[i][0];	
-					if ((paramAn instanceof RequestParam) && ((RequestParam) paramAn).value().length() > 0)
-						paramName = ((RequestParam) paramAn).value();
-				}			
-				//参数名，先用RequestParam里的别名，如果没有定义别名，则使用参数本身名字
-				if (paramName == null)
-					paramName = paramNames[i];
-				
-				Object value = postValue.get(paramName);	
-				if ((paramAn instanceof RequestParam)){
-					if (value==null){
-						if (((RequestParam)paramAn).required())					   
-							throw new BadRequestException(paramName + "参数不能为null");
-						else{
-							values[i++] = null;
-							continue;
-						}
-					}					   	
+			int count = plan.size();
+			Object[] values = new Object[count]; 
+			for(int i = 0; i < count; i++){
+				String paramName = plan.getName(i);
+				ActionParameterPlan.Kind kind = plan.getKind(i);
+				Object value = source.value(kind, paramName);	
+				if (plan.isRequestParam(i) && value == null){
+					if (plan.isRequired(i))					   
+						throw new BadRequestException(paramName + "参数不能为null", false);
+					continue;
 				}
 				try{
-					if (cls.equals(org.restexpress.Request.class)) 
-					  values[i] = request;
-					else if (cls.equals(org.restexpress.Response.class))
+					switch (kind) {
+					case REQUEST:
+						values[i] = request;
+						break;
+					case RESPONSE:
 						values[i] = response;
-					else if (cls.equals(String.class)) //utf-8解码了
+						break;
+					case STRING: //utf-8解码了
 						values[i] = (String)value;
-					else if (cls.equals(Integer.class)){
-						if (value instanceof String)
-							values[i] = Integer.parseInt((String)value);
-						else	
-							values[i] = (Integer)value;
-					}
-					else if (cls.equals(Long.class)){
-						if (value instanceof String)
-							values[i] = Long.parseLong((String)value);
-						else
-							values[i] = (Long)value;
-					}
-					else if (cls.equals(Byte.class)){	
-						if (value instanceof String)
-							values[i] = Byte.parseByte((String)value);
-						else
-							values[i] = (Byte)value;
-					}
-					else if (cls.equals(Short.class)){
-						if (value instanceof String)
-							values[i] = Short.parseShort((String)value);
-						else
-							values[i] = (Short)value;
-					}
-					else if (cls.equals(Double.class)){
-						if (value instanceof String)
-							values[i] = Double.parseDouble((String)value);
-						else
-							values[i] = (Double)value;
-					}
-					else if (SessionInfo.class.isAssignableFrom(cls)){
+						break;
+					case INTEGER:
+					case LONG:
+					case BYTE:
+					case SHORT:
+					case DOUBLE:
+						values[i] = kind.convert(value);
+						break;
+					case ARRAY: //同名参数的全部值
+						values[i] = toArray((List<?>) value, plan.getType(i).getComponentType(), plan.getComponentKind(i));
+						break;
+					case FILE:
+						values[i] = value;
+						break;
+					case FILES: //同名的全部文件
+						values[i] = (value == null ? null : ((List<?>) value).toArray(new FileUpload[0]));
+						break;
+					case SESSION:
 						//有些接口不是以/priv/开头的,但是需要用户回话信息做特殊判断，这里需要重新获取会话(如果有的话)
 						if (sessionInfo == null){ 	
-							SessionInfo obj = (SessionInfo)cls.newInstance();  //这里多创建了一个实例,能否避免?
-							si = (SessionIntf) RestExpress.getSpringCtx().getBean(obj.getSessionImpl());
-							obj = null;
+							si = sessionBean(plan.getSessionImpl(i));
 							sessionInfo = si.getSession(request);
 						}
 						values[i] = sessionInfo;
-					}
-						 				
-					else if (!cls.isPrimitive()){ //注入一个复杂对象	 
-						if (isjson){
-//							values[i] = request.getBodyAs(cls);
-							JavaType jt = TypeFactory.defaultInstance().constructType(gtype[i]);
-							values[i] = SerializeUtil.get().readValue(request.getBodyAsStream(),jt);
-						}
+						break;
+					case COMPLEX: //注入一个复杂对象	 
+						if (isjson)
+							values[i] = SerializeUtil.readValue(request.getBody(),plan.getJavaType(i));
 						else
-							values[i] = SerializeUtil.get().convertValue(postValue,cls);
+							values[i] = SerializeUtil.get().convertValue(source.toMap(),plan.getType(i));
+						break;
+					default:
+						break;
 					}
 				}catch(NumberFormatException  e){					
 					throw new BadRequestException(new StringBuilder("参数").append(paramName).
 							append("值:").append(request.getHeader(paramName)).append("无法转成:").
-							append(cls.getName()).toString());					 
+							append(plan.getType(i).getName()).toString(), false);					 
 				}								
-				i++;					 
 			}
 	        return values;	 
         } 
  
 
+	private static Object toArray(List<?> values, Class<?> componentType, ActionParameterPlan.Kind componentKind) {
+		if (values == null)
+			return null;
+		Object array = Array.newInstance(componentType, values.size());
+		for (int i = 0; i < values.size(); i++)
+			Array.set(array, i, componentKind.convert(values.get(i)));
+		return array;
+	}
+
 	/**
-	 * 返回get里的参数和post里的参数，如果get 和post都出现，以post为准,如果是application/json  text/json
-	 * 方式提交，return 空的参数体
-	 * @param request
-	 * @return
+	 * action参数的取值来源,优先级和原来把参数合并到一个Map里一致:
+	 * 表单提交的body(流式上传时为multipart的字段) > 代码里申明的参数名(url path参数,header) > get的url参数,
+	 * application/json提交时都没有。文件只从流式上传的multipart里取。
+	 * 只在绑定某个参数时才查找和解码它的值,不再复制全部参数;COMPLEX参数需要全部参数时才合并成Map。
+	 * 同名参数(a=1&a=2)用getAll取出全部的值,合并成Map时为List
 	 */
-	private Map<String, Object> getPostValue(Request request,String[] paramNames,boolean post,boolean isjson) {
-		HashMap<String, Object> postValue = new HashMap<>();
-		if (post && isjson) return postValue;
-		//从url串里获取参数
-		if (!post)
-			for(String key : request.getQueryStringMap().keySet())
-			try {
-				postValue.put(key,URLDecoder.decode(request.getQueryStringMap().get(key),ContentType.ENCODING));
-			} catch (UnsupportedEncodingException e1) {
-				 
+	private static final class ParameterSource {
+		private final Request request;
+		private final ActionParameterPlan plan;
+		private final boolean post;
+		private final boolean form;
+		private final boolean none;
+		private final MultipartUpload upload;
+
+		ParameterSource(Request request, ActionParameterPlan plan, boolean post, boolean isjson) {
+			this.request = request;
+			this.plan = plan;
+			this.post = post;
+			this.upload = request.getMultipartUpload();
+			this.form = post && !isjson && upload == null;
+			this.none = post && isjson;
+		}
+
+		/**
+		 * 按参数的绑定方式取值:ARRAY和FILES为List,没有时为null
+		 */
+		Object value(ActionParameterPlan.Kind kind, String name) {
+			switch (kind) {
+			case ARRAY:
+				return getAll(name);
+			case FILE:
+				return (upload == null ? null : upload.getFile(name));
+			case FILES:
+				return (upload == null ? null : upload.getFiles(name));
+			default:
+				return get(name);
 			}
-		//再从url path里获取一些参数值
-		for(String key: paramNames)
-			postValue.put(key,request.getHeader(key));
-		 
-		if (post && !isjson ){			
-			Map<String, List<String>> tmp =  request.getBodyFromUrlFormEncoded();
-			if (tmp != null){					 					 
-				for(String key: tmp.keySet()){
-					List<String> value = tmp.get(key);
-					postValue.put(key,value.get(0));	//这里我们只取第一个值，所以不支持数组的方式					 
-				}
+		}
+
+		Object get(String name) {
+			if (none)
+				return null;
+			if (upload != null) {
+				String value = upload.getAttribute(name);
+				if (value != null)
+					return value;
+			}
+			if (form) {
+				FormParameters body = request.getFormParameters();
+				int index = body.indexOf(name);
+				if (index >= 0)
+					return body.getValue(index);
+			}
+			if (plan.isDeclaredName(name))
+				return request.getHeader(name);
+			if (!post)
+				return request.getQueryParameters().get(name);
+			return null;
+		}
+
+		/**
+		 * @return 全部的值,没有时为null
+		 */
+		List<String> getAll(String name) {
+			if (none)
+				return null;
+			List<String> values = null;
+			if (upload != null)
+				values = upload.getAttributes(name);
+			else if (form)
+				values = request.getFormParameters().getAll(name);
+			if (values == null || values.isEmpty()) {
+				if (plan.isDeclaredName(name))
+					values = request.getHeaders(name);
+				else if (!post)
+					values = request.getQueryParameters().getAll(name);
+			}
+			return (values == null || values.isEmpty() ? null : values);
+		}
+
+		/**
+		 * 全部参数合并成的Map,用来转换COMPLEX参数
+		 */
+		Map<String, Object> toMap() {
+			HashMap<String, Object> map = new HashMap<>();
+			if (none)
+				return map;
+			//从url串里获取参数
+			if (!post) {
+				QueryParameters query = request.getQueryParameters();
+				for (String name : query.names())
+					put(map, name, query.getAll(name));
 			}
+			//再从url path里获取一些参数值
+			for (int i = 0; i < plan.size(); i++) {
+				String key = plan.getDeclaredName(i);
+				if (key != null)
+					map.put(key, request.getHeader(key));
+			}
+			if (upload != null)
+				for (Map.Entry<String, List<String>> entry : upload.getAttributeMap().entrySet())
+					put(map, entry.getKey(), entry.getValue());
+			else if (form)
+				for (Map.Entry<String, List<String>> entry : request.getFormParameters().toMap().entrySet())
+					put(map, entry.getKey(), entry.getValue());
+			return map;
+		}
+
+		private static void put(Map<String, Object> map, String name, List<String> values) {
+			map.put(name, values.size() == 1 ? values.get(0) : values);
 		}
-		return postValue;
 	}
 }
@@ -0,0 +1,153 @@
+package org.restexpress.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全的对数线性直方图(HdrHistogram的桶结构):小于128的值精确记录,更大的值按2的幂分段,每段64个桶,
+ * 相对误差不超过1.6%。记录只有几次无锁的原子操作,不分配内存
+ * @author hanst
+ *
+ */
+public class ConcurrentHistogram {
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+	private final long highestTrackableValue;
+	private final AtomicLongArray counts;
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param highestTrackableValue 可以记录的最大值,更大的值按最大值记录
+	 */
+	public ConcurrentHistogram(long highestTrackableValue) {
+		this.highestTrackableValue = Math.max(highestTrackableValue, SUB_BUCKET_COUNT);
+		this.counts = new AtomicLongArray(indexOf(this.highestTrackableValue) + 1);
+	}
+
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		else if (value > highestTrackableValue)
+			value = highestTrackableValue;
+		counts.incrementAndGet(indexOf(value));
+		totalCount.incrementAndGet();
+		sum.addAndGet(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value))
+			current = max.get();
+	}
+
+	/**
+	 * 当前的计数复制一份,复制过程中的并发记录可能只有一部分计入
+	 * @return
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[counts.length()];
+		long total = 0;
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		return new Snapshot(copy, total, sum.get(), max.get());
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT)
+			return (int) value;
+		//value >> shift落在[SUB_BUCKET_HALF,SUB_BUCKET_COUNT)之间
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) ((value >> shift) - SUB_BUCKET_HALF);
+	}
+
+	static long highestEquivalentValue(int index) {
+		if (index < SUB_BUCKET_COUNT)
+			return index;
+		int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+		long sub = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+		return (sub << shift) + (1L << shift) - 1;
+	}
+
+	/**
+	 * 某一时刻直方图的只读副本
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long totalCount;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long totalCount, long sum, long max) {
+			this.counts = counts;
+			this.totalCount = totalCount;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getTotalCount() {
+			return totalCount;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return totalCount == 0 ? 0 : (double) sum / totalCount;
+		}
+
+		/**
+		 * @param percentile 0到100
+		 * @return 至少percentile%的值不大于的返回值(所在桶的上界)
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (totalCount == 0)
+				return 0;
+			long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= target)
+					return Math.min(highestEquivalentValue(i), max);
+			}
+			return max;
+		}
+
+		/**
+		 * 不大于value的记录数,桶内按上界计算(prometheus histogram的le桶)
+		 * @param value
+		 * @return
+		 */
+		public long getCountAtOrBelow(long value) {
+			long count = 0;
+			for (int i = 0; i < counts.length && highestEquivalentValue(i) <= value; i++)
+				count += counts[i];
+			return count;
+		}
+
+		/**
+		 * 两次快照之间记录的值,用于统计最近一段时间的延迟分布;max取最高非空桶的上界
+		 * @param earlier 同一个直方图较早的快照
+		 * @return
+		 */
+		public Snapshot since(Snapshot earlier) {
+			long[] delta = new long[counts.length];
+			long total = 0;
+			long highest = 0;
+			for (int i = 0; i < delta.length; i++) {
+				delta[i] = Math.max(0, counts[i] - earlier.counts[i]);
+				total += delta[i];
+				if (delta[i] > 0)
+					highest = highestEquivalentValue(i);
+			}
+			return new Snapshot(delta, total, Math.max(0, sum - earlier.sum), Math.min(highest, max));
+		}
+	}
+}
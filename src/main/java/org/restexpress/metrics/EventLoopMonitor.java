@@ -0,0 +1,229 @@
+package org.restexpress.metrics;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.restexpress.intf.SystemStatIntf;
+
+/**
+ * 监控I/O线程(NioEventLoop/EpollEventLoop)和DefaultEventExecutorGroup每个线程是否忙不过来:
+ * 每个线程上每隔interval执行一次探测任务,记录探测任务比预定时间晚执行了多久(排队延迟),同时输出每个线程当前的任务队列长度。
+ * <p/>
+ * I/O线程只在处理完一轮I/O之后才执行任务,处理I/O和执行任务的时间比例由ioRatio决定,
+ * ioRatio越大、I/O越忙,探测任务的延迟就越大;业务线程的延迟就是任务排队的时间。
+ * 线程被一个任务长时间占住时探测任务无法执行,这时按当前时间距预定时间计算延迟(stalled)
+ * <p/>
+ * 探测任务由线程自己调度,不需要额外的线程,线程池关闭后自动停止
+ * @author hanst
+ *
+ */
+public class EventLoopMonitor implements SystemStatIntf {
+	public static final String COMMAND = "loops";
+	//超过1分钟的延迟按1分钟记录
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+	private final long intervalNanos;
+	private final int ioRatio;
+	private final List<Probe> probes = new CopyOnWriteArrayList<Probe>();
+	private volatile boolean stopped = false;
+
+	/**
+	 * @param intervalMillis 探测间隔
+	 * @param ioRatio 配置的ioRation,只用于输出,方便对照
+	 */
+	public EventLoopMonitor(long intervalMillis, int ioRatio) {
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+		this.ioRatio = ioRatio;
+	}
+
+	/**
+	 * 监控一个线程池的所有线程,只支持SingleThreadEventExecutor(netty的event loop和DefaultEventExecutor)
+	 * @param name 线程池的名字,例如boss,worker,executor
+	 * @param group 为null时忽略
+	 * @return
+	 */
+	public EventLoopMonitor monitor(String name, EventExecutorGroup group) {
+		if (group == null)
+			return this;
+		Iterator<EventExecutor> it = group.iterator();
+		int index = 0;
+		while (it.hasNext()) {
+			EventExecutor executor = it.next();
+			if (executor instanceof SingleThreadEventExecutor) {
+				Probe probe = new Probe(name, index, (SingleThreadEventExecutor) executor);
+				probes.add(probe);
+				probe.schedule(System.nanoTime());
+			}
+			index++;
+		}
+		return this;
+	}
+
+	public void stop() {
+		stopped = true;
+	}
+
+	public int getIoRatio() {
+		return ioRatio;
+	}
+
+	public long getIntervalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+	}
+
+	/**
+	 * @return 每个线程一个,按monitor的顺序
+	 */
+	public List<Snapshot> snapshot() {
+		List<Snapshot> result = new ArrayList<Snapshot>(probes.size());
+		long now = System.nanoTime();
+		for (Probe probe : probes)
+			result.add(probe.snapshot(now));
+		return Collections.unmodifiableList(result);
+	}
+
+	@Override
+	public String getStat(String command) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("ioRatio=%d interval=%dms", ioRatio, getIntervalMillis())).append("\r\n");
+		sb.append(String.format("%-12s %8s %10s %10s %10s %10s %10s", "executor", "pending", "last(ms)", "p50(ms)",
+				"p99(ms)", "max(ms)", "stalled(ms)"));
+		for (Snapshot snapshot : snapshot()) {
+			sb.append("\r\n");
+			sb.append(String.format("%-12s %8d %10.3f %10.3f %10.3f %10.3f %10.3f", snapshot.getName(),
+					snapshot.getPendingTasks(), snapshot.getLastLagMicros() / 1000.0,
+					snapshot.getLag().getValueAtPercentile(50) / 1000.0,
+					snapshot.getLag().getValueAtPercentile(99) / 1000.0, snapshot.getLag().getMax() / 1000.0,
+					snapshot.getStalledMicros() / 1000.0));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String[] getCommand() {
+		return new String[] { COMMAND };
+	}
+
+	@Override
+	public String[] commandDesc() {
+		return new String[] { "queueing delay and pending tasks of every event loop and executor thread" };
+	}
+
+	/**
+	 * 一个线程上的探测任务,只在这个线程上执行,字段由其它线程读取
+	 */
+	private class Probe implements Runnable {
+		private final String group;
+		private final int index;
+		private final SingleThreadEventExecutor executor;
+		private final ConcurrentHistogram lag = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS);
+		private volatile long deadline;
+		private volatile long lastLagMicros;
+
+		Probe(String group, int index, SingleThreadEventExecutor executor) {
+			this.group = group;
+			this.index = index;
+			this.executor = executor;
+		}
+
+		@Override
+		public void run() {
+			long now = System.nanoTime();
+			long lagMicros = Math.max(0, now - deadline) / 1000;
+			lastLagMicros = lagMicros;
+			lag.record(lagMicros);
+			schedule(now);
+		}
+
+		void schedule(long now) {
+			if (stopped || executor.isShuttingDown())
+				return;
+			deadline = now + intervalNanos;
+			try {
+				executor.schedule(this, intervalNanos, TimeUnit.NANOSECONDS);
+			} catch (RejectedExecutionException e) {
+				//线程池已经关闭
+			}
+		}
+
+		Snapshot snapshot(long now) {
+			long overdue = now - deadline;
+			long stalled = (overdue > intervalNanos ? overdue / 1000 : 0);
+			return new Snapshot(group, index, executor.pendingTasks(), lastLagMicros, stalled, lag.snapshot());
+		}
+	}
+
+	/**
+	 * 一个线程某一时刻的只读副本
+	 */
+	public static class Snapshot {
+		private final String group;
+		private final int index;
+		private final int pendingTasks;
+		private final long lastLagMicros;
+		private final long stalledMicros;
+		private final ConcurrentHistogram.Snapshot lag;
+
+		Snapshot(String group, int index, int pendingTasks, long lastLagMicros, long stalledMicros,
+				ConcurrentHistogram.Snapshot lag) {
+			this.group = group;
+			this.index = index;
+			this.pendingTasks = pendingTasks;
+			this.lastLagMicros = lastLagMicros;
+			this.stalledMicros = stalledMicros;
+			this.lag = lag;
+		}
+
+		public String getGroup() {
+			return group;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return group-index,例如worker-3
+		 */
+		public String getName() {
+			return group + "-" + index;
+		}
+
+		/**
+		 * @return 当前队列里的任务数
+		 */
+		public int getPendingTasks() {
+			return pendingTasks;
+		}
+
+		/**
+		 * @return 最近一次探测任务的排队延迟,微秒
+		 */
+		public long getLastLagMicros() {
+			return lastLagMicros;
+		}
+
+		/**
+		 * @return 探测任务已经过了预定时间超过一个间隔还没有执行时,超过预定时间多久(微秒),否则为0
+		 */
+		public long getStalledMicros() {
+			return stalledMicros;
+		}
+
+		/**
+		 * @return 所有探测的排队延迟分布,微秒
+		 */
+		public ConcurrentHistogram.Snapshot getLag() {
+			return lag;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package org.restexpress.metrics;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.restexpress.RestExpress;
+import org.restexpress.pipeline.AdmissionController;
+import org.restexpress.pipeline.Bulkhead;
+import org.restexpress.pipeline.RouteMetricsObserver;
+
+/**
+ * 按prometheus的text格式(version 0.0.4)输出服务的指标:
+ * <ul>
+ * <li>每个路由的请求数(按状态码分类),异常数,在途请求数和延迟直方图(RouteMetricsObserver)</li>
+ * <li>DefaultEventExecutorGroup每个线程的任务队列长度</li>
+ * <li>EventLoopMonitor探测到的每个I/O线程和业务线程的排队延迟</li>
+ * <li>Bulkhead线程池的队列长度,活动线程数和拒绝数</li>
+ * <li>AdmissionController限流拒绝的请求数</li>
+ * <li>PooledByteBufAllocator各个arena的分配数和chunk的使用量</li>
+ * <li>allChannels里打开的channel数</li>
+ * </ul>
+ * 直接按ascii写到调用方给的ByteBuf里,不经过String拼接;只读取计数,不加锁,可以在I/O线程里调用
+ * @author hanst
+ *
+ */
+public class PrometheusExposition {
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	//延迟直方图的le桶,单位秒(和prometheus客户端默认的桶一致)
+	private static final String[] BUCKET_LABELS = { "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1",
+			"0.25", "0.5", "1", "2.5", "5", "10" };
+	private static final long[] BUCKET_MICROS = { 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+			1000000, 2500000, 5000000, 10000000 };
+	private static final String[] STATUS_CLASSES = { null, "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+	private final RestExpress restExpress;
+
+	public PrometheusExposition(RestExpress restExpress) {
+		this.restExpress = restExpress;
+	}
+
+	public void render(ByteBuf out) {
+		if (RestExpress.getConfig() == null || RestExpress.getConfig().isRouteMetrics())
+			renderRoutes(out, restExpress.getRouteMetrics());
+		renderExecutor(out, restExpress.getDefaultEventExecutorGroup());
+		if (restExpress.getEventLoopMonitor() != null)
+			renderEventLoops(out, restExpress.getEventLoopMonitor());
+		renderBulkheads(out);
+		if (restExpress.getAdmissionController() != null)
+			renderAdmission(out, restExpress.getAdmissionController());
+		if (restExpress.getChildAllocator() != null)
+			renderAllocator(out, restExpress.getChildAllocator());
+		renderChannels(out, RestExpress.getAllChannels());
+	}
+
+	private void renderRoutes(ByteBuf out, RouteMetricsObserver observer) {
+		List<RouteMetrics.Snapshot> snapshots = observer.snapshot();
+
+		type(out, "restexpress_requests_total", "counter", "Completed requests by route and status class.");
+		for (RouteMetrics.Snapshot snapshot : snapshots)
+			for (int i = 1; i < STATUS_CLASSES.length; i++) {
+				long count = snapshot.getStatusClassCount(i);
+				if (count == 0)
+					continue;
+				name(out, "restexpress_requests_total", "route", snapshot.getName(), "code", STATUS_CLASSES[i]);
+				value(out, count);
+			}
+
+		type(out, "restexpress_request_exceptions_total", "counter", "Requests that raised an exception.");
+		for (RouteMetrics.Snapshot snapshot : snapshots) {
+			name(out, "restexpress_request_exceptions_total", "route", snapshot.getName(), null, null);
+			value(out, snapshot.getErrors());
+		}
+
+		type(out, "restexpress_requests_in_flight", "gauge", "Requests received but not yet completed.");
+		name(out, "restexpress_requests_in_flight", null, null, null, null);
+		value(out, observer.getInFlight());
+
+		type(out, "restexpress_request_duration_seconds", "histogram", "Request latency by route.");
+		for (RouteMetrics.Snapshot snapshot : snapshots) {
+			ConcurrentHistogram.Snapshot latency = snapshot.getLatency();
+			for (int i = 0; i < BUCKET_MICROS.length; i++) {
+				name(out, "restexpress_request_duration_seconds_bucket", "route", snapshot.getName(), "le",
+						BUCKET_LABELS[i]);
+				value(out, latency.getCountAtOrBelow(BUCKET_MICROS[i]));
+			}
+			name(out, "restexpress_request_duration_seconds_bucket", "route", snapshot.getName(), "le", "+Inf");
+			value(out, latency.getTotalCount());
+			name(out, "restexpress_request_duration_seconds_sum", "route", snapshot.getName(), null, null);
+			value(out, latency.getSum() / 1e6);
+			name(out, "restexpress_request_duration_seconds_count", "route", snapshot.getName(), null, null);
+			value(out, latency.getTotalCount());
+		}
+	}
+
+	private void renderExecutor(ByteBuf out, EventExecutorGroup group) {
+		if (group == null)
+			return;
+		type(out, "restexpress_executor_pending_tasks", "gauge",
+				"Tasks queued on each DefaultEventExecutorGroup thread.");
+		Iterator<EventExecutor> it = group.iterator();
+		int index = 0;
+		while (it.hasNext()) {
+			EventExecutor executor = it.next();
+			if (executor instanceof SingleThreadEventExecutor) {
+				name(out, "restexpress_executor_pending_tasks", "executor", Integer.toString(index), null, null);
+				value(out, ((SingleThreadEventExecutor) executor).pendingTasks());
+			}
+			index++;
+		}
+	}
+
+	private void renderEventLoops(ByteBuf out, EventLoopMonitor monitor) {
+		type(out, "restexpress_event_loop_lag_seconds", "gauge",
+				"Queueing delay of the latest probe task on each I/O and executor thread.");
+		for (EventLoopMonitor.Snapshot snapshot : monitor.snapshot()) {
+			name(out, "restexpress_event_loop_lag_seconds", "executor", snapshot.getName(), null, null);
+			value(out, Math.max(snapshot.getLastLagMicros(), snapshot.getStalledMicros()) / 1e6);
+		}
+	}
+
+	private void renderBulkheads(ByteBuf out) {
+		if (restExpress.getBulkheads().isEmpty())
+			return;
+		type(out, "restexpress_bulkhead_queue_size", "gauge", "Tasks queued on each bulkhead.");
+		for (Bulkhead bulkhead : restExpress.getBulkheads().getAll()) {
+			name(out, "restexpress_bulkhead_queue_size", "bulkhead", bulkhead.getName(), null, null);
+			value(out, bulkhead.getQueueSize());
+		}
+		type(out, "restexpress_bulkhead_active_threads", "gauge", "Busy threads of each bulkhead.");
+		for (Bulkhead bulkhead : restExpress.getBulkheads().getAll()) {
+			name(out, "restexpress_bulkhead_active_threads", "bulkhead", bulkhead.getName(), null, null);
+			value(out, bulkhead.getActiveCount());
+		}
+		type(out, "restexpress_bulkhead_rejected_total", "counter", "Tasks rejected because the bulkhead was full.");
+		for (Bulkhead bulkhead : restExpress.getBulkheads().getAll()) {
+			name(out, "restexpress_bulkhead_rejected_total", "bulkhead", bulkhead.getName(), null, null);
+			value(out, bulkhead.getRejectedCount());
+		}
+	}
+
+	private void renderAdmission(ByteBuf out, AdmissionController admission) {
+		type(out, "restexpress_requests_shed_total", "counter",
+				"Requests rejected with 503 because they queued longer than loadShedTarget.");
+		name(out, "restexpress_requests_shed_total", null, null, null, null);
+		value(out, admission.getShedCount());
+	}
+
+	private void renderAllocator(ByteBuf out, PooledByteBufAllocator allocator) {
+		type(out, "restexpress_allocator_active_allocations", "gauge", "Live pooled buffers by arena type.");
+		arenas(out, "restexpress_allocator_active_allocations", allocator, 0);
+		type(out, "restexpress_allocator_allocations_total", "counter", "Pooled buffers allocated by arena type.");
+		arenas(out, "restexpress_allocator_allocations_total", allocator, 1);
+		type(out, "restexpress_allocator_chunk_bytes", "gauge", "Bytes held in arena chunks by arena type.");
+		arenas(out, "restexpress_allocator_chunk_bytes", allocator, 2);
+		type(out, "restexpress_allocator_used_bytes", "gauge", "Bytes of arena chunks in use by arena type.");
+		arenas(out, "restexpress_allocator_used_bytes", allocator, 3);
+	}
+
+	private void arenas(ByteBuf out, String metric, PooledByteBufAllocator allocator, int kind) {
+		name(out, metric, "type", "heap", null, null);
+		value(out, sum(allocator.heapArenas(), kind));
+		name(out, metric, "type", "direct", null, null);
+		value(out, sum(allocator.directArenas(), kind));
+	}
+
+	private static long sum(List<PoolArenaMetric> arenas, int kind) {
+		long total = 0;
+		for (PoolArenaMetric arena : arenas) {
+			if (kind == 0)
+				total += arena.numActiveAllocations();
+			else if (kind == 1)
+				total += arena.numAllocations();
+			else
+				for (PoolChunkListMetric list : arena.chunkLists())
+					for (PoolChunkMetric chunk : list)
+						total += (kind == 2 ? chunk.chunkSize() : chunk.chunkSize() - chunk.freeBytes());
+		}
+		return total;
+	}
+
+	private void renderChannels(ByteBuf out, ChannelGroup channels) {
+		type(out, "restexpress_open_channels", "gauge", "Open channels, including the listening channels.");
+		name(out, "restexpress_open_channels", null, null, null, null);
+		value(out, channels.size());
+	}
+
+	private static void type(ByteBuf out, String metric, String type, String help) {
+		ascii(out, "# HELP ");
+		ascii(out, metric);
+		out.writeByte(' ');
+		ascii(out, help);
+		ascii(out, "\n# TYPE ");
+		ascii(out, metric);
+		out.writeByte(' ');
+		ascii(out, type);
+		out.writeByte('\n');
+	}
+
+	/**
+	 * 写指标名和最多2个label,label名为null的不写
+	 */
+	private static void name(ByteBuf out, String metric, String label1, String value1, String label2, String value2) {
+		ascii(out, metric);
+		if (label1 == null)
+			return;
+		out.writeByte('{');
+		label(out, label1, value1);
+		if (label2 != null) {
+			out.writeByte(',');
+			label(out, label2, value2);
+		}
+		out.writeByte('}');
+	}
+
+	private static void label(ByteBuf out, String name, String value) {
+		ascii(out, name);
+		ascii(out, "=\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				out.writeByte('\\');
+				out.writeByte(c);
+			} else if (c == '\n') {
+				ascii(out, "\\n");
+			} else if (c < 0x80) {
+				out.writeByte(c);
+			} else {
+				//url pattern里很少出现非ascii字符,按utf-8写,代理对一起写
+				int end = (Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1);
+				out.writeBytes(value.substring(i, end).getBytes(CharsetUtil.UTF_8));
+				i = end - 1;
+			}
+		}
+		out.writeByte('"');
+	}
+
+	private static void value(ByteBuf out, long value) {
+		out.writeByte(' ');
+		ascii(out, Long.toString(value));
+		out.writeByte('\n');
+	}
+
+	private static void value(ByteBuf out, double value) {
+		out.writeByte(' ');
+		ascii(out, Double.toString(value));
+		out.writeByte('\n');
+	}
+
+	private static void ascii(ByteBuf out, String s) {
+		for (int i = 0; i < s.length(); i++)
+			out.writeByte(s.charAt(i));
+	}
+}
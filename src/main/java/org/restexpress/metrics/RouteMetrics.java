@@ -0,0 +1,135 @@
+package org.restexpress.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一个路由(url pattern)的指标:请求数,异常数,按状态码分类(1xx-5xx)的计数,在途请求数和延迟直方图(微秒)
+ * @author hanst
+ *
+ */
+public class RouteMetrics {
+	//超过1分钟的延迟都按1分钟记录
+	public static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+	private final String name;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLongArray statusClasses = new AtomicLongArray(6);
+	private final AtomicLong inFlight = new AtomicLong();
+	private final ConcurrentHistogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS);
+
+	public RouteMetrics(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void started() {
+		inFlight.incrementAndGet();
+	}
+
+	public void failed() {
+		errors.incrementAndGet();
+	}
+
+	/**
+	 * @param status http状态码
+	 * @param latencyMicros
+	 * @param wasStarted 是否调用过started
+	 */
+	public void completed(int status, long latencyMicros, boolean wasStarted) {
+		if (wasStarted)
+			inFlight.decrementAndGet();
+		requests.incrementAndGet();
+		int statusClass = status / 100;
+		if (statusClass > 0 && statusClass < 6)
+			statusClasses.incrementAndGet(statusClass);
+		latency.record(latencyMicros);
+	}
+
+	public Snapshot snapshot() {
+		long[] classes = new long[6];
+		for (int i = 1; i < classes.length; i++)
+			classes[i] = statusClasses.get(i);
+		return new Snapshot(name, requests.get(), errors.get(), classes, inFlight.get(), latency.snapshot());
+	}
+
+	/**
+	 * 某一时刻指标的只读副本
+	 */
+	public static class Snapshot {
+		private final String name;
+		private final long requests;
+		private final long errors;
+		private final long[] statusClasses;
+		private final long inFlight;
+		private final ConcurrentHistogram.Snapshot latency;
+
+		Snapshot(String name, long requests, long errors, long[] statusClasses, long inFlight,
+				ConcurrentHistogram.Snapshot latency) {
+			this.name = name;
+			this.requests = requests;
+			this.errors = errors;
+			this.statusClasses = statusClasses;
+			this.inFlight = inFlight;
+			this.latency = latency;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getRequests() {
+			return requests;
+		}
+
+		/**
+		 * @return action或者处理过程中抛出异常的请求数
+		 */
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * @param statusClass 1到5,对应1xx到5xx
+		 * @return
+		 */
+		public long getStatusClassCount(int statusClass) {
+			return statusClass > 0 && statusClass < statusClasses.length ? statusClasses[statusClass] : 0;
+		}
+
+		public long getInFlight() {
+			return inFlight;
+		}
+
+		/**
+		 * @return 延迟分布,单位微秒
+		 */
+		public ConcurrentHistogram.Snapshot getLatency() {
+			return latency;
+		}
+
+		public long getP50Micros() {
+			return latency.getValueAtPercentile(50);
+		}
+
+		public long getP99Micros() {
+			return latency.getValueAtPercentile(99);
+		}
+
+		public long getP999Micros() {
+			return latency.getValueAtPercentile(99.9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s requests=%d errors=%d 2xx=%d 4xx=%d 5xx=%d inFlight=%d p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms",
+					name, requests, errors, statusClasses[2], statusClasses[4], statusClasses[5], inFlight,
+					getP50Micros() / 1000.0, getP99Micros() / 1000.0, getP999Micros() / 1000.0, latency.getMax() / 1000.0);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package org.restexpress.multipart;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+
+/**
+ * MultipartUploadHandler解码完一个流式上传请求后交给request handler的请求:
+ * header和原请求一样(去掉Transfer-Encoding),body为空,上传的内容在getUpload()里
+ * @author hanst
+ *
+ */
+public class MultipartHttpRequest extends DefaultFullHttpRequest {
+	private final MultipartUpload upload;
+
+	public MultipartHttpRequest(HttpRequest request, MultipartUpload upload) {
+		super(request.getProtocolVersion(), request.getMethod(), request.getUri(), Unpooled.EMPTY_BUFFER);
+		this.upload = upload;
+		headers().set(request.headers());
+		headers().remove(HttpHeaders.Names.TRANSFER_ENCODING);
+		setDecoderResult(request.getDecoderResult());
+	}
+
+	public MultipartUpload getUpload() {
+		return upload;
+	}
+}
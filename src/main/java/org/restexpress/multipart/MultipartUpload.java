@@ -0,0 +1,130 @@
+package org.restexpress.multipart;
+
+import io.netty.handler.codec.http.multipart.Attribute;
+import io.netty.handler.codec.http.multipart.FileUpload;
+import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
+import io.netty.handler.codec.http.multipart.InterfaceHttpData;
+import io.netty.handler.codec.http.multipart.InterfaceHttpData.HttpDataType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.restexpress.exception.ServiceException;
+
+/**
+ * 流式上传的路由(RouteBuilder.useStreamingMultipartUpload)解码好的multipart/form-data请求体:
+ * 普通字段(Attribute)和文件(FileUpload)按出现的顺序保存,同名的都保留。
+ * 超过uploadSpillThreshold的part在临时文件里,请求处理完(DefaultRequestHandler通知onComplete之后)调用destroy删除,
+ * 需要保留文件时在action里用FileUpload.renameTo()移走
+ * @author hanst
+ *
+ */
+public class MultipartUpload {
+	private final HttpPostRequestDecoder decoder;
+	private final List<InterfaceHttpData> datas;
+	private final AtomicBoolean destroyed = new AtomicBoolean(false);
+
+	/**
+	 * @param decoder 已经offer了LastHttpContent的decoder
+	 */
+	public MultipartUpload(HttpPostRequestDecoder decoder) {
+		this.decoder = decoder;
+		this.datas = decoder.getBodyHttpDatas();
+	}
+
+	/**
+	 * @return 全部的part,按请求里的顺序
+	 */
+	public List<InterfaceHttpData> getDatas() {
+		return datas;
+	}
+
+	/**
+	 * @param name
+	 * @return 第一个同名字段的值,没有时为null
+	 */
+	public String getAttribute(String name) {
+		for (InterfaceHttpData data : datas)
+			if (data.getHttpDataType() == HttpDataType.Attribute && name.equals(data.getName()))
+				return valueOf((Attribute) data);
+		return null;
+	}
+
+	/**
+	 * @param name
+	 * @return 同名字段的全部值,没有时为null
+	 */
+	public List<String> getAttributes(String name) {
+		List<String> values = null;
+		for (InterfaceHttpData data : datas)
+			if (data.getHttpDataType() == HttpDataType.Attribute && name.equals(data.getName())) {
+				if (values == null)
+					values = new ArrayList<String>(1);
+				values.add(valueOf((Attribute) data));
+			}
+		return values;
+	}
+
+	/**
+	 * @return 全部字段,同名的值按顺序放在一个List里;不含文件
+	 */
+	public Map<String, List<String>> getAttributeMap() {
+		Map<String, List<String>> map = new LinkedHashMap<String, List<String>>();
+		for (InterfaceHttpData data : datas)
+			if (data.getHttpDataType() == HttpDataType.Attribute) {
+				List<String> values = map.get(data.getName());
+				if (values == null) {
+					values = new ArrayList<String>(1);
+					map.put(data.getName(), values);
+				}
+				values.add(valueOf((Attribute) data));
+			}
+		return map;
+	}
+
+	/**
+	 * @param name
+	 * @return 第一个同名的文件,没有时为null
+	 */
+	public FileUpload getFile(String name) {
+		for (InterfaceHttpData data : datas)
+			if (data.getHttpDataType() == HttpDataType.FileUpload && name.equals(data.getName()))
+				return (FileUpload) data;
+		return null;
+	}
+
+	/**
+	 * @param name
+	 * @return 同名的全部文件(&lt;input type="file" multiple&gt;),没有时为null
+	 */
+	public List<FileUpload> getFiles(String name) {
+		List<FileUpload> files = null;
+		for (InterfaceHttpData data : datas)
+			if (data.getHttpDataType() == HttpDataType.FileUpload && name.equals(data.getName())) {
+				if (files == null)
+					files = new ArrayList<FileUpload>(1);
+				files.add((FileUpload) data);
+			}
+		return files;
+	}
+
+	/**
+	 * 释放内存里的part,删除临时文件(已经renameTo的文件不删除),只执行一次
+	 */
+	public void destroy() {
+		if (destroyed.compareAndSet(false, true))
+			decoder.destroy();
+	}
+
+	private static String valueOf(Attribute attribute) {
+		try {
+			return attribute.getValue();
+		} catch (IOException e) {
+			throw new ServiceException("读取上传字段" + attribute.getName() + "失败:" + e.getMessage());
+		}
+	}
+}
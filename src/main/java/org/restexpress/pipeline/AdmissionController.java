@@ -0,0 +1,126 @@
+package org.restexpress.pipeline;
+
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restexpress.domain.ex.ServerResponse;
+import org.restexpress.response.PrebuiltResponse;
+import org.restexpress.route.Route;
+import org.restexpress.util.Configuration;
+
+/**
+ * 按请求在DefaultEventExecutorGroup队列里等待的时间限流(CoDel):
+ * <ul>
+ * <li>等待时间由ArrivalStampHandler在I/O线程里记录,业务线程开始处理时算出</li>
+ * <li>每个业务线程单独统计,一个观察窗口(loadShedInterval)内最短的等待时间都超过目标(loadShedTarget),
+ * 说明队列一直没有清空,进入过载状态,下一个窗口里等待超过目标的请求直接返回503;
+ * 不过载时只拒绝等待超过一个窗口的请求</li>
+ * <li>loadShedPriorityFlags里flag的路由不拒绝,loadShedLowPriorityFlags里flag的路由等待超过目标就拒绝</li>
+ * </ul>
+ * 拒绝时不执行action,写回预先创建好的503响应,客户端可以马上重试其它节点,不会等到超时。
+ * <p/>
+ * 同一个连接上pipelining的多个请求只记录最早一个的时间,后面的请求不参与统计,按当前状态放行
+ * @author hanst
+ *
+ */
+public class AdmissionController {
+	private final long targetNanos;
+	private final long intervalNanos;
+	private final String[] priorityFlags;
+	private final String[] lowPriorityFlags;
+	private final ConcurrentMap<EventExecutor, CoDel> states = new ConcurrentHashMap<EventExecutor, CoDel>();
+	private final AtomicLong shed = new AtomicLong();
+	private final PrebuiltResponse rejection = new PrebuiltResponse(HttpResponseStatus.SERVICE_UNAVAILABLE,
+			new ServerResponse(503, "服务繁忙")).header(HttpHeaders.Names.RETRY_AFTER, 1);
+
+	/**
+	 * @param config
+	 * @return netty.properties里loadShedTarget为0时为null
+	 */
+	public static AdmissionController fromConfig(Configuration config) {
+		if (config == null || config.getLoadShedTarget() <= 0)
+			return null;
+		return new AdmissionController(config.getLoadShedTarget(), config.getLoadShedInterval(),
+				config.getLoadShedPriorityFlags(), config.getLoadShedLowPriorityFlags());
+	}
+
+	/**
+	 * @param targetMillis 可以接受的排队时间
+	 * @param intervalMillis 观察窗口,应该比target大很多(CoDel建议5ms/100ms)
+	 * @param priorityFlags 不拒绝的路由flag
+	 * @param lowPriorityFlags 排队超过target就拒绝的路由flag
+	 */
+	public AdmissionController(long targetMillis, long intervalMillis, String[] priorityFlags, String[] lowPriorityFlags) {
+		this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(targetMillis, intervalMillis));
+		this.priorityFlags = priorityFlags;
+		this.lowPriorityFlags = lowPriorityFlags;
+	}
+
+	/**
+	 * 只在executor线程里调用
+	 * @param executor 处理请求的业务线程
+	 * @param sojournNanos ArrivalStampHandler.sojourn()的返回值
+	 * @param route
+	 * @return false 应该拒绝
+	 */
+	public boolean admit(EventExecutor executor, long sojournNanos, Route route) {
+		if (route.containsAnyFlags(priorityFlags))
+			return true;
+		CoDel state = states.get(executor);
+		if (state == null) {
+			state = new CoDel();
+			CoDel exists = states.putIfAbsent(executor, state);
+			if (exists != null)
+				state = exists;
+		}
+		boolean admitted = state.admit(sojournNanos, System.nanoTime(), route.containsAnyFlags(lowPriorityFlags));
+		if (!admitted)
+			shed.incrementAndGet();
+		return admitted;
+	}
+
+	/**
+	 * @return 预先创建好的503响应
+	 */
+	public PrebuiltResponse getRejection() {
+		return rejection;
+	}
+
+	/**
+	 * @return 拒绝的请求数
+	 */
+	public long getShedCount() {
+		return shed.get();
+	}
+
+	/**
+	 * 一个业务线程的状态,只由这个线程读写
+	 */
+	private class CoDel {
+		private long intervalStart = System.nanoTime();
+		private long minSojourn = Long.MAX_VALUE;
+		private boolean overloaded = false;
+
+		boolean admit(long sojournNanos, long now, boolean lowPriority) {
+			if (now - intervalStart >= intervalNanos) {
+				//上一个窗口里没有一个请求的等待时间低于目标,队列一直积压
+				overloaded = (minSojourn != Long.MAX_VALUE && minSojourn > targetNanos);
+				minSojourn = Long.MAX_VALUE;
+				intervalStart = now;
+			}
+			if (sojournNanos < 0)
+				return true;
+			if (sojournNanos < minSojourn)
+				minSojourn = sojournNanos;
+			long threshold = (overloaded || lowPriority ? targetNanos : intervalNanos);
+			return sojournNanos <= threshold;
+		}
+	}
+}
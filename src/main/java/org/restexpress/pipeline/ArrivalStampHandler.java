@@ -0,0 +1,56 @@
+package org.restexpress.pipeline;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * request handler在业务线程池里执行时,放在它前面的I/O线程里,记录请求到达的时间,
+ * request handler开始处理时用sojourn()取出,得到请求在线程池队列里等待的时间(AdmissionController限流),
+ * 请求的deadline也从到达时间开始算。
+ * <p/>
+ * 同一个连接上pipelining的多个请求只保留最早一个没取走的时间,后面的请求取不到(返回-1)
+ * @author hanst
+ *
+ */
+@Sharable
+public class ArrivalStampHandler extends ChannelInboundHandlerAdapter {
+	public static final String HANDLER_NAME = "arrivalStamp";
+	public static final ArrivalStampHandler INSTANCE = new ArrivalStampHandler();
+	private static final AttributeKey<AtomicLong> STAMP_KEY = AttributeKey.valueOf("arrivalStamp");
+
+	private ArrivalStampHandler() {
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof FullHttpRequest) {
+			Attribute<AtomicLong> attr = ctx.channel().attr(STAMP_KEY);
+			AtomicLong stamp = attr.get();
+			if (stamp == null) {
+				stamp = new AtomicLong();
+				AtomicLong exists = attr.setIfAbsent(stamp);
+				if (exists != null)
+					stamp = exists;
+			}
+			stamp.compareAndSet(0, System.nanoTime());
+		}
+		ctx.fireChannelRead(msg);
+	}
+
+	/**
+	 * 在request handler里调用,取出I/O线程记录的时间,每个请求只能调用一次
+	 * @param ctx
+	 * @return 请求在队列里等待的纳秒数,没有记录时为-1
+	 */
+	public static long sojourn(ChannelHandlerContext ctx) {
+		AtomicLong stamp = ctx.channel().attr(STAMP_KEY).get();
+		long received = (stamp == null ? 0 : stamp.getAndSet(0));
+		return received == 0 ? -1 : Math.max(0, System.nanoTime() - received);
+	}
+}
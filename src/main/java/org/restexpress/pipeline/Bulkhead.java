@@ -0,0 +1,69 @@
+package org.restexpress.pipeline;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一组路由独占的业务线程池,队列有界,满了以后直接拒绝(返回503),
+ * 避免一个慢的controller把DefaultEventExecutorGroup的线程全部占满
+ * @author hanst
+ *
+ */
+public class Bulkhead {
+	private final String name;
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong rejected = new AtomicLong();
+
+	public Bulkhead(String name, int threads, int queueSize) {
+		this.name = name;
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new DefaultThreadFactory("bulkhead-" + name, true),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * 提交任务,线程和队列都满的时候抛出RejectedExecutionException
+	 * @param task
+	 */
+	public void execute(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getThreads() {
+		return executor.getMaximumPoolSize();
+	}
+
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	public int getQueueCapacity() {
+		return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
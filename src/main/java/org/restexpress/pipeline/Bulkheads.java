@@ -0,0 +1,117 @@
+package org.restexpress.pipeline;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.restexpress.Parameters;
+import org.restexpress.common.exception.ConfigurationException;
+import org.restexpress.route.Route;
+import org.restexpress.util.Configuration;
+
+/**
+ * 路由到Bulkhead线程池的映射,按下面的顺序确定一个路由使用哪个线程池:
+ * <ol>
+ * <li>路由参数Parameters.Executor.BULKHEAD,即RouteBuilder.bulkhead(name)</li>
+ * <li>路由的flag和某个线程池的名字相同</li>
+ * <li>netty.properties里bulkheadRoutes配置的路径前缀</li>
+ * </ol>
+ * 都没有的路由继续在DefaultEventExecutorGroup里执行
+ * <p/>
+ * netty.properties配置示例:
+ * <pre>
+ * bulkheads=report=8:200;pay=4:50
+ * bulkheadRoutes=/report/=report;/priv/pay/=pay
+ * </pre>
+ * @author hanst
+ *
+ */
+public class Bulkheads {
+	private final Map<String, Bulkhead> bulkheads = new LinkedHashMap<String, Bulkhead>();
+	private final Map<String, String> routePrefixes = new LinkedHashMap<String, String>();
+	//按路由的完整url pattern缓存(非sharable的handler每个连接都有一份Route实例);value为noBulkhead表示不使用Bulkhead
+	private final ConcurrentMap<String, Object> byPattern = new ConcurrentHashMap<String, Object>();
+	private final Object noBulkhead = new Object();
+
+	/**
+	 * 按netty.properties里的bulkheads和bulkheadRoutes创建
+	 * @param config
+	 * @return
+	 * @throws ConfigurationException bulkheads的格式不对,启动失败
+	 */
+	public static Bulkheads fromConfig(Configuration config) {
+		Bulkheads result = new Bulkheads();
+		if (config == null)
+			return result;
+		if (config.getBulkheads() != null)
+			for (Map.Entry<String, String> entry : config.getBulkheads().entrySet()) {
+				String[] sizes = entry.getValue().split(":");
+				try {
+					result.add(new Bulkhead(entry.getKey(), Integer.parseInt(sizes[0].trim()),
+							sizes.length > 1 ? Integer.parseInt(sizes[1].trim()) : Integer.parseInt(sizes[0].trim())));
+				} catch (RuntimeException e) {
+					throw new ConfigurationException("bulkheads配置错误:" + entry.getKey() + "=" + entry.getValue()
+							+ ",格式为 名字=线程数:队列长度," + e);
+				}
+			}
+		if (config.getBulkheadRoutes() != null)
+			result.routePrefixes.putAll(config.getBulkheadRoutes());
+		return result;
+	}
+
+	public Bulkheads add(Bulkhead bulkhead) {
+		bulkheads.put(bulkhead.getName(), bulkhead);
+		byPattern.clear();
+		return this;
+	}
+
+	public boolean isEmpty() {
+		return bulkheads.isEmpty();
+	}
+
+	public Bulkhead get(String name) {
+		return bulkheads.get(name);
+	}
+
+	public Collection<Bulkhead> getAll() {
+		return Collections.unmodifiableCollection(bulkheads.values());
+	}
+
+	/**
+	 * @param route
+	 * @return 路由使用的线程池,没有的话为null
+	 */
+	public Bulkhead forRoute(Route route) {
+		if (bulkheads.isEmpty())
+			return null;
+		String pattern = route.getFullPattern();
+		Object cached = byPattern.get(pattern);
+		if (cached == null) {
+			Bulkhead bulkhead = resolve(route, pattern);
+			cached = (bulkhead == null ? noBulkhead : bulkhead);
+			byPattern.put(pattern, cached);
+		}
+		return cached == noBulkhead ? null : (Bulkhead) cached;
+	}
+
+	private Bulkhead resolve(Route route, String pattern) {
+		Object name = route.getParameter(Parameters.Executor.BULKHEAD);
+		if (name != null)
+			return bulkheads.get(name.toString());
+		for (Map.Entry<String, Bulkhead> entry : bulkheads.entrySet())
+			if (route.isFlagged(entry.getKey()))
+				return entry.getValue();
+		for (Map.Entry<String, String> entry : routePrefixes.entrySet())
+			if (pattern.startsWith(entry.getKey()))
+				return bulkheads.get(entry.getValue());
+		return null;
+	}
+
+	public void shutdown() {
+		for (Bulkhead bulkhead : bulkheads.values())
+			bulkhead.shutdown();
+	}
+}
@@ -0,0 +1,22 @@
+package org.restexpress.pipeline;
+
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpResponse;
+
+import org.restexpress.response.FileDownloadWriter;
+
+/**
+ * HttpContentCompressor,但是FileDownloadWriter零拷贝写出的响应(header是UncompressedResponse)不压缩:
+ * 后面跟着的是FileRegion,压缩的handler处理不了,图片,压缩包等再压缩也没有意义
+ * @author hanst
+ *
+ */
+public class ContentCompressor extends HttpContentCompressor {
+
+	@Override
+	protected Result beginEncode(HttpResponse headers, String acceptEncoding) throws Exception {
+		if (headers instanceof FileDownloadWriter.UncompressedResponse)
+			return null;
+		return super.beginEncode(headers, acceptEncoding);
+	}
+}
@@ -16,7 +16,7 @@
  */
 package org.restexpress.pipeline;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -26,25 +26,44 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
 
+import java.io.File;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.restexpress.ContentType;
+import org.restexpress.Flags;
 import org.restexpress.Request;
 import org.restexpress.Response;
+import org.restexpress.RestExpress;
+import org.restexpress.annontation.DupRequestAspect;
+import org.restexpress.domain.ex.ServerResponse;
 import org.restexpress.exception.DefaultExceptionMapper;
 import org.restexpress.exception.ExceptionMapping;
 import org.restexpress.exception.ExceptionUtils;
 import org.restexpress.exception.ServiceException;
+import org.restexpress.multipart.MultipartUpload;
+import org.restexpress.response.ErrorBodyCache;
+import org.restexpress.response.FileDownload;
 import org.restexpress.response.HttpResponseWriter;
+import org.restexpress.response.IdempotentResponseCache;
+import org.restexpress.response.PrebuiltResponse;
+import org.restexpress.response.StreamingCollection;
+import org.restexpress.response.StreamingCollectionWriter;
 import org.restexpress.route.Action;
 import org.restexpress.route.RouteResolver;
 import org.restexpress.serialization.SerializationProvider;
 import org.restexpress.serialization.SerializationSettings;
+import org.restexpress.util.AsyncResults;
+import org.restexpress.util.Configuration;
 import org.restexpress.util.HttpSpecification;
+import org.restexpress.util.RateLimitedLog;
 
 /**
  * @author toddf
@@ -56,6 +75,9 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
 {
     //SECTION: CONSTANTS
     private static final AttributeKey<MessageContext> CONTEXT_KEY = AttributeKey.valueOf("context");
+    private static final PrebuiltResponse DEADLINE_EXCEEDED = new PrebuiltResponse(HttpResponseStatus.GATEWAY_TIMEOUT,
+    	new ServerResponse(504, "请求已超时"));
+    private static final RateLimitedLog ERROR_LOG = new RateLimitedLog(DefaultRequestHandler.class, 10000);
 
 	// SECTION: INSTANCE VARIABLES
 
@@ -68,6 +90,26 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
 	private ExceptionMapping exceptionMap = new DefaultExceptionMapper();
 	private List<MessageObserver> messageObservers = new ArrayList<MessageObserver>();
 	private boolean shouldEnforceHttpSpec = true;
+	private volatile IdempotentResponseCache idempotentCache;
+	private final ErrorBodyCache errorBodies = new ErrorBodyCache();
+	private Bulkheads bulkheads = new Bulkheads();
+	private AdmissionController admissionController = null;
+	private final ResponseSequence.Processor sequenced = new ResponseSequence.Processor()
+	{
+		@Override
+		public void process(ChannelHandlerContext ctx, FullHttpRequest request, long sojourn, long arrived)
+		{
+			try
+			{
+				handle(ctx, request, sojourn, arrived);
+			}
+			catch (Throwable t)
+			{
+				ERROR_LOG.error("pipelined " + t.getClass().getName(), "处理pipelining的请求失败", t);
+				ctx.channel().close();
+			}
+		}
+	};
 
 
 	// SECTION: CONSTRUCTORS
@@ -92,6 +134,10 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
 		this.routeResolver = routeResolver;
 	}
 
+	public RouteResolver getRouteResolver() {
+		return routeResolver;
+	}
+
 	//add by hanst
 	public void setSerializationProvider(SerializationProvider serializationProvider) {
 		this.serializationProvider = serializationProvider;
@@ -137,6 +183,59 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
 		this.responseWriter = writer;
 	}
 
+	public void setBulkheads(Bulkheads bulkheads)
+	{
+		this.bulkheads = bulkheads;
+	}
+
+	public Bulkheads getBulkheads()
+	{
+		return bulkheads;
+	}
+
+	/**
+	 * @param controller 为null时不限流
+	 */
+	public void setAdmissionController(AdmissionController controller)
+	{
+		this.admissionController = controller;
+	}
+
+	public AdmissionController getAdmissionController()
+	{
+		return admissionController;
+	}
+
+	public void setIdempotentCache(IdempotentResponseCache cache)
+	{
+		this.idempotentCache = cache;
+	}
+
+	/**
+	 * @return DupRequestAspect幂等接口的响应缓存,没有设置的话按netty.properties创建
+	 */
+	public IdempotentResponseCache getIdempotentCache()
+	{
+		IdempotentResponseCache cache = idempotentCache;
+
+		if (cache == null)
+		{
+			synchronized (this)
+			{
+				if (idempotentCache == null)
+				{
+					Configuration config = RestExpress.getConfig();
+					idempotentCache = (config == null ? new IdempotentResponseCache(64 * 1024 * 1024, 10000)
+						: new IdempotentResponseCache(config.getIdempotentCacheMaxBytes(), config.getIdempotentCacheMaxEntries()));
+				}
+
+				cache = idempotentCache;
+			}
+		}
+
+		return cache;
+	}
+
 
 	// SECTION: SIMPLE-CHANNEL-UPSTREAM-HANDLER
 
@@ -144,19 +243,214 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
 	public void channelRead0(ChannelHandlerContext ctx, FullHttpRequest event)
 	throws Exception
 	{
+		ResponseSequence sequence = ResponseSequence.of(ctx, sequenced);
+		long sojourn = ArrivalStampHandler.sojourn(ctx);
+
+		// 同一个连接上前面的响应还没写出(Bulkhead,异步结果,幂等接口等待,流式响应),等它写出后再处理,响应不能乱序
+		if (sequence.isBusy())
+		{
+			sequence.enqueue(event, sojourn);
+			return;
+		}
+
+		handle(ctx, event, sojourn, 0);
+	}
+
+	/**
+	 * @param arrived 请求到达的System.nanoTime(),0时按sojourn或者Request创建的时间算
+	 */
+	private void handle(ChannelHandlerContext ctx, FullHttpRequest event, long sojourn, long arrived)
+	throws Exception
+	{
+		ResponseSequence sequence = ResponseSequence.of(ctx, sequenced);
+		AdmissionController admission = admissionController;
 		MessageContext context = createInitialContext(ctx, event);
+		sequence.begin();
+		boolean dispatched = false;
 
 		try
 		{
-			processRequest(ctx, context);
+			notifyReceived(context);
+			resolveRoute(context);
+			notifyRouted(context);
+			context.setDeadlineNanos(resolveDeadline(context, sojourn, arrived));
+
+			if (context.isDeadlineExceeded())
+			{
+				expire(ctx, context, event);
+				return;
+			}
+
+			if (admission != null && !admission.admit(ctx.executor(), sojourn, context.getAction().getRoute()))
+			{
+				shed(ctx, context, event, admission);
+				return;
+			}
+
+			Bulkhead bulkhead = bulkheads.forRoute(context.getAction().getRoute());
+
+			if (bulkhead == null)
+			{
+				dispatched = !processRequest(ctx, context);
+			}
+			else
+			{
+				dispatched = dispatch(ctx, context, event, bulkhead);
+			}
 		}
 		catch(Throwable t)
 		{
-			handleRestExpressException(ctx, t);
+			handleRestExpressException(ctx, context, t);
 		}
 		finally
 		{
-			notifyComplete(context);
+			if (!dispatched)
+			{
+				notifyComplete(context);
+				sequence.end();
+			}
+		}
+	}
+
+	/**
+	 * 把请求交给路由独占的Bulkhead线程池执行,线程池满了直接返回503。
+	 * 执行完后在Bulkhead线程里写响应并flush(channelReadComplete的flush已经执行过了),
+	 * 然后ResponseSequence才处理这个连接上排队的下一个请求
+	 * 
+	 * @return true 已经提交到线程池,由线程池里的任务(或者异步结果完成后)负责notifyComplete和ResponseSequence.end
+	 */
+	private boolean dispatch(final ChannelHandlerContext ctx, final MessageContext context, final FullHttpRequest event, Bulkhead bulkhead)
+	throws Exception
+	{
+		event.retain();
+
+		try
+		{
+			bulkhead.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					boolean completed = true;
+
+					try
+					{
+						if (context.isDeadlineExceeded())
+						{
+							expire(ctx, context, event);
+						}
+						else
+						{
+							completed = processRequest(ctx, context);
+						}
+					}
+					catch(Throwable t)
+					{
+						try
+						{
+							handleRestExpressException(ctx, context, t);
+						}
+						catch(Throwable e)
+						{
+							ERROR_LOG.error("bulkhead " + e.getClass().getName(), "Bulkhead处理请求失败:" + context.getRequest().getPath(), e);
+						}
+					}
+					finally
+					{
+						if (completed)
+						{
+							notifyComplete(context);
+							ctx.flush();
+							ResponseSequence.end(ctx.channel());
+						}
+
+						event.release();
+					}
+				}
+			});
+			return true;
+		}
+		catch(RejectedExecutionException e)
+		{
+			event.release();
+			handleRestExpressException(ctx, context, new ServiceException(HttpResponseStatus.SERVICE_UNAVAILABLE,
+				"Bulkhead " + bulkhead.getName() + " is full"));
+			return false;
+		}
+	}
+
+	/**
+	 * 排队太久的请求不执行action,写回预先创建的503响应
+	 */
+	private void shed(ChannelHandlerContext ctx, MessageContext context, FullHttpRequest event, AdmissionController admission)
+	{
+		boolean keepAlive = HttpHeaders.isKeepAlive(event);
+		context.getResponse().setResponseStatus(HttpResponseStatus.SERVICE_UNAVAILABLE);
+		admission.getRejection().write(ctx, keepAlive);
+	}
+
+	/**
+	 * 客户端已经不再等待的请求不执行action,连接还在的话写回预先创建的504响应
+	 */
+	private void expire(ChannelHandlerContext ctx, MessageContext context, FullHttpRequest event)
+	{
+		context.getResponse().setResponseStatus(HttpResponseStatus.GATEWAY_TIMEOUT);
+
+		if (ctx.channel().isActive())
+		{
+			DEADLINE_EXCEEDED.write(ctx, HttpHeaders.isKeepAlive(event));
+		}
+	}
+
+	/**
+	 * 请求的处理时限:header(netty.properties的deadlineHeader,毫秒)和路由的@RequestTimeout取较小的,
+	 * 都没有时用defaultRequestTimeout。从请求到达I/O线程的时间开始算
+	 * 
+	 * @param arrived 在ResponseSequence里排过队的请求到达的时间,否则为0
+	 * @return deadline的System.nanoTime(),没有时限为0
+	 */
+	private long resolveDeadline(MessageContext context, long sojourn, long arrived)
+	{
+		Configuration config = RestExpress.getConfig();
+		long timeout = context.getAction().getRoute().getTimeoutMillis();
+		long requested = parseTimeout(config == null ? null : config.getDeadlineHeader(), context.getRequest());
+
+		if (requested >= 0)
+		{
+			timeout = (timeout > 0 ? Math.min(timeout, requested) : requested);
+		}
+		else if (timeout <= 0)
+		{
+			timeout = (config == null ? 0 : config.getDefaultRequestTimeout());
+
+			if (timeout <= 0) return 0;
+		}
+
+		if (arrived == 0)
+		{
+			arrived = (sojourn < 0 ? context.getRequest().getReceivedNanos() : System.nanoTime() - sojourn);
+		}
+
+		long deadline = arrived + TimeUnit.MILLISECONDS.toNanos(timeout);
+		return (deadline == 0 ? 1 : deadline);
+	}
+
+	/**
+	 * @return header里的毫秒数,没有或者格式不对时为-1
+	 */
+	private long parseTimeout(String header, Request request)
+	{
+		String value = (header == null || header.isEmpty() ? null : request.getHeader(header));
+
+		if (value == null) return -1;
+
+		try
+		{
+			return Math.max(-1, Long.parseLong(value.trim()));
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
 		}
 	}
 
@@ -166,28 +460,410 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
         super.channelReadComplete(ctx);
     }
 
-	private void processRequest(ChannelHandlerContext ctx, MessageContext context)
+    /**
+     * 连接断开时释放ResponseSequence里排队的请求
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception
+    {
+    	ResponseSequence.clear(ctx.channel());
+    	super.channelInactive(ctx);
+    }
+
+    /**
+     * 暂停的流式响应(StreamingCollection)在channel重新可写后继续写
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception
+    {
+        if (ctx.channel().isWritable())
+        {
+        	StreamingCollectionWriter.resume(ctx.channel());
+        }
+
+        super.channelWritabilityChanged(ctx);
+    }
+
+	/**
+	 * @return false 如果action返回了异步结果,或者幂等接口在等待同一个key第一次执行的结果,请求挂起,
+	 * 完成后再继续后面的处理并notifyComplete
+	 */
+	private boolean processRequest(ChannelHandlerContext ctx, MessageContext context)
 	throws Throwable
 	{
-		notifyReceived(context);
-		resolveRoute(context);
 		resolveResponseProcessor(context);
 		invokePreprocessors(preprocessors, context.getRequest());
-		Object result = context.getAction().invoke(context.getRequest(), context.getResponse());
+		DupRequestAspect idempotent = context.getAction().getRoute().getDupRequestAspect();
+		String idempotencyKey = (idempotent == null ? null : getIdempotencyKey(idempotent, context));
 
-		if (result != null)
+		if (idempotencyKey != null)
 		{
-			context.getResponse().setBody(result);
+			return processIdempotent(ctx, context, idempotent, idempotencyKey,
+				System.currentTimeMillis() + idempotent.waitTimeout());
 		}
 
-		invokePostprocessors(postprocessors, context.getRequest(), context.getResponse());
-		serializeResponse(context, false);
-		enforceHttpSpecification(context);
+		return invokeAction(ctx, context, null, null);
+	}
+
+	/**
+	 * @param entry 幂等接口第一次执行时acquire返回的条目,执行完后保存响应或者放弃
+	 * @return false 如果action返回了异步结果
+	 */
+	private boolean invokeAction(ChannelHandlerContext ctx, MessageContext context,
+		DupRequestAspect idempotent, IdempotentResponseCache.Entry entry)
+	throws Throwable
+	{
+		Object result;
+
+		try
+		{
+			result = context.getAction().invoke(context.getRequest(), context.getResponse());
+		}
+		catch (Throwable t)
+		{
+			abandonIdempotent(entry);
+			throw t;
+		}
+
+		if (AsyncResults.isAsync(result))
+		{
+			suspend(ctx, context, result, idempotent, entry);
+			return false;
+		}
+
+		completeAction(ctx, context, result, idempotent, entry);
+		return true;
+	}
+
+	/**
+	 * action返回了异步结果:释放当前线程,结果完成后回到这个handler的executor里继续处理,
+	 * 响应写出前同一个连接上后面的请求在ResponseSequence里排队。
+	 * 挂起期间保留请求的ByteBuf,SimpleChannelInboundHandler在channelRead0返回后会释放一次
+	 */
+	private void suspend(final ChannelHandlerContext ctx, final MessageContext context, Object future,
+		final DupRequestAspect idempotent, final IdempotentResponseCache.Entry entry)
+	{
+		context.getRequest().getBody().retain();
+		AsyncResults.addListener(future, new AsyncResults.Listener()
+		{
+			@Override
+			public void onSuccess(final Object value)
+			{
+				resume(ctx, context, value, idempotent, entry);
+			}
+
+			@Override
+			public void onFailure(Throwable cause)
+			{
+				resume(ctx, context, context.getAction().getRoute().failed(cause), idempotent, entry);
+			}
+		});
+	}
+
+	private void resume(final ChannelHandlerContext ctx, final MessageContext context, final Object result,
+		final DupRequestAspect idempotent, final IdempotentResponseCache.Entry entry)
+	{
+		Runnable task = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					completeAction(ctx, context, result, idempotent, entry);
+				}
+				catch (Throwable t)
+				{
+					try
+					{
+						handleRestExpressException(ctx, context, t);
+					}
+					catch (Throwable e)
+					{
+						ERROR_LOG.error("resume " + e.getClass().getName(), "异步结果写出失败:" + context.getRequest().getPath(), e);
+					}
+				}
+				finally
+				{
+					notifyComplete(context);
+					ctx.flush();
+					ResponseSequence.end(ctx.channel());
+					context.getRequest().getBody().release();
+				}
+			}
+		};
+
+		if (ctx.executor().inEventLoop())
+		{
+			task.run();
+		}
+		else
+		{
+			ctx.executor().execute(task);
+		}
+	}
+
+	/**
+	 * action执行完后:postprocessor,序列化,幂等接口保存响应,然后写出。
+	 * 客户端已经断开时不再序列化和写出(幂等接口仍然保存响应,重试时可以直接返回)
+	 */
+	private void completeAction(ChannelHandlerContext ctx, MessageContext context, Object result,
+		DupRequestAspect idempotent, IdempotentResponseCache.Entry entry)
+	{
+		if (entry == null && !ctx.channel().isActive())
+		{
+			if (result instanceof ByteBuf)
+			{
+				ReferenceCountUtil.release(result);
+			}
+			else if (result instanceof StreamingCollection)
+			{
+				((StreamingCollection) result).close();
+			}
+
+			invokeFinallyProcessors(finallyProcessors, context.getRequest(), context.getResponse());
+			return;
+		}
+
+		boolean stored = false;
+
+		try
+		{
+			if (result instanceof File && context.getAction().getRoute().isFlagged(Flags.Download.STREAMING))
+			{
+				result = new FileDownload((File) result);
+			}
+
+			if (result instanceof FileDownload)
+			{
+				// 由FileDownloadWriter直接从文件写出,不序列化
+				context.getResponse().noSerialization();
+				context.getResponse().setContentType(((FileDownload) result).getContentType());
+			}
+			else if (result instanceof StreamingCollection)
+			{
+				// 由StreamingCollectionWriter一个元素一个元素地序列化写出
+				context.getResponse().noSerialization();
+				context.getResponse().setContentType(ContentType.JSON);
+			}
+
+			if (result != null)
+			{
+				context.getResponse().setBody(result);
+			}
+
+			invokePostprocessors(postprocessors, context.getRequest(), context.getResponse());
+			serializeResponse(ctx, context, false);
+			enforceHttpSpecification(context);
+
+			if (entry != null && isReplayable(context.getResponse(), result))
+			{
+				stored = getIdempotentCache().complete(entry, context.getResponse(), idempotent.ttl());
+			}
+		}
+		finally
+		{
+			if (!stored)
+			{
+				abandonIdempotent(entry);
+			}
+		}
+
+		finishResponse(ctx, context);
+	}
+
+	private void finishResponse(ChannelHandlerContext ctx, MessageContext context)
+	{
 		invokeFinallyProcessors(finallyProcessors, context.getRequest(), context.getResponse());
 		writeResponse(ctx, context);
 		notifySuccess(context);
 	}
 
+	/**
+	 * 同一个幂等key已经有保存的响应时直接写回;正在执行时不占用线程,登记一个IdempotentWait,
+	 * 第一次执行完后再继续,到waitUntil还没有结果时返回重复提交。
+	 * 
+	 * @param waitUntil 等待第一次执行结果的截止时间,System.currentTimeMillis()
+	 * @return false 在等待第一次执行的结果,或者action返回了异步结果
+	 */
+	private boolean processIdempotent(ChannelHandlerContext ctx, MessageContext context, DupRequestAspect idempotent,
+		String key, long waitUntil)
+	throws Throwable
+	{
+		IdempotentWait wait = new IdempotentWait(ctx, context, idempotent, key, waitUntil);
+
+		// 登记以后随时可能在别的线程里继续,先保留请求的ByteBuf
+		context.getRequest().getBody().retain();
+		IdempotentResponseCache.Entry entry = getIdempotentCache().acquire(key, wait);
+
+		if (entry == null)
+		{
+			wait.start();
+			return false;
+		}
+
+		context.getRequest().getBody().release();
+
+		if (entry.isReplay())
+		{
+			entry.replay(context.getResponse());
+			finishResponse(ctx, context);
+			return true;
+		}
+
+		return invokeAction(ctx, context, idempotent, entry);
+	}
+
+	/**
+	 * 幂等接口的重复请求等待同一个key第一次执行的结果:第一次执行complete或abandon后,
+	 * 回到handler的executor里重新processIdempotent(写回保存的响应,或者第一次执行失败时由这个请求执行action),
+	 * 超时写回重复提交。等待期间保留请求的ByteBuf,结束后释放
+	 */
+	private class IdempotentWait
+	implements Runnable
+	{
+		private final ChannelHandlerContext ctx;
+		private final MessageContext context;
+		private final DupRequestAspect idempotent;
+		private final String key;
+		private final long waitUntil;
+		private final AtomicBoolean settled = new AtomicBoolean();
+		private volatile ScheduledFuture<?> timeout;
+
+		IdempotentWait(ChannelHandlerContext ctx, MessageContext context, DupRequestAspect idempotent, String key, long waitUntil)
+		{
+			this.ctx = ctx;
+			this.context = context;
+			this.idempotent = idempotent;
+			this.key = key;
+			this.waitUntil = waitUntil;
+		}
+
+		/**
+		 * acquire登记了这个等待以后调用,开始计时
+		 */
+		void start()
+		{
+			timeout = ctx.executor().schedule(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if (settled.compareAndSet(false, true))
+					{
+						proceed(true);
+					}
+				}
+			}, Math.max(0, waitUntil - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+			if (settled.get())
+			{
+				timeout.cancel(false);
+			}
+		}
+
+		/**
+		 * 第一次执行complete或abandon时,在它的线程里调用
+		 */
+		@Override
+		public void run()
+		{
+			if (!settled.compareAndSet(false, true)) return;
+
+			ScheduledFuture<?> f = timeout;
+
+			if (f != null)
+			{
+				f.cancel(false);
+			}
+
+			ctx.executor().execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					proceed(false);
+				}
+			});
+		}
+
+		private void proceed(boolean timedOut)
+		{
+			boolean completed = true;
+
+			try
+			{
+				if (timedOut)
+				{
+					context.getResponse().setBody(ServerResponse.REQUEST_FEQ_ERROR);
+					serializeResponse(ctx, context, false);
+					enforceHttpSpecification(context);
+					finishResponse(ctx, context);
+				}
+				else
+				{
+					completed = processIdempotent(ctx, context, idempotent, key, waitUntil);
+				}
+			}
+			catch (Throwable t)
+			{
+				try
+				{
+					handleRestExpressException(ctx, context, t);
+				}
+				catch (Throwable e)
+				{
+					ERROR_LOG.error("idempotent " + e.getClass().getName(), "幂等请求写出失败:" + context.getRequest().getPath(), e);
+				}
+			}
+			finally
+			{
+				if (completed)
+				{
+					notifyComplete(context);
+					ctx.flush();
+					ResponseSequence.end(ctx.channel());
+				}
+
+				context.getRequest().getBody().release();
+			}
+		}
+	}
+
+	private void abandonIdempotent(IdempotentResponseCache.Entry entry)
+	{
+		if (entry != null)
+		{
+			getIdempotentCache().abandon(entry);
+		}
+	}
+
+	private String getIdempotencyKey(DupRequestAspect idempotent, MessageContext context)
+	{
+		String header = idempotent.header();
+
+		if (header.isEmpty())
+		{
+			Configuration config = RestExpress.getConfig();
+			header = (config == null ? "ticket" : config.getRequestToken());
+		}
+
+		String value = context.getRequest().getHeader(header);
+		return (value == null ? null : context.getAction().getRoute().getFullPattern() + ' ' + value);
+	}
+
+	/**
+	 * 只保存成功的响应,失败的(包括Route返回的ServerResponse错误)下次重新执行
+	 */
+	private boolean isReplayable(Response response, Object result)
+	{
+		if (response.getResponseStatus().code() / 100 != 2) return false;
+
+		if (response.getBody() instanceof FileDownload || response.getBody() instanceof StreamingCollection) return false;
+
+		return !(result instanceof ServerResponse && ((ServerResponse) result).getCode() != ServerResponse.SUCCESS_CODE);
+	}
+
 	private void resolveResponseProcessor(MessageContext context)
     {
 		SerializationSettings s = serializationProvider.resolveResponse(context.getRequest(), context.getResponse(), false);
@@ -205,10 +881,9 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
     	}
     }
 
-	private void handleRestExpressException(ChannelHandlerContext ctx, Throwable cause)
+	private void handleRestExpressException(ChannelHandlerContext ctx, MessageContext context, Throwable cause)
 	throws Exception
 	{
-		MessageContext context = (MessageContext) ctx.attr(CONTEXT_KEY).get();
 		Throwable rootCause = mapServiceException(cause);
 
 		if (rootCause != null) // was/is a ServiceException
@@ -228,7 +903,14 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
 
 		context.setException(rootCause);
 		notifyException(context);
-		serializeResponse(context, true);
+
+		if (!ctx.channel().isActive())
+		{
+			invokeFinallyProcessors(finallyProcessors, context.getRequest(), context.getResponse());
+			return;
+		}
+
+		serializeResponse(ctx, context, true);
 		invokeFinallyProcessors(finallyProcessors, context.getRequest(), context.getResponse());
 		writeResponse(ctx, context);
 	}
@@ -294,12 +976,28 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
     	}
     }
 
+    private void notifyRouted(MessageContext context)
+    {
+    	for (MessageObserver observer : messageObservers)
+    	{
+    		observer.onRouted(context.getRequest(), context.getResponse());
+    	}
+    }
+
     private void notifyComplete(MessageContext context)
     {
     	for (MessageObserver observer : messageObservers)
     	{
     		observer.onComplete(context.getRequest(), context.getResponse());
     	}
+
+    	// 流式上传的临时文件在所有observer之后删除
+    	MultipartUpload upload = context.getRequest().getMultipartUpload();
+
+    	if (upload != null)
+    	{
+    		upload.destroy();
+    	}
     }
 
 	// SECTION: UTILITY -- PRIVATE
@@ -414,10 +1112,29 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
 
     private void writeResponse(ChannelHandlerContext ctx, MessageContext context)
     {
+    	if (!ctx.channel().isActive())
+    	{
+    		// the client is gone: drop the serialized body instead of writing to a closed channel.
+    		if (context.getResponse().getBody() instanceof ByteBuf)
+    		{
+    			ReferenceCountUtil.release(context.getResponse().getBody());
+    		}
+    		else if (context.getResponse().getBody() instanceof StreamingCollection)
+    		{
+    			((StreamingCollection) context.getResponse().getBody()).close();
+    		}
+
+    		return;
+    	}
+
     	getResponseWriter().write(ctx, context.getRequest(), context.getResponse());
     }
 
-	private void serializeResponse(MessageContext context, boolean force)
+	/**
+	 * 序列化到channel的allocator(默认是PooledByteBufAllocator)分配的ByteBuf里,
+	 * 这个ByteBuf直接作为DefaultFullHttpResponse的content,写出后由netty释放
+	 */
+	private void serializeResponse(ChannelHandlerContext ctx, MessageContext context, boolean force)
 	{
 		Response response = context.getResponse();
 
@@ -438,11 +1155,19 @@ extends SimpleChannelInboundHandler<FullHttpRequest>
 			{
 				if (response.isSerialized())
 				{
-					ByteBuffer serialized = settings.serialize(response);
+					Object previous = response.getBody();
+					ByteBuf serialized = (response.hasException() ? errorBodies.serialize(settings, response, ctx.alloc())
+						: settings.serialize(response, ctx.alloc()));
 
 					if (serialized != null)
 					{
-                        response.setBody(Unpooled.wrappedBuffer(serialized));
+                        response.setBody(serialized);
+
+                        // e.g. a body serialized before an exception forced re-serialization.
+                        if (previous instanceof ByteBuf)
+                        {
+                        	ReferenceCountUtil.release(previous);
+                        }
 
 						if (!response.hasHeader(HttpHeaders.Names.CONTENT_TYPE))
 						{
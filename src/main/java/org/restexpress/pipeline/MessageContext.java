@@ -87,6 +87,16 @@ public class MessageContext
 	{
 		getResponse().setResponseStatus(httpStatus);
 	}
+
+	public void setDeadlineNanos(long deadlineNanos)
+	{
+		getRequest().setDeadlineNanos(deadlineNanos);
+	}
+
+	public boolean isDeadlineExceeded()
+	{
+		return getRequest().isDeadlineExceeded();
+	}
 	
 	public String getRequestedFormat()
 	{
@@ -32,6 +32,17 @@ public class MessageObserver
      * @param response
      */
     protected void onReceived(Request request, Response response)
+    {
+	    // default behavior is to do nothing.
+    }
+
+	/**
+	 * Sent after the request has been resolved to a route, before any preprocessors run.
+	 * Not sent when no route matches. Request.getResolvedRoute() is set.
+     * @param request
+     * @param response
+     */
+    protected void onRouted(Request request, Response response)
     {
 	    // default behavior is to do nothing.
     }
@@ -0,0 +1,167 @@
+package org.restexpress.pipeline;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+
+import org.restexpress.RestExpress;
+import org.restexpress.metrics.PrometheusExposition;
+
+/**
+ * 在I/O线程里处理GET metricsPath(默认/metrics)的请求,返回prometheus格式的指标,
+ * 不经过DefaultEventExecutorGroup,业务线程全忙的时候也能拿到指标。其它请求原样传给下一个handler
+ * <p/>
+ * 同一个连接上前面的请求还没有响应时(在业务线程池或者Bulkhead里排队,ResponseSequence里等待),
+ * 不能插到它们前面:记下前面有几个请求,等这些响应都写出(经过这里的LastHttpContent或者HttpChunkedInput)后再写。
+ * 计数和等待的请求都只在I/O线程里访问
+ * <p/>
+ * 每个I/O线程保留一个direct buffer,每次清空后重新写入;上一次的响应还没写完(引用计数不是1)时换一个新的
+ * @author hanst
+ *
+ */
+@Sharable
+public class MetricsHandler extends ChannelDuplexHandler {
+	public static final String HANDLER_NAME = "metrics";
+	private static final int INITIAL_CAPACITY = 16 * 1024;
+	private static final AttributeKey<Responses> RESPONSES_KEY = AttributeKey.valueOf("metricsResponses");
+
+	private final String path;
+	private final PrometheusExposition exposition;
+	private final ThreadLocal<ByteBuf> buffers = new ThreadLocal<ByteBuf>();
+
+	public MetricsHandler(String path, RestExpress restExpress) {
+		this.path = path;
+		this.exposition = new PrometheusExposition(restExpress);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		Responses responses = responses(ctx);
+		if (!(msg instanceof FullHttpRequest) || !isMetricsRequest((FullHttpRequest) msg)) {
+			if (msg instanceof HttpRequest)
+				responses.forwarded++;
+			ctx.fireChannelRead(msg);
+			return;
+		}
+		FullHttpRequest request = (FullHttpRequest) msg;
+		boolean keepAlive = HttpHeaders.isKeepAlive(request);
+		ReferenceCountUtil.release(request);
+
+		if (responses.answered == responses.forwarded) {
+			writeMetrics(ctx, keepAlive);
+			ctx.flush();
+		} else {
+			responses.deferred.add(new Deferred(responses.forwarded, keepAlive));
+		}
+	}
+
+	/**
+	 * 一个响应的最后一部分写出后,写在它后面等待的metrics响应,由写响应的一方flush
+	 */
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		ctx.write(msg, promise);
+		if (!(msg instanceof LastHttpContent) && !(msg instanceof HttpChunkedInput))
+			return;
+		Responses responses = responses(ctx);
+		responses.answered++;
+		Deferred deferred;
+		while ((deferred = responses.deferred.peek()) != null && deferred.after <= responses.answered) {
+			responses.deferred.poll();
+			writeMetrics(ctx, deferred.keepAlive);
+		}
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		ctx.channel().attr(RESPONSES_KEY).set(null);
+		super.channelInactive(ctx);
+	}
+
+	private void writeMetrics(ChannelHandlerContext ctx, boolean keepAlive) {
+		ByteBuf buffer = buffer();
+		exposition.render(buffer);
+		FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+				buffer.duplicate().retain());
+		response.headers().set(HttpHeaders.Names.CONTENT_TYPE, PrometheusExposition.CONTENT_TYPE);
+		HttpHeaders.setContentLength(response, buffer.readableBytes());
+		if (keepAlive)
+			HttpHeaders.setKeepAlive(response, true);
+		ChannelFuture future = ctx.write(response);
+		if (!keepAlive)
+			future.addListener(ChannelFutureListener.CLOSE);
+	}
+
+	private static Responses responses(ChannelHandlerContext ctx) {
+		Responses responses = ctx.channel().attr(RESPONSES_KEY).get();
+		if (responses == null) {
+			responses = new Responses();
+			ctx.channel().attr(RESPONSES_KEY).set(responses);
+		}
+		return responses;
+	}
+
+	private boolean isMetricsRequest(FullHttpRequest request) {
+		if (!HttpMethod.GET.equals(request.getMethod()))
+			return false;
+		String uri = request.getUri();
+		return uri.startsWith(path) && (uri.length() == path.length() || uri.charAt(path.length()) == '?');
+	}
+
+	private ByteBuf buffer() {
+		ByteBuf buffer = buffers.get();
+		if (buffer == null || buffer.refCnt() != 1) {
+			int capacity = INITIAL_CAPACITY;
+			if (buffer != null) {
+				//正在写的响应持有另一份引用,写完后由encoder释放
+				capacity = buffer.capacity();
+				buffer.release();
+			}
+			buffer = Unpooled.directBuffer(capacity);
+			buffers.set(buffer);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * 一个连接上转给request handler的请求数和已经写完的响应数
+	 */
+	private static final class Responses {
+		long forwarded;
+		long answered;
+		final ArrayDeque<Deferred> deferred = new ArrayDeque<Deferred>();
+	}
+
+	/**
+	 * 等前面after个请求都响应后再写的metrics请求
+	 */
+	private static final class Deferred {
+		final long after;
+		final boolean keepAlive;
+
+		Deferred(long after, boolean keepAlive) {
+			this.after = after;
+			this.keepAlive = keepAlive;
+		}
+	}
+}
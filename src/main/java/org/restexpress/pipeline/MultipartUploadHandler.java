@@ -0,0 +1,210 @@
+package org.restexpress.pipeline;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.multipart.DefaultHttpDataFactory;
+import io.netty.handler.codec.http.multipart.DiskAttribute;
+import io.netty.handler.codec.http.multipart.DiskFileUpload;
+import io.netty.handler.codec.http.multipart.HttpDataFactory;
+import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
+import io.netty.util.CharsetUtil;
+
+import org.restexpress.Flags;
+import org.restexpress.domain.ex.ServerResponse;
+import org.restexpress.multipart.MultipartHttpRequest;
+import org.restexpress.multipart.MultipartUpload;
+import org.restexpress.response.PrebuiltResponse;
+import org.restexpress.route.Route;
+import org.restexpress.route.RouteResolver;
+import org.restexpress.util.Configuration;
+
+/**
+ * 流式上传:放在HttpObjectAggregator前面,路由用useStreamingMultipartUpload()(Flags.Upload.STREAMING)申明的
+ * multipart/form-data请求不经过aggregator(不受maxContentSize限制,也不在内存里拼出整个body),
+ * 每收到一个HttpContent就交给HttpPostRequestDecoder解码后释放,超过uploadSpillThreshold的part写到临时文件。
+ * 最后一个HttpContent解码完后,把MultipartHttpRequest从aggregator后面继续往下传给request handler。
+ * <ul>
+ * <li>body超过maxUploadSize(Content-Length或者实际收到的字节)返回413,格式错误返回400,都关闭连接</li>
+ * <li>请求带Expect: 100-continue时,确认是上传的路由后才回100 Continue</li>
+ * <li>没有解码完连接就断开时删除已经写出的临时文件</li>
+ * </ul>
+ * 每个连接一个实例,在I/O线程里执行,写临时文件也在I/O线程里
+ * @author hanst
+ *
+ */
+public class MultipartUploadHandler extends ChannelInboundHandlerAdapter {
+	public static final String HANDLER_NAME = "multipartUpload";
+	//aggregator的名字,见HttpServerChannelHandlerFactory
+	private static final String AGGREGATOR_NAME = "aggregator";
+	private static final PrebuiltResponse TOO_LARGE = new PrebuiltResponse(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE,
+			new ServerResponse(413, "上传内容超过上限"));
+	private static final PrebuiltResponse MALFORMED = new PrebuiltResponse(HttpResponseStatus.BAD_REQUEST,
+			new ServerResponse(400, "上传内容格式错误"));
+	private static final FullHttpResponse CONTINUE = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+			HttpResponseStatus.CONTINUE, Unpooled.EMPTY_BUFFER);
+	private static volatile HttpDataFactory sharedFactory;
+
+	private final RouteResolver routeResolver;
+	private final HttpDataFactory factory;
+	private final long maxUploadSize;
+	private HttpRequest request;
+	private HttpPostRequestDecoder decoder;
+	private long received;
+	//拒绝后丢弃这个请求剩下的内容,直到连接关闭
+	private boolean discarding = false;
+
+	/**
+	 * @param routeResolver 和request handler用的同一个,用来判断请求是不是流式上传的路由
+	 * @param config 为null时使用默认的uploadSpillThreshold,不限制大小
+	 */
+	public MultipartUploadHandler(RouteResolver routeResolver, Configuration config) {
+		this.routeResolver = routeResolver;
+		this.factory = dataFactory(config);
+		this.maxUploadSize = (config == null ? 0 : config.getMaxUploadSize());
+	}
+
+	/**
+	 * 所有连接共用的HttpDataFactory(按请求记录创建的part,线程安全),第一次使用时按配置创建,
+	 * 同时设置临时文件的目录。临时文件由MultipartUpload.destroy删除,不用deleteOnExit(长期运行的服务里一直占内存)
+	 */
+	private static HttpDataFactory dataFactory(Configuration config) {
+		HttpDataFactory result = sharedFactory;
+		if (result != null)
+			return result;
+		synchronized (MultipartUploadHandler.class) {
+			if (sharedFactory == null) {
+				String dir = (config == null ? null : config.getUploadTempDir());
+				DiskFileUpload.baseDirectory = dir;
+				DiskAttribute.baseDirectory = dir;
+				DiskFileUpload.deleteOnExitTemporaryFile = false;
+				DiskAttribute.deleteOnExitTemporaryFile = false;
+				sharedFactory = new DefaultHttpDataFactory(config == null ? DefaultHttpDataFactory.MINSIZE
+						: config.getUploadSpillThreshold());
+			}
+			return sharedFactory;
+		}
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)) {
+			HttpRequest req = (HttpRequest) msg;
+			if (isStreamingUpload(req)) {
+				start(ctx, req);
+				return;
+			}
+		} else if (msg instanceof HttpContent && (decoder != null || discarding)) {
+			HttpContent chunk = (HttpContent) msg;
+			try {
+				if (decoder != null)
+					offer(ctx, chunk);
+				if (chunk instanceof LastHttpContent) {
+					if (decoder != null)
+						complete(ctx);
+					discarding = false;
+				}
+			} finally {
+				chunk.release();
+			}
+			return;
+		}
+		ctx.fireChannelRead(msg);
+	}
+
+	private boolean isStreamingUpload(HttpRequest req) {
+		if (req.getDecoderResult().isFailure())
+			return false;
+		String contentType = req.headers().get(HttpHeaders.Names.CONTENT_TYPE);
+		if (contentType == null || !contentType.regionMatches(true, 0, "multipart/form-data", 0, 19))
+			return false;
+		Route route = routeResolver.findRoute(req.getMethod(), req.getUri());
+		return route != null && route.isFlagged(Flags.Upload.STREAMING);
+	}
+
+	private void start(ChannelHandlerContext ctx, HttpRequest req) {
+		if (maxUploadSize > 0 && HttpHeaders.getContentLength(req, -1) > maxUploadSize) {
+			reject(ctx, TOO_LARGE);
+			return;
+		}
+		try {
+			decoder = new HttpPostRequestDecoder(factory, req, CharsetUtil.UTF_8);
+		} catch (DecoderException e) {
+			reject(ctx, MALFORMED);
+			return;
+		}
+		request = req;
+		received = 0;
+		if (HttpHeaders.is100ContinueExpected(req))
+			ctx.writeAndFlush(CONTINUE.duplicate());
+	}
+
+	private void offer(ChannelHandlerContext ctx, HttpContent chunk) {
+		received += chunk.content().readableBytes();
+		if (maxUploadSize > 0 && received > maxUploadSize) {
+			reject(ctx, TOO_LARGE);
+			return;
+		}
+		try {
+			decoder.offer(chunk);
+		} catch (DecoderException e) {
+			reject(ctx, MALFORMED);
+		}
+	}
+
+	/**
+	 * 跳过aggregator,从它后面的handler开始处理解码好的请求
+	 */
+	private void complete(ChannelHandlerContext ctx) {
+		MultipartHttpRequest full;
+		try {
+			full = new MultipartHttpRequest(request, new MultipartUpload(decoder));
+		} catch (DecoderException e) {
+			reject(ctx, MALFORMED);
+			return;
+		}
+		decoder = null;
+		request = null;
+		ChannelHandlerContext aggregator = ctx.pipeline().context(AGGREGATOR_NAME);
+		(aggregator == null ? ctx : aggregator).fireChannelRead(full);
+	}
+
+	/**
+	 * 不再读取剩下的body,写回错误响应后关闭连接
+	 */
+	private void reject(ChannelHandlerContext ctx, PrebuiltResponse response) {
+		reset();
+		discarding = true;
+		response.write(ctx, false);
+		ctx.flush();
+	}
+
+	private void reset() {
+		if (decoder != null) {
+			decoder.destroy();
+			decoder = null;
+		}
+		request = null;
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		reset();
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		reset();
+	}
+}
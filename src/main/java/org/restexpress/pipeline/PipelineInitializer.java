@@ -9,6 +9,7 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import org.restexpress.RestExpress;
 import org.restexpress.pipeline.factory.AbstractChannelHandlerFactory;
+import org.restexpress.pipeline.factory.HttpServerChannelHandlerFactory;
 
 /**
  * Provides a tiny DSL to define the pipeline features.
@@ -22,6 +23,8 @@ extends ChannelInitializer<SocketChannel>
 	 
 	private AbstractChannelHandlerFactory channelHandlerFactory = null;
 	private RestExpress restExpress;
+	private MetricsHandler metricsHandler = null;
+	private boolean stampArrival = false;
 
 	// SECTION: CONSTRUCTORS
 
@@ -31,6 +34,11 @@ extends ChannelInitializer<SocketChannel>
 
 	public PipelineInitializer setRestExpress(RestExpress restExpress) {
 		this.restExpress = restExpress;
+		String metricsPath = (RestExpress.getConfig() == null ? null : RestExpress.getConfig().getMetricsPath());
+		metricsHandler = (metricsPath == null || metricsPath.length() == 0 ? null
+				: new MetricsHandler(metricsPath, restExpress));
+		// 只有request handler在业务线程池里执行时才有排队,到达时间要在I/O线程里记录
+		stampArrival = (restExpress.getDefaultEventExecutorGroup() != null);
 		return this;
 	}
 
@@ -47,6 +55,20 @@ extends ChannelInitializer<SocketChannel>
 	{
 		ChannelPipeline pipeline = ch.pipeline();
 		channelHandlerFactory.build(pipeline,restExpress);	 
+		RestExpress.getAllChannels().add(ch);
+
+		// 放在request handler前面,在I/O线程里处理,不占用业务线程
+		if (metricsHandler != null && pipeline.get(HttpServerChannelHandlerFactory.HANDLER_NAME_REQHANDLER) != null)
+		{
+			pipeline.addBefore(HttpServerChannelHandlerFactory.HANDLER_NAME_REQHANDLER, MetricsHandler.HANDLER_NAME,
+					metricsHandler);
+		}
+
+		if (stampArrival && pipeline.get(HttpServerChannelHandlerFactory.HANDLER_NAME_REQHANDLER) != null)
+		{
+			pipeline.addBefore(HttpServerChannelHandlerFactory.HANDLER_NAME_REQHANDLER, ArrivalStampHandler.HANDLER_NAME,
+					ArrivalStampHandler.INSTANCE);
+		}
 	}
 
 	public AbstractChannelHandlerFactory getChannelHandlerFactory() {
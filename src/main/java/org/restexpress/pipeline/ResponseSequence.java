@@ -0,0 +1,183 @@
+package org.restexpress.pipeline;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 同一个连接上pipelining的请求按到达的顺序写响应。一个请求的响应没有在channelRead里写出时
+ * (在Bulkhead线程池里执行,异步结果挂起,幂等接口等待第一次执行的结果,流式响应还在写),
+ * 后面到达的请求先保留在队列里并关闭autoRead,前面的响应都写出后再在handler的executor里一个一个处理,
+ * 队列空了以后恢复autoRead。
+ * <p/>
+ * 每个请求处理前begin,响应写出(或者放弃)后end,可以嵌套(流式响应在请求处理里begin,写完时end);
+ * begin/end可以在任意线程调用,队列只在handler的executor里访问
+ * @author hanst
+ *
+ */
+public final class ResponseSequence {
+	private static final AttributeKey<ResponseSequence> SEQUENCE_KEY = AttributeKey.valueOf("responseSequence");
+
+	/**
+	 * 在handler的executor里处理一个请求,处理前调用begin
+	 */
+	interface Processor {
+		/**
+		 * @param sojourn 请求在线程池队列里等待的纳秒数,没有记录时为-1
+		 * @param arrived 请求到达的System.nanoTime(),0时用Request创建的时间
+		 */
+		void process(ChannelHandlerContext ctx, FullHttpRequest request, long sojourn, long arrived);
+	}
+
+	private final ChannelHandlerContext ctx;
+	private final Processor processor;
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+	private boolean readPaused = false;
+	private boolean drainScheduled = false;
+
+	private final Runnable endTask = new Runnable() {
+		@Override
+		public void run() {
+			end();
+		}
+	};
+
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	private ResponseSequence(ChannelHandlerContext ctx, Processor processor) {
+		this.ctx = ctx;
+		this.processor = processor;
+	}
+
+	/**
+	 * 取得channel上的ResponseSequence,没有时创建,在handler的executor里调用
+	 */
+	static ResponseSequence of(ChannelHandlerContext ctx, Processor processor) {
+		Attribute<ResponseSequence> attr = ctx.channel().attr(SEQUENCE_KEY);
+		ResponseSequence sequence = attr.get();
+		if (sequence == null) {
+			sequence = new ResponseSequence(ctx, processor);
+			attr.set(sequence);
+		}
+		return sequence;
+	}
+
+	/**
+	 * 响应在请求处理结束后才写完时(StreamingCollectionWriter)调用,写完后调用end(channel)。
+	 * channel不经过DefaultRequestHandler时什么都不做
+	 * @param channel
+	 */
+	public static void begin(Channel channel) {
+		ResponseSequence sequence = channel.attr(SEQUENCE_KEY).get();
+		if (sequence != null)
+			sequence.begin();
+	}
+
+	public static void end(Channel channel) {
+		ResponseSequence sequence = channel.attr(SEQUENCE_KEY).get();
+		if (sequence != null)
+			sequence.end();
+	}
+
+	/**
+	 * @return true 前面还有响应没写出,或者还有排队的请求,新到的请求要排队
+	 */
+	boolean isBusy() {
+		return outstanding.get() > 0 || !pending.isEmpty();
+	}
+
+	/**
+	 * 前面的响应写出后再处理,在handler的executor里调用
+	 * @param request 保留一次引用,处理完后释放
+	 */
+	void enqueue(FullHttpRequest request, long sojourn) {
+		long now = System.nanoTime();
+		pending.add(new Pending(request.retain(), sojourn, sojourn < 0 ? now : now - sojourn));
+		if (!readPaused) {
+			readPaused = true;
+			ctx.channel().config().setAutoRead(false);
+		}
+	}
+
+	void begin() {
+		outstanding.incrementAndGet();
+	}
+
+	/**
+	 * 一个响应写完了,所有响应都写完时处理下一个排队的请求
+	 */
+	void end() {
+		if (!ctx.executor().inEventLoop()) {
+			ctx.executor().execute(endTask);
+			return;
+		}
+		if (outstanding.decrementAndGet() == 0)
+			next();
+	}
+
+	private void next() {
+		if (!pending.isEmpty()) {
+			//不在这里直接处理,避免同步完成的请求一层层递归
+			if (!drainScheduled) {
+				drainScheduled = true;
+				ctx.executor().execute(drainTask);
+			}
+		} else if (readPaused) {
+			readPaused = false;
+			ctx.channel().config().setAutoRead(true);
+		}
+	}
+
+	private void drain() {
+		drainScheduled = false;
+		if (outstanding.get() > 0)
+			return;
+		Pending head = pending.poll();
+		if (head == null) {
+			next();
+			return;
+		}
+		try {
+			processor.process(ctx, head.request, head.sojourn, head.arrived);
+		} finally {
+			head.request.release();
+		}
+		//不是在channelRead里处理的,channelReadComplete不会再flush
+		ctx.flush();
+	}
+
+	/**
+	 * 连接断开时释放排队的请求,在handler的executor里调用
+	 */
+	static void clear(Channel channel) {
+		ResponseSequence sequence = channel.attr(SEQUENCE_KEY).get();
+		if (sequence == null)
+			return;
+		Pending p;
+		while ((p = sequence.pending.poll()) != null)
+			p.request.release();
+	}
+
+	private static final class Pending {
+		final FullHttpRequest request;
+		final long sojourn;
+		final long arrived;
+
+		Pending(FullHttpRequest request, long sojourn, long arrived) {
+			this.request = request;
+			this.sojourn = sojourn;
+			this.arrived = arrived;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package org.restexpress.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.metrics.RouteMetrics;
+import org.restexpress.route.Route;
+
+/**
+ * 按路由(完整的url pattern)统计请求数,异常数,状态码分类,在途请求数和延迟直方图。
+ * 和SimpleConsoleLogMessageObserver不同,不为每个请求保存计时器:延迟用Request.getReceivedNanos()计算,
+ * 每个请求只是查找已有的RouteMetrics(每个路由第一次才插入)和几次原子操作。
+ * 没有匹配到路由的请求(404,405)统一计入UNMATCHED,不按url分别统计
+ * <p/>
+ * 通过snapshot()获取所有路由的指标副本,例如给监控页面显示每个接口的p99
+ * @author hanst
+ *
+ */
+public class RouteMetricsObserver
+extends MessageObserver
+{
+	public static final String UNMATCHED = "<unmatched>";
+
+	private final ConcurrentMap<String, RouteMetrics> routes = new ConcurrentHashMap<String, RouteMetrics>();
+	private final RouteMetrics unmatched = new RouteMetrics(UNMATCHED);
+	private final AtomicLong inFlight = new AtomicLong();
+
+	@Override
+	protected void onReceived(Request request, Response response)
+	{
+		inFlight.incrementAndGet();
+	}
+
+	@Override
+	protected void onRouted(Request request, Response response)
+	{
+		metricsFor(request.getResolvedRoute()).started();
+	}
+
+	@Override
+	protected void onException(Throwable exception, Request request, Response response)
+	{
+		metricsFor(request.getResolvedRoute()).failed();
+	}
+
+	@Override
+	protected void onComplete(Request request, Response response)
+	{
+		inFlight.decrementAndGet();
+		Route route = request.getResolvedRoute();
+		int status = (response.getResponseStatus() == null ? 0 : response.getResponseStatus().code());
+		metricsFor(route).completed(status, (System.nanoTime() - request.getReceivedNanos()) / 1000, route != null);
+	}
+
+	private RouteMetrics metricsFor(Route route)
+	{
+		if (route == null) return unmatched;
+
+		String pattern = route.getFullPattern();
+		RouteMetrics metrics = routes.get(pattern);
+
+		if (metrics == null)
+		{
+			metrics = new RouteMetrics(pattern);
+			RouteMetrics exists = routes.putIfAbsent(pattern, metrics);
+
+			if (exists != null)
+			{
+				metrics = exists;
+			}
+		}
+
+		return metrics;
+	}
+
+	/**
+	 * @return 所有请求(包括没有匹配到路由的)的在途请求数
+	 */
+	public long getInFlight()
+	{
+		return inFlight.get();
+	}
+
+	/**
+	 * @param pattern 路由的完整url pattern
+	 * @return 路由的指标副本,还没有请求的话为null
+	 */
+	public RouteMetrics.Snapshot snapshot(String pattern)
+	{
+		RouteMetrics metrics = (UNMATCHED.equals(pattern) ? unmatched : routes.get(pattern));
+		return (metrics == null ? null : metrics.snapshot());
+	}
+
+	/**
+	 * @return 有过请求的路由的指标副本,最后一个是UNMATCHED
+	 */
+	public List<RouteMetrics.Snapshot> snapshot()
+	{
+		List<RouteMetrics.Snapshot> result = new ArrayList<RouteMetrics.Snapshot>(routes.size() + 1);
+
+		for (RouteMetrics metrics : routes.values())
+		{
+			result.add(metrics.snapshot());
+		}
+
+		result.add(unmatched.snapshot());
+		return result;
+	}
+}
@@ -5,12 +5,16 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.PostConstruct;
 
+import org.restexpress.Flags;
 import org.restexpress.RestExpress;
 import org.restexpress.intf.SpringInitCompleteAware;
+import org.restexpress.pipeline.ContentCompressor;
 import org.restexpress.pipeline.DefaultRequestHandler;
+import org.restexpress.pipeline.MultipartUploadHandler;
+import org.restexpress.route.RouteResolver;
 
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelPipeline;
-import io.netty.handler.codec.http.HttpContentCompressor;
 import io.netty.handler.codec.http.HttpContentDecompressor;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequestDecoder;
@@ -50,6 +54,7 @@ public class HttpServerChannelHandlerFactory extends AbstractChannelHandlerFacto
 	
 	@Override
 	public void build(ChannelPipeline pipeline,RestExpress restExpress,Object ...args) {
+				ChannelHandler requestHandler = restExpress.buildRequestHandler(perhandler);
 				
 		// Inbound handlers
 				pipeline.addLast("decoder", new HttpRequestDecoder());
@@ -57,8 +62,14 @@ public class HttpServerChannelHandlerFactory extends AbstractChannelHandlerFacto
 
 				// Outbound handlers
 				pipeline.addLast("encoder", new HttpResponseEncoder());
+				pipeline.addLast("deflater", new ContentCompressor());
+				//出站时在deflater前面,ChunkedInput读出的HttpContent也可以压缩
 				pipeline.addLast("chunkWriter", new ChunkedWriteHandler());
-				pipeline.addLast("deflater", new HttpContentCompressor());
+
+				//有流式上传的路由时,multipart请求在aggregator前面边接收边解码
+				RouteResolver resolver = ((DefaultRequestHandler) requestHandler).getRouteResolver();
+				if (resolver.hasFlaggedRoute(Flags.Upload.STREAMING))
+					pipeline.addLast(MultipartUploadHandler.HANDLER_NAME, new MultipartUploadHandler(resolver, RestExpress.getConfig()));
 
 				// Aggregator MUST be added last, otherwise results are not correct
 				pipeline.addLast("aggregator", new HttpObjectAggregator(restExpress.getServerSettings().getMaxContentSize()));	
@@ -71,11 +82,11 @@ public class HttpServerChannelHandlerFactory extends AbstractChannelHandlerFacto
 				{			
 					//用户自己定义的RequestHandler,放在线程池里					
 					pipeline.addLast(restExpress.getDefaultEventExecutorGroup(),HANDLER_NAME_REQHANDLER,
-							restExpress.buildRequestHandler(perhandler));					
+							requestHandler);					
 				}
 				else
 				{				    
-					pipeline.addLast(HANDLER_NAME_REQHANDLER,restExpress.buildRequestHandler(perhandler));					 
+					pipeline.addLast(HANDLER_NAME_REQHANDLER,requestHandler);					 
 				}	
 				
 	}
@@ -6,7 +6,7 @@ package org.restexpress.response;
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
@@ -14,6 +14,9 @@ import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.ReferenceCountUtil;
+
+import java.nio.CharBuffer;
 
 import org.restexpress.ContentType;
 import org.restexpress.Parameters;
@@ -32,15 +35,36 @@ implements HttpResponseWriter
 	public void write(ChannelHandlerContext ctx, Request request,
 	    Response response)
 	{
+		if (response.getBody() instanceof FileDownload)
+		{
+			// Streamed from the file, never loaded into a buffer.
+			FileDownloadWriter.write(ctx, request, response, (FileDownload) response.getBody());
+			return;
+		}
+
+		if (response.getBody() instanceof StreamingCollection)
+		{
+			// Serialized and written in chunks while the channel is writable.
+			StreamingCollectionWriter.write(ctx, request, response, (StreamingCollection) response.getBody());
+			return;
+		}
+
 		// The DefaultHttpResponseWriter will include the provided response body (if provided),
 		// else the default empty body (from the DefaultFullHttpResponse class) will be included.
 		FullHttpResponse httpResponse = response.hasBody()
 		    && HttpSpecification.isContentAllowed(response)
 		    ? new DefaultFullHttpResponse(request.getHttpVersion(),
 		        getHttpResponseStatusFrom(request, response),
-		        getResponseBodyByteBuf(response))
+		        getResponseBodyByteBuf(ctx, response))
 		    : new DefaultFullHttpResponse(request.getHttpVersion(),
 		        getHttpResponseStatusFrom(request, response));
+
+		// A serialized (pooled) body that isn't sent must still be released.
+		if (httpResponse.content() != response.getBody() && response.getBody() instanceof ByteBuf)
+		{
+			ReferenceCountUtil.release(response.getBody());
+		}
+
 		addHeaders(response, httpResponse);
 
 		if (request.isKeepAlive())
@@ -72,15 +96,15 @@ implements HttpResponseWriter
 		}
 	}
 
-	private ByteBuf getResponseBodyByteBuf(Response response)
+	private ByteBuf getResponseBodyByteBuf(ChannelHandlerContext ctx, Response response)
 	{
 		// If the response body contains a ByteBuf, the
-		// DefaultHttpResponseWriter will use it, else it is assumed that the
-		// body is a string.
+		// DefaultHttpResponseWriter will use it as the content (its reference is
+		// handed over to the response), else it is assumed that the body is a string,
+		// which is encoded straight into a buffer from the channel's allocator.
 		return ByteBuf.class.isAssignableFrom(response.getBody().getClass())
-		    ? Unpooled.wrappedBuffer((ByteBuf) response.getBody()) : Unpooled
-		        .wrappedBuffer(response.getBody().toString()
-		            .getBytes(ContentType.CHARSET));
+		    ? (ByteBuf) response.getBody() : ByteBufUtil.encodeString(ctx.alloc(),
+		        CharBuffer.wrap(response.getBody().toString()), ContentType.CHARSET);
 	}
 
 	private HttpResponseStatus getHttpResponseStatusFrom(Request request,
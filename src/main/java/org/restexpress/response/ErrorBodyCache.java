@@ -0,0 +1,83 @@
+package org.restexpress.response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaders;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.restexpress.Response;
+import org.restexpress.exception.ServiceException;
+import org.restexpress.serialization.SerializationSettings;
+
+/**
+ * 框架在热路径上抛出的无堆栈ServiceException(路由不到的404,405,参数错误的400等)的响应body缓存:
+ * 同一种异常,状态码和格式的错误只序列化一次,放在不会被释放的direct buffer里,之后每次只复制索引。
+ * <p/>
+ * 按异常类型,状态码和格式缓存,每种只保存第一次遇到的消息,消息不同(比如带了客户端输入的参数值)时按原来的方式序列化,
+ * 客户端不能用不同的消息把缓存占满。ErrorResponseWrapper的body里每次有新的errorId,不缓存
+ * @author hanst
+ *
+ */
+public class ErrorBodyCache {
+	private final ConcurrentMap<String, Body> bodies = new ConcurrentHashMap<String, Body>();
+
+	/**
+	 * @param settings
+	 * @param response 带异常的响应
+	 * @param allocator
+	 * @return 缓存的body副本(释放不影响缓存),或者正常序列化的结果
+	 */
+	public ByteBuf serialize(SerializationSettings settings, Response response, ByteBufAllocator allocator) {
+		if (!isCacheable(settings, response))
+			return settings.serialize(response, allocator);
+
+		Throwable exception = response.getException();
+		String key = exception.getClass().getName() + ' ' + response.getResponseStatus().code() + ' '
+				+ settings.getMediaType();
+		String message = exception.getMessage();
+		Body cached = bodies.get(key);
+		if (cached != null) {
+			if (!cached.matches(message))
+				return settings.serialize(response, allocator);
+			if (!response.hasHeader(HttpHeaders.Names.CONTENT_TYPE))
+				response.setContentType(settings.getMediaType());
+			return cached.content.duplicate();
+		}
+
+		ByteBuf serialized = settings.serialize(response, allocator);
+		if (serialized != null) {
+			int length = serialized.readableBytes();
+			bodies.putIfAbsent(key, new Body(message, Unpooled.unreleasableBuffer(
+					Unpooled.directBuffer(length).writeBytes(serialized, serialized.readerIndex(), length))));
+		}
+		return serialized;
+	}
+
+	public int size() {
+		return bodies.size();
+	}
+
+	private static final class Body {
+		final String message;
+		final ByteBuf content;
+
+		Body(String message, ByteBuf content) {
+			this.message = message;
+			this.content = content;
+		}
+
+		boolean matches(String other) {
+			return message == null ? other == null : message.equals(other);
+		}
+	}
+
+	private static boolean isCacheable(SerializationSettings settings, Response response) {
+		Throwable exception = response.getException();
+		return exception instanceof ServiceException && ((ServiceException) exception).isStackless()
+				&& settings.getResponseProcessor() != null
+				&& !(settings.getResponseProcessor().getWrapper() instanceof ErrorResponseWrapper);
+	}
+}
@@ -0,0 +1,104 @@
+package org.restexpress.response;
+
+import java.io.File;
+import java.net.URLConnection;
+
+/**
+ * action返回的文件下载:不读到内存里序列化,由FileDownloadWriter直接从文件写出。
+ * 没有ssl并且不压缩时用DefaultFileRegion(epoll/nio下是sendfile,不经过用户空间),
+ * 否则用ChunkedNioFile按块读取。支持Range(单个区间)和If-Modified-Since。
+ * <p/>
+ * 可以只下载文件的一段(offset,length),Range是相对这一段的
+ * @author hanst
+ *
+ */
+public class FileDownload {
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+	private final File file;
+	private final long offset;
+	private final long length;
+	private String contentType;
+	private String attachmentName;
+
+	/**
+	 * 下载整个文件
+	 * @param file
+	 */
+	public FileDownload(File file) {
+		this(file, 0, -1);
+	}
+
+	/**
+	 * 下载文件的一段,超出文件长度的部分忽略
+	 * @param file
+	 * @param offset 开始位置
+	 * @param length 长度,-1到文件结尾
+	 */
+	public FileDownload(File file, long offset, long length) {
+		if (offset < 0)
+			throw new IllegalArgumentException("offset不能小于0:" + offset);
+		this.file = file;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @param contentType 没有指定时按文件扩展名猜,猜不到为application/octet-stream
+	 * @return
+	 */
+	public FileDownload contentType(String contentType) {
+		this.contentType = contentType;
+		return this;
+	}
+
+	/**
+	 * 按附件下载(Content-Disposition: attachment),浏览器保存为这个文件名
+	 * @param fileName
+	 * @return
+	 */
+	public FileDownload attachment(String fileName) {
+		this.attachmentName = fileName;
+		return this;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return -1到文件结尾
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	public String getContentType() {
+		if (contentType == null) {
+			String guessed = URLConnection.getFileNameMap().getContentTypeFor(file.getName());
+			contentType = (guessed == null ? DEFAULT_CONTENT_TYPE : guessed);
+		}
+		return contentType;
+	}
+
+	/**
+	 * @return 附件的文件名,null时浏览器直接显示
+	 */
+	public String getAttachmentName() {
+		return attachmentName;
+	}
+
+	/**
+	 * 文本类的内容压缩才有效果,图片,压缩包等按原样零拷贝写出
+	 * @return
+	 */
+	public boolean isCompressible() {
+		String type = getContentType().toLowerCase();
+		return type.startsWith("text/") || type.contains("json") || type.contains("xml")
+				|| type.contains("javascript");
+	}
+}
@@ -0,0 +1,258 @@
+package org.restexpress.response;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderDateFormat;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.text.ParseException;
+import java.util.Date;
+
+import org.restexpress.Request;
+import org.restexpress.Response;
+
+/**
+ * 写出FileDownload:先写header(HttpResponse),再写文件内容和LastHttpContent,文件内容不进堆。
+ * <ul>
+ * <li>没有ssl并且这个响应不压缩:DefaultFileRegion,epoll/nio下是sendfile</li>
+ * <li>有ssl,或者内容可以压缩并且客户端接受gzip/deflate:HttpChunkedInput(ChunkedNioFile),
+ * 由ChunkedWriteHandler在channel可写时一块一块读出,再经过HttpContentCompressor压缩</li>
+ * <li>If-Modified-Since不早于文件修改时间(按秒)时返回304</li>
+ * <li>Range只支持一个区间(bytes=a-b,bytes=a-,bytes=-n),多个区间时返回整个文件,区间无效时返回416;
+ * If-Range和Last-Modified不一致时返回整个文件;压缩时不支持Range</li>
+ * <li>HEAD只写header,不设置chunked:不压缩时Content-Length是内容的长度,压缩时不知道长度,两个都不写</li>
+ * </ul>
+ * 零拷贝的响应用UncompressedResponse写header,pipeline里的ContentCompressor看到它就不压缩
+ * @author hanst
+ *
+ */
+public class FileDownloadWriter {
+	private static final String CONTENT_DISPOSITION = "Content-Disposition";
+	private static final int CHUNK_SIZE = 8192;
+	private static final long[] FULL = new long[0];
+	private static final long[] UNSATISFIABLE = new long[0];
+
+	private FileDownloadWriter() {
+	}
+
+	/**
+	 * 只用于header,告诉ContentCompressor这个响应的内容按原样写出
+	 */
+	public static final class UncompressedResponse extends DefaultHttpResponse {
+		public UncompressedResponse(HttpVersion version, HttpResponseStatus status) {
+			super(version, status);
+		}
+	}
+
+	public static void write(ChannelHandlerContext ctx, Request request, Response response, FileDownload download) {
+		RandomAccessFile raf;
+		try {
+			raf = new RandomAccessFile(download.getFile(), "r");
+		} catch (FileNotFoundException e) {
+			writeStatus(ctx, request, HttpResponseStatus.NOT_FOUND, -1, -1);
+			return;
+		}
+
+		boolean written = false;
+		try {
+			long fileLength = raf.length();
+			long start = Math.min(download.getOffset(), fileLength);
+			long length = (download.getLength() < 0 ? fileLength - start : Math.min(download.getLength(), fileLength - start));
+			long lastModified = download.getFile().lastModified();
+
+			if (isNotModified(request, lastModified)) {
+				writeStatus(ctx, request, HttpResponseStatus.NOT_MODIFIED, lastModified, -1);
+				return;
+			}
+
+			boolean compress = download.isCompressible() && acceptsCompression(ctx, request);
+			long[] range = (compress ? FULL : parseRange(request, length, lastModified));
+			if (range == UNSATISFIABLE) {
+				writeStatus(ctx, request, HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, -1, length);
+				return;
+			}
+
+			HttpResponseStatus status = response.getResponseStatus();
+			long total = length;
+			if (range != FULL) {
+				status = HttpResponseStatus.PARTIAL_CONTENT;
+				start += range[0];
+				length = range[1] - range[0] + 1;
+			}
+
+			boolean head = (request.getHttpMethod() == HttpMethod.HEAD);
+			//HEAD没有内容,不能经过压缩的handler(它会写出gzip的结尾)
+			HttpResponse header = (compress && !head ? new DefaultHttpResponse(request.getHttpVersion(), status)
+					: new UncompressedResponse(request.getHttpVersion(), status));
+			addHeaders(response, header);
+			header.headers().set(HttpHeaders.Names.CONTENT_TYPE, download.getContentType());
+			HttpHeaders.setDateHeader(header, HttpHeaders.Names.LAST_MODIFIED, new Date(lastModified));
+			if (download.getAttachmentName() != null)
+				header.headers().set(CONTENT_DISPOSITION, disposition(download.getAttachmentName()));
+			if (!compress) {
+				header.headers().set(HttpHeaders.Names.ACCEPT_RANGES, HttpHeaders.Values.BYTES);
+				HttpHeaders.setContentLength(header, length);
+			} else if (!head) {
+				HttpHeaders.setTransferEncodingChunked(header);
+			}
+			if (range != FULL)
+				header.headers().set(HttpHeaders.Names.CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + total);
+			setKeepAlive(request, header);
+
+			ctx.channel().write(header);
+			ChannelFuture last;
+			if (head || length == 0) {
+				//header不是chunked时EMPTY_LAST_CONTENT不写出任何字节,只结束这个响应
+				raf.close();
+				last = ctx.channel().write(LastHttpContent.EMPTY_LAST_CONTENT);
+			} else if (compress || ctx.pipeline().get(SslHandler.class) != null) {
+				//文件由ChunkedNioFile关闭
+				last = ctx.channel().write(new HttpChunkedInput(new ChunkedNioFile(raf.getChannel(), start, length, CHUNK_SIZE)));
+			} else {
+				//文件在DefaultFileRegion释放时关闭
+				ctx.channel().write(new DefaultFileRegion(raf.getChannel(), start, length));
+				last = ctx.channel().write(LastHttpContent.EMPTY_LAST_CONTENT);
+			}
+			written = true;
+			last.addListener(request.isKeepAlive() ? ChannelFutureListener.CLOSE_ON_FAILURE : ChannelFutureListener.CLOSE);
+		} catch (IOException e) {
+			writeStatus(ctx, request, HttpResponseStatus.INTERNAL_SERVER_ERROR, -1, -1);
+		} finally {
+			if (!written)
+				close(raf);
+		}
+	}
+
+	/**
+	 * 没有内容的响应:304,416(Content-Range: bytes *&#47;长度),404,500
+	 */
+	private static void writeStatus(ChannelHandlerContext ctx, Request request, HttpResponseStatus status,
+			long lastModified, long completeLength) {
+		FullHttpResponse res = new DefaultFullHttpResponse(request.getHttpVersion(), status);
+		if (lastModified >= 0)
+			HttpHeaders.setDateHeader(res, HttpHeaders.Names.LAST_MODIFIED, new Date(lastModified));
+		if (completeLength >= 0)
+			res.headers().set(HttpHeaders.Names.CONTENT_RANGE, "bytes */" + completeLength);
+		if (status.code() != 304)
+			HttpHeaders.setContentLength(res, 0);
+		setKeepAlive(request, res);
+		ctx.channel().write(res).addListener(
+				request.isKeepAlive() ? ChannelFutureListener.CLOSE_ON_FAILURE : ChannelFutureListener.CLOSE);
+	}
+
+	private static void setKeepAlive(Request request, HttpResponse res) {
+		if (!request.isKeepAlive())
+			res.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+		else if (request.isHttpVersion1_0())
+			res.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+	}
+
+	private static void addHeaders(Response response, HttpResponse header) {
+		for (String name : response.getHeaderNames())
+			for (String value : response.getHeaders(name))
+				header.headers().add(name, value);
+	}
+
+	private static boolean isNotModified(Request request, long lastModified) {
+		String since = request.getHeader(HttpHeaders.Names.IF_MODIFIED_SINCE);
+		if (since == null || lastModified <= 0)
+			return false;
+		try {
+			long time = HttpHeaderDateFormat.get().parse(since).getTime();
+			return time / 1000 >= lastModified / 1000;
+		} catch (ParseException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * pipeline里有压缩的handler,并且客户端接受gzip或deflate
+	 */
+	private static boolean acceptsCompression(ChannelHandlerContext ctx, Request request) {
+		if (ctx.pipeline().get(HttpContentCompressor.class) == null)
+			return false;
+		String accept = request.getHeader(HttpHeaders.Names.ACCEPT_ENCODING);
+		if (accept == null)
+			return false;
+		accept = accept.toLowerCase();
+		return accept.contains("gzip") || accept.contains("deflate");
+	}
+
+	/**
+	 * @param length 下载内容的总长度
+	 * @return 区间的{开始,结束}(包含),FULL返回全部(没有Range或者Range无效),UNSATISFIABLE区间不在内容范围里
+	 */
+	private static long[] parseRange(Request request, long length, long lastModified) {
+		String value = request.getHeader(HttpHeaders.Names.RANGE);
+		if (value == null || !value.regionMatches(true, 0, "bytes=", 0, 6) || value.indexOf(',') >= 0)
+			return FULL;
+		String ifRange = request.getHeader(HttpHeaders.Names.IF_RANGE);
+		if (ifRange != null && !ifRange.equals(HttpHeaderDateFormat.get().format(new Date(lastModified))))
+			return FULL;
+
+		String spec = value.substring(6).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0)
+			return FULL;
+		long first;
+		long last;
+		try {
+			if (dash == 0) {
+				//最后n个字节
+				long suffix = Long.parseLong(spec.substring(1).trim());
+				if (suffix <= 0)
+					return UNSATISFIABLE;
+				first = Math.max(0, length - suffix);
+				last = length - 1;
+			} else {
+				first = Long.parseLong(spec.substring(0, dash).trim());
+				String end = spec.substring(dash + 1).trim();
+				last = (end.isEmpty() ? length - 1 : Long.parseLong(end));
+				//结束在开始之前是无效的区间,按RFC 7233忽略Range返回全部
+				if (last < first)
+					return FULL;
+				last = Math.min(last, length - 1);
+			}
+		} catch (NumberFormatException e) {
+			return FULL;
+		}
+		if (first >= length)
+			return UNSATISFIABLE;
+		return new long[] { first, last };
+	}
+
+	private static String disposition(String fileName) {
+		try {
+			return "attachment; filename=\"" + fileName.replaceAll("[^\\x20-\\x7e]|\"", "_") + "\"; filename*=UTF-8''"
+					+ URLEncoder.encode(fileName, "UTF-8").replace("+", "%20");
+		} catch (UnsupportedEncodingException e) {
+			return "attachment";
+		}
+	}
+
+	private static void close(RandomAccessFile raf) {
+		try {
+			raf.close();
+		} catch (IOException e) {
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package org.restexpress.response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restexpress.ContentType;
+import org.restexpress.Response;
+
+/**
+ * DupRequestAspect幂等接口的响应缓存,保存的是序列化后的响应字节,放在堆外内存里。
+ * <p/>
+ * 同一个key第一个请求拿到Entry后执行action,执行完调用complete保存响应或者abandon放弃;
+ * 执行期间的重复请求不阻塞线程,在acquire里登记一个waiter,第一个请求complete或abandon时调用,再重新acquire。
+ * 按总字节数和条目数限制大小,超出时先保存的先淘汰,过期的条目在读取或淘汰时清理
+ * @author hanst
+ *
+ */
+public class IdempotentResponseCache {
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	//保存了响应的条目,按保存的先后顺序
+	private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<Entry>();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicInteger count = new AtomicInteger();
+	private final long maxBytes;
+	private final int maxEntries;
+
+	public IdempotentResponseCache(long maxBytes, int maxEntries) {
+		this.maxBytes = maxBytes;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * 获取key对应的条目:返回的条目isReplay()为true时,表示已经有保存的响应,用replay写回即可;
+	 * 否则当前请求是第一个请求,执行完后必须调用complete或者abandon
+	 * @param key
+	 * @param waiter 同一个key正在执行时登记,第一个请求complete或abandon后在它的线程里调用,调用后重新acquire
+	 * @return 同一个key正在执行(已经登记了waiter)时返回null
+	 */
+	public Entry acquire(String key, Runnable waiter) {
+		for (;;) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				Entry pending = new Entry(key);
+				entry = entries.putIfAbsent(key, pending);
+				if (entry == null)
+					return pending;
+			}
+			if (entry.isPending()) {
+				if (entry.addWaiter(waiter))
+					return null;
+				continue;
+			}
+			if (!entry.isExpired() && entry.retain())
+				return entry;
+			evict(entry);
+		}
+	}
+
+	/**
+	 * 保存第一个请求的响应,唤醒等待的重复请求
+	 * @param pending acquire返回的条目
+	 * @param response 已经序列化好的响应
+	 * @param ttl 保存时间,毫秒
+	 * @return 保存成功返回true,响应太大等情况返回false,这时和abandon一样
+	 */
+	public boolean complete(Entry pending, Response response, long ttl) {
+		ByteBuf content = contentOf(response);
+		int size = (content == null ? 0 : content.readableBytes());
+		if (size > maxBytes) {
+			abandon(pending);
+			return false;
+		}
+
+		Entry stored = new Entry(pending.key);
+		stored.status = response.getResponseStatus();
+		stored.headers = copyHeaders(response);
+		stored.expireAt = System.currentTimeMillis() + ttl;
+		stored.size = size;
+		if (size > 0) {
+			stored.content = Unpooled.directBuffer(size);
+			stored.content.writeBytes(content, content.readerIndex(), size);
+		}
+		if (!entries.replace(pending.key, pending, stored)) {
+			stored.release();
+			pending.finish();
+			return false;
+		}
+		bytes.addAndGet(size);
+		count.incrementAndGet();
+		order.offer(stored);
+		trim();
+		pending.finish();
+		return true;
+	}
+
+	/**
+	 * 第一个请求执行失败,不保存响应,等待的重复请求中的一个会重新执行
+	 * @param pending
+	 */
+	public void abandon(Entry pending) {
+		entries.remove(pending.key, pending);
+		pending.finish();
+	}
+
+	public int size() {
+		return count.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	private void trim() {
+		Entry head;
+		while ((head = order.peek()) != null
+				&& (bytes.get() > maxBytes || count.get() > maxEntries || head.isExpired() || head.isReleased())) {
+			if (order.remove(head))
+				evict(head);
+		}
+	}
+
+	private void evict(Entry entry) {
+		entries.remove(entry.key, entry);
+		if (entry.release()) {
+			bytes.addAndGet(-entry.size);
+			count.decrementAndGet();
+		}
+	}
+
+	private static ByteBuf contentOf(Response response) {
+		Object body = response.getBody();
+		if (body == null)
+			return null;
+		if (body instanceof ByteBuf)
+			return (ByteBuf) body;
+		return Unpooled.wrappedBuffer(body.toString().getBytes(ContentType.CHARSET));
+	}
+
+	private static Map<String, List<String>> copyHeaders(Response response) {
+		Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+		for (String name : response.getHeaderNames())
+			headers.put(name, new ArrayList<String>(response.getHeaders(name)));
+		return headers;
+	}
+
+	/**
+	 * 一个幂等key的状态:执行中,或者保存好的响应
+	 */
+	public static final class Entry {
+		private final String key;
+		//执行中的条目上等待的重复请求
+		private List<Runnable> waiters;
+		private boolean finished;
+		private HttpResponseStatus status;
+		private Map<String, List<String>> headers;
+		private ByteBuf content;
+		private int size;
+		private long expireAt;
+		private boolean released;
+
+		private Entry(String key) {
+			this.key = key;
+		}
+
+		public boolean isReplay() {
+			return status != null;
+		}
+
+		boolean isPending() {
+			return status == null;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() >= expireAt;
+		}
+
+		/**
+		 * @return false 已经执行完了,waiter没有登记
+		 */
+		synchronized boolean addWaiter(Runnable waiter) {
+			if (finished)
+				return false;
+			if (waiters == null)
+				waiters = new ArrayList<Runnable>(1);
+			waiters.add(waiter);
+			return true;
+		}
+
+		void finish() {
+			List<Runnable> list;
+			synchronized (this) {
+				finished = true;
+				list = waiters;
+				waiters = null;
+			}
+			if (list != null)
+				for (Runnable waiter : list)
+					waiter.run();
+		}
+
+		synchronized boolean isReleased() {
+			return released;
+		}
+
+		//replay之前增加堆外内存的引用计数,防止写出的时候被淘汰释放
+		synchronized boolean retain() {
+			if (released)
+				return false;
+			if (content != null)
+				content.retain();
+			return true;
+		}
+
+		synchronized boolean release() {
+			if (released)
+				return false;
+			released = true;
+			if (content != null)
+				content.release();
+			return true;
+		}
+
+		/**
+		 * 把保存的响应写回response,body是共享堆外内存的视图,写出后由netty释放acquire时增加的引用
+		 * @param response
+		 */
+		public void replay(Response response) {
+			response.setResponseStatus(status);
+			response.clearHeaders();
+			for (Map.Entry<String, List<String>> header : headers.entrySet())
+				for (String value : header.getValue())
+					response.addHeader(header.getKey(), value);
+			response.noSerialization();
+			response.setBody(content == null ? null : content.duplicate());
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package org.restexpress.response;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import org.restexpress.domain.ex.ServerResponse;
+import org.restexpress.util.SerializeUtil;
+
+/**
+ * 预先序列化好的错误响应(限流,超时等),body放在不会被释放的direct buffer里,
+ * 每次写出只复制一份header,不经过action,序列化和ResponseWriter
+ * @author hanst
+ *
+ */
+public class PrebuiltResponse {
+	private final FullHttpResponse response;
+
+	/**
+	 * @param status http状态码
+	 * @param body 按json序列化
+	 */
+	public PrebuiltResponse(HttpResponseStatus status, ServerResponse body) {
+		byte[] bytes;
+		try {
+			bytes = SerializeUtil.get().writeValueAsBytes(body);
+		} catch (Exception e) {
+			bytes = ("{\"code\":" + body.getCode() + "}").getBytes();
+		}
+		response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+				Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes)));
+		response.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json; charset=UTF-8");
+		response.headers().set(HttpHeaders.Names.CONTENT_LENGTH, bytes.length);
+	}
+
+	/**
+	 * 创建后、第一次写出前设置额外的header,例如Retry-After
+	 * @param name
+	 * @param value
+	 * @return
+	 */
+	public PrebuiltResponse header(String name, Object value) {
+		response.headers().set(name, value);
+		return this;
+	}
+
+	public HttpResponseStatus getStatus() {
+		return response.getStatus();
+	}
+
+	/**
+	 * @param keepAlive
+	 * @return 一份副本,内容不需要释放
+	 */
+	public FullHttpResponse copy(boolean keepAlive) {
+		FullHttpResponse copy = (FullHttpResponse) response.duplicate();
+		HttpHeaders.setKeepAlive(copy, keepAlive);
+		return copy;
+	}
+
+	/**
+	 * 写出(不flush),不保持连接时写完关闭
+	 * @param ctx
+	 * @param keepAlive
+	 */
+	public void write(ChannelHandlerContext ctx, boolean keepAlive) {
+		if (keepAlive)
+			ctx.write(copy(true));
+		else
+			ctx.write(copy(false)).addListener(ChannelFutureListener.CLOSE);
+	}
+}
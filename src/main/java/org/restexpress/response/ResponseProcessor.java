@@ -15,12 +15,17 @@
 */
 package org.restexpress.response;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
 import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.restexpress.Request;
 import org.restexpress.Response;
 import org.restexpress.contenttype.MediaRange;
+import org.restexpress.serialization.ByteBufSerializer;
 import org.restexpress.serialization.SerializationProcessor;
 
 /**
@@ -70,4 +75,39 @@ public class ResponseProcessor
 		
 		return null;
 	}
+
+	/**
+	 * Serialize the wrapped response directly into a buffer from the allocator when
+	 * the serializer supports it (see ByteBufSerializer), otherwise wrap the ByteBuffer
+	 * produced by serialize(Response).
+	 * 
+	 * @param response
+	 * @param allocator typically the channel's (pooled) allocator.
+	 * @return a ByteBuf owned by the caller, or null.
+	 */
+	public ByteBuf serialize(Response response, ByteBufAllocator allocator)
+	{
+		if (!(serializer instanceof ByteBufSerializer))
+		{
+			ByteBuffer serialized = serialize(response);
+			return (serialized == null ? null : Unpooled.wrappedBuffer(serialized));
+		}
+
+		Object wrapped = wrapper.wrap(response);
+
+		if (wrapped == null) return null;
+
+		ByteBuf out = allocator.buffer();
+
+		try
+		{
+			((ByteBufSerializer) serializer).serialize(wrapped, out);
+			return out;
+		}
+		catch (RuntimeException e)
+		{
+			out.release();
+			throw e;
+		}
+	}
 }
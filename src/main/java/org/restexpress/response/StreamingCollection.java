@@ -0,0 +1,57 @@
+package org.restexpress.response;
+
+import java.util.Iterator;
+
+/**
+ * action返回的大集合:不先把整个结果序列化到一个buffer里,由StreamingCollectionWriter按json数组
+ * 一个元素一个元素地序列化,攒够chunkSize字节就作为一个HttpContent(chunked)写出,
+ * channel不可写(超过WRITE_BUFFER_HIGH_WATER_MARK)时暂停,可写后继续。
+ * <p/>
+ * iterator可以是数据库游标,在request handler的业务线程里读取;实现了AutoCloseable的话,
+ * 写完,出错或者连接断开时关闭。响应头写出后不能再改状态码,中途出错只能关闭连接
+ * @author hanst
+ *
+ */
+public class StreamingCollection {
+	private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+	private final Iterator<?> iterator;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	public StreamingCollection(Iterator<?> iterator) {
+		this.iterator = iterator;
+	}
+
+	public StreamingCollection(Iterable<?> iterable) {
+		this(iterable.iterator());
+	}
+
+	/**
+	 * @param bytes 每个chunk至少的字节数(最后一个除外),默认8192
+	 * @return
+	 */
+	public StreamingCollection chunkSize(int bytes) {
+		this.chunkSize = Math.max(1, bytes);
+		return this;
+	}
+
+	public Iterator<?> getIterator() {
+		return iterator;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * 关闭实现了AutoCloseable的iterator,异常忽略
+	 */
+	public void close() {
+		if (iterator instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) iterator).close();
+			} catch (Exception e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package org.restexpress.response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import org.restexpress.ContentType;
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.pipeline.ResponseSequence;
+import org.restexpress.serialization.SerializationProcessor;
+import org.restexpress.serialization.StreamingSerializer;
+import org.restexpress.util.RateLimitedLog;
+import org.restexpress.util.SerializeUtil;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * 写出StreamingCollection:先写header(HTTP/1.1时Transfer-Encoding: chunked,HTTP/1.0时写完关闭连接),
+ * 然后在request handler的executor里用jackson的JsonGenerator一个元素一个元素地写,
+ * 每攒够chunkSize字节写出一个HttpContent并flush:
+ * <ul>
+ * <li>channel不可写时暂停,记在channel上,DefaultRequestHandler收到channelWritabilityChanged后调用resume继续</li>
+ * <li>每次最多连续写MAX_CHUNKS_PER_RUN个chunk,然后重新提交到executor,不长时间占住同一个连接的线程</li>
+ * <li>元素序列化或者iterator出错,连接断开时关闭iterator;出错时关闭连接,客户端收到不完整的chunked响应</li>
+ * <li>写完之前占住连接的ResponseSequence,同一个连接上pipelining的下一个请求等这个响应写完再处理,
+ * 它的响应不会插在chunk中间</li>
+ * <li>HEAD只写header,不设置chunked,不写chunk的结尾</li>
+ * </ul>
+ * 序列化用路由的json序列化器(实现了StreamingSerializer时),和普通响应的格式一致,不经过ResponseWrapper
+ * @author hanst
+ *
+ */
+public class StreamingCollectionWriter implements Runnable {
+	private static final int MAX_CHUNKS_PER_RUN = 16;
+	private static final AttributeKey<StreamingCollectionWriter> PAUSED_KEY = AttributeKey.valueOf("pausedStream");
+	private static final RateLimitedLog ERROR_LOG = new RateLimitedLog(StreamingCollectionWriter.class, 10000);
+
+	private final ChannelHandlerContext ctx;
+	private final Channel channel;
+	private final EventExecutor executor;
+	private final StreamingCollection collection;
+	private final Iterator<?> iterator;
+	private final boolean keepAlive;
+	private final ChunkOutputStream out;
+	private final JsonGenerator generator;
+	private final Abort abortListener = new Abort();
+	private final String path;
+	private boolean done = false;
+
+	private StreamingCollectionWriter(ChannelHandlerContext ctx, Request request, StreamingCollection collection,
+			ChunkOutputStream out, JsonGenerator generator) {
+		this.ctx = ctx;
+		this.channel = ctx.channel();
+		this.executor = ctx.executor();
+		this.collection = collection;
+		this.iterator = collection.getIterator();
+		this.keepAlive = request.isKeepAlive() && !request.isHttpVersion1_0();
+		this.out = out;
+		this.generator = generator;
+		this.path = request.getPath();
+	}
+
+	public static void write(ChannelHandlerContext ctx, Request request, Response response, StreamingCollection collection) {
+		boolean keepAlive = request.isKeepAlive() && !request.isHttpVersion1_0();
+		if (request.getHttpMethod() == HttpMethod.HEAD) {
+			collection.close();
+			//不知道内容的长度,Content-Length和Transfer-Encoding都不写;HEAD没有内容,不经过压缩的handler
+			HttpResponse header = new FileDownloadWriter.UncompressedResponse(request.getHttpVersion(),
+					response.getResponseStatus());
+			addHeaders(response, header, keepAlive);
+			ctx.channel().write(header);
+			//header不是chunked时EMPTY_LAST_CONTENT不写出任何字节,只结束这个响应
+			ctx.channel().write(LastHttpContent.EMPTY_LAST_CONTENT).addListener(
+					keepAlive ? ChannelFutureListener.CLOSE_ON_FAILURE : ChannelFutureListener.CLOSE);
+			return;
+		}
+
+		ChunkOutputStream out = new ChunkOutputStream();
+		JsonGenerator generator;
+		try {
+			generator = createGenerator(response, out);
+		} catch (IOException e) {
+			collection.close();
+			throw new IllegalStateException(e);
+		}
+
+		StreamingCollectionWriter writer = new StreamingCollectionWriter(ctx, request, collection, out, generator);
+		HttpResponse header = new DefaultHttpResponse(request.getHttpVersion(), response.getResponseStatus());
+		addHeaders(response, header, keepAlive);
+		if (keepAlive)
+			HttpHeaders.setTransferEncodingChunked(header);
+		ctx.channel().write(header);
+
+		//写完(finish或abort)之前,同一个连接上pipelining的下一个请求在ResponseSequence里排队
+		ResponseSequence.begin(ctx.channel());
+		ctx.channel().closeFuture().addListener(writer.abortListener);
+		//在当前请求处理完(notifyComplete, flush)之后开始
+		writer.executor.execute(writer);
+	}
+
+	private static void addHeaders(Response response, HttpResponse header, boolean keepAlive) {
+		for (String name : response.getHeaderNames())
+			for (String value : response.getHeaders(name))
+				header.headers().add(name, value);
+		if (!response.hasHeader(HttpHeaders.Names.CONTENT_TYPE))
+			header.headers().set(HttpHeaders.Names.CONTENT_TYPE, ContentType.JSON);
+		header.headers().remove(HttpHeaders.Names.CONTENT_LENGTH);
+		if (!keepAlive)
+			header.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+	}
+
+	/**
+	 * channel重新可写时,在request handler的executor里调用,继续写暂停的响应
+	 * @param channel
+	 */
+	public static void resume(Channel channel) {
+		StreamingCollectionWriter paused = channel.attr(PAUSED_KEY).getAndSet(null);
+		if (paused != null)
+			paused.run();
+	}
+
+	/**
+	 * 路由的序列化器支持的话用它的配置(日期格式,忽略null等),否则用SerializeUtil的ObjectMapper
+	 */
+	private static JsonGenerator createGenerator(Response response, OutputStream out) throws IOException {
+		if (response.hasSerializationSettings()) {
+			SerializationProcessor serializer = response.getSerializationSettings().getResponseProcessor().getSerializer();
+			if (serializer instanceof StreamingSerializer)
+				return ((StreamingSerializer) serializer).createGenerator(out);
+		}
+		return SerializeUtil.get().getFactory().createGenerator(out);
+	}
+
+	@Override
+	public void run() {
+		if (done)
+			return;
+		if (!channel.isActive()) {
+			abort();
+			return;
+		}
+		try {
+			for (int i = 0; i < MAX_CHUNKS_PER_RUN; i++) {
+				if (!channel.isWritable()) {
+					channel.attr(PAUSED_KEY).set(this);
+					return;
+				}
+				if (!writeChunk()) {
+					finish();
+					return;
+				}
+			}
+			executor.execute(this);
+		} catch (Throwable t) {
+			ERROR_LOG.error(path + ' ' + t.getClass().getName(), "流式响应写出失败:" + path, t);
+			abort();
+		}
+	}
+
+	/**
+	 * 序列化元素直到够一个chunk或者全部写完,写出并flush
+	 * @return false 全部元素已经写完(包括数组结尾)
+	 */
+	private boolean writeChunk() throws IOException {
+		ByteBuf buffer = ctx.alloc().buffer(collection.getChunkSize());
+		out.buffer = buffer;
+		boolean more;
+		try {
+			if (generator.getOutputContext().inRoot())
+				generator.writeStartArray();
+			while (buffer.readableBytes() < collection.getChunkSize() && iterator.hasNext()) {
+				generator.writeObject(iterator.next());
+				generator.flush();
+			}
+			more = iterator.hasNext();
+			if (!more) {
+				generator.writeEndArray();
+				generator.flush();
+			}
+		} catch (IOException e) {
+			buffer.release();
+			throw e;
+		} catch (RuntimeException e) {
+			buffer.release();
+			throw e;
+		} finally {
+			out.buffer = null;
+		}
+		if (buffer.isReadable())
+			channel.writeAndFlush(new DefaultHttpContent(buffer));
+		else
+			buffer.release();
+		return more;
+	}
+
+	private void finish() {
+		done = true;
+		channel.closeFuture().removeListener(abortListener);
+		collection.close();
+		closeGenerator();
+		ChannelFuture last = channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+		last.addListener(keepAlive ? ChannelFutureListener.CLOSE_ON_FAILURE : ChannelFutureListener.CLOSE);
+		ResponseSequence.end(channel);
+	}
+
+	private void abort() {
+		if (done)
+			return;
+		done = true;
+		channel.attr(PAUSED_KEY).set(null);
+		collection.close();
+		closeGenerator();
+		if (channel.isActive())
+			channel.close();
+		ResponseSequence.end(channel);
+	}
+
+	private void closeGenerator() {
+		out.buffer = null;
+		try {
+			generator.close();
+		} catch (Exception e) {
+		}
+	}
+
+	/**
+	 * 连接断开时在executor里停止,关闭iterator
+	 */
+	private class Abort implements ChannelFutureListener, Runnable {
+		@Override
+		public void operationComplete(ChannelFuture future) {
+			executor.execute(this);
+		}
+
+		@Override
+		public void run() {
+			abort();
+		}
+	}
+
+	/**
+	 * JsonGenerator的输出,写到当前chunk的ByteBuf里;不在写chunk时丢弃(关闭generator时的残留输出)
+	 */
+	private static final class ChunkOutputStream extends OutputStream {
+		ByteBuf buffer;
+
+		@Override
+		public void write(int b) {
+			if (buffer != null)
+				buffer.writeByte(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if (buffer != null)
+				buffer.writeBytes(b, off, len);
+		}
+	}
+}
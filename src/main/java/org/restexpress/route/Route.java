@@ -26,15 +26,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import io.netty.handler.codec.http.HttpMethod;
+import org.restexpress.Flags;
+import org.restexpress.Parameters;
 import org.restexpress.Request;
 import org.restexpress.Response;
 import org.restexpress.RestExpress;
+import org.restexpress.annontation.DupRequestAspect;
+import org.restexpress.annontation.RequestTimeout;
+import org.restexpress.annontation.StreamingUpload;
 import org.restexpress.common.util.StringUtils;
 import org.restexpress.domain.ex.ServerResponse;
 import org.restexpress.exception.ServiceException;
 import org.restexpress.intf.DistributeLock;
 import org.restexpress.intf.HttpRequestParameterParseIntf;
+import org.restexpress.route.invoker.ActionInvoker;
+import org.restexpress.route.invoker.ActionInvokerFactory;
 import org.restexpress.url.UrlMatch;
+import org.restexpress.util.AsyncResults;
+import org.restexpress.util.RateLimitedLog;
 import org.restexpress.url.UrlMatcher;
 
 /**
@@ -46,15 +55,23 @@ import org.restexpress.url.UrlMatcher;
  */
 public abstract class Route
 {
+	// At most one stack trace per route and exception type every 10 seconds.
+	private static final RateLimitedLog ERROR_LOG = new RateLimitedLog(Route.class, 10000);
+
 	// SECTION: INSTANCE VARIABLES
 
 	private UrlMatcher urlMatcher;
 	private Object controller;
 	private Method action;
+	private ActionInvoker invoker;
+	private volatile RouteDependencies dependencies;
+	private DupRequestAspect dupRequestAspect;
+	private long timeoutMillis;
 	private HttpMethod method;
 	private boolean shouldSerializeResponse = true;
 	private String name;
 	private String baseUrl;
+	private String fullPattern;
 	private List<String> supportedFormats = new ArrayList<String>();
 	private String defaultFormat;
 	private Set<String> flags = new HashSet<String>();
@@ -74,14 +91,29 @@ public abstract class Route
 		this.controller = controller;
 		this.action = action;
 		this.action.setAccessible(true);
+		this.invoker = ActionInvokerFactory.getInvoker(action);
+		this.dupRequestAspect = action.getAnnotation(DupRequestAspect.class);
 		this.method = method;
 		this.shouldSerializeResponse = shouldSerializeResponse;
 		this.name = name;
 		this.supportedFormats.addAll(supportedFormats);
 		this.defaultFormat = defaultFormat;
 		this.flags.addAll(flags);
+		if (action.isAnnotationPresent(StreamingUpload.class)) this.flags.add(Flags.Upload.STREAMING);
 		this.parameters.putAll(parameters);
 		this.baseUrl = baseUrl;
+		this.timeoutMillis = resolveTimeout(action, this.parameters.get(Parameters.Deadline.TIMEOUT));
+	}
+
+	private static long resolveTimeout(Method action, Object parameter)
+	{
+		RequestTimeout timeout = action.getAnnotation(RequestTimeout.class);
+
+		if (timeout != null) return timeout.value();
+
+		if (parameter instanceof Number) return ((Number) parameter).longValue();
+
+		return 0;
 	}
 
 	/**
@@ -158,6 +190,22 @@ public abstract class Route
 		return action;
 	}
 	
+	/**
+	 * @return action上的幂等申明,没有申明的话为null
+	 */
+	public DupRequestAspect getDupRequestAspect()
+	{
+		return dupRequestAspect;
+	}
+	
+	/**
+	 * @return @RequestTimeout或者RouteBuilder.timeout()指定的处理时限(毫秒),没有指定为0
+	 */
+	public long getTimeoutMillis()
+	{
+		return timeoutMillis;
+	}
+
 	public Object getController()
 	{
 		return controller;
@@ -190,7 +238,13 @@ public abstract class Route
 	 */
 	public String getFullPattern()
 	{
-		return getBaseUrl() + getPattern();
+		// used as a per-request lookup key (bulkheads, metrics), so build it only once
+		if (fullPattern == null)
+		{
+			fullPattern = getBaseUrl() + getPattern();
+		}
+
+		return fullPattern;
 	}
 
 	/**
@@ -268,6 +322,38 @@ public abstract class Route
 	{
 		return urlMatcher.match(url);
 	}
+
+	protected UrlMatcher getUrlMatcher()
+	{
+		return urlMatcher;
+	}
+
+	public RouteDependencies getDependencies()
+	{
+		return dependencies;
+	}
+
+	/**
+	 * 设置路由调用时使用的spring服务快照,spring容器refresh后需要重新设置
+	 * 
+	 * @param dependencies
+	 */
+	public void setDependencies(RouteDependencies dependencies)
+	{
+		this.dependencies = dependencies;
+	}
+
+	//没有绑定过依赖的路由(比如直接new出来的)第一次调用时从spring容器里解析
+	private RouteDependencies dependencies()
+	{
+		RouteDependencies deps = dependencies;
+		if (deps == null)
+		{
+			deps = RouteDependencies.resolve(RestExpress.getSpringCtx());
+			dependencies = deps;
+		}
+		return deps;
+	}
 	
 	public List<String> getUrlParameters()
 	{
@@ -283,15 +369,34 @@ public abstract class Route
 			String ticket = request.getHeader(RestExpress.getConfig().getRequestToken());
 			//ticket在客户端生成，生成规则是提交的表单数据+accessToken做一个md5摘要
 			if (ticket != null) {
-				DistributeLock dl = RestExpress.getSpringCtx().getBean(DistributeLock.class);
+				final DistributeLock dl = dependencies().getDistributeLock();
 				boolean lock = dl.lock(ticket, DistributeLock.TIME_OUT);
-				if (lock)
+				if (lock){
+					boolean async = false;
 					try {
-						return doInvote(request, response, post);
+						Object result = doInvote(request, response, post);
+						//异步的action在结果完成后才释放
+						if (AsyncResults.isAsync(result)){
+							async = true;
+							final String key = ticket;
+							AsyncResults.addListener(result, new AsyncResults.Listener() {
+								@Override
+								public void onSuccess(Object value) {
+									dl.unlock(key);
+								}
+
+								@Override
+								public void onFailure(Throwable cause) {
+									dl.unlock(key);
+								}
+							});
+						}
+						return result;
 					} finally {
-						dl.unlock(ticket);
+						if (!async)
+							dl.unlock(ticket);
 					}
-				else
+				}else
 					return ServerResponse.REQUEST_FEQ_ERROR;
 			}
 		}
@@ -302,17 +407,44 @@ public abstract class Route
 		//因为只支持get,post
 		if (method.compareTo(HttpMethod.POST) == 0 && method.compareTo(request.getEffectiveHttpMethod()) != 0)
 			return new ServerResponse(405,"http请求类型不匹配,请使用" + method.name());
-		HttpRequestParameterParseIntf intf = RestExpress.getSpringCtx().getBean(HttpRequestParameterParseIntf.class);
+		HttpRequestParameterParseIntf intf = dependencies().getParameterParser();
+		if (intf == null)
+			intf = RestExpress.getSpringCtx().getBean(HttpRequestParameterParseIntf.class);
 		try{
-			return action.invoke(controller, intf.parse(action, request, response)); 
+			return invoker.invoke(controller, intf.parse(action, request, response)); 
 		}catch(Exception e){
-			e.printStackTrace();
-			if (e instanceof ServiceException)
-				return new ServerResponse(((ServiceException) e).getHttpStatus().code(),e.getMessage());	
-			return ServerResponse.INTERNAL_ERROR;
+			return failed(e);
 		}
 	}
 
+	/**
+	 * action执行失败(包括异步结果失败):客户端错误(4xx的ServiceException)不打印堆栈,
+	 * 其它错误按路由和异常类型限制打印频率
+	 * @param e
+	 * @return 返回给客户端的内容
+	 */
+	public ServerResponse failed(Throwable e)
+	{
+		if (!(e instanceof ServiceException && ((ServiceException) e).getHttpStatus().code() < 500))
+		{
+			String pattern = getFullPattern();
+			ERROR_LOG.error(pattern + ' ' + e.getClass().getName(), "action执行失败:" + method + " " + pattern, e);
+		}
+		return toErrorResponse(e);
+	}
+
+	/**
+	 * action执行失败时返回给客户端的内容,异步action的结果失败时也用这个转换
+	 * @param e
+	 * @return
+	 */
+	public static ServerResponse toErrorResponse(Throwable e)
+	{
+		if (e instanceof ServiceException)
+			return new ServerResponse(((ServiceException) e).getHttpStatus().code(),e.getMessage());	
+		return ServerResponse.INTERNAL_ERROR;
+	}
+
 	public static void main(String[] args){
 		 
 	}
@@ -14,6 +14,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.restexpress.Flags;
+import org.restexpress.Parameters;
 import org.restexpress.common.exception.ConfigurationException;
 import org.restexpress.domain.metadata.RouteMetadata;
 import org.restexpress.domain.metadata.UriMetadata;
@@ -239,27 +241,54 @@ public abstract class RouteBuilder
 	}
 
 	/**
-	 * NOT IMPLEMENTED.
+	 * Run the controller for this route on the named Bulkhead executor instead of the
+	 * shared executor group. Bulkheads are declared in netty.properties ('bulkheads').
 	 * 
-	 * @return
-	 * @deprecated
+	 * @param name the name of the bulkhead.
+	 * @return this RouteBuilder to facilitate method chaining.
+	 */
+	public RouteBuilder bulkhead(String name)
+	{
+		return parameter(Parameters.Executor.BULKHEAD, name);
+	}
+
+	/**
+	 * Give requests to this route a deadline of the given number of milliseconds after
+	 * they arrive, unless the client sends a shorter timeout header. Requests still queued
+	 * when the deadline passes are not executed. Same as @RequestTimeout on the action.
+	 * 
+	 * @param millis the time budget of the route.
+	 * @return this RouteBuilder to facilitate method chaining.
+	 */
+	public RouteBuilder timeout(long millis)
+	{
+		return parameter(Parameters.Deadline.TIMEOUT, millis);
+	}
+
+	/**
+	 * Decode multipart/form-data requests to this route while they arrive, instead of
+	 * aggregating the whole body in memory (which is limited to maxContentSize). Parts larger
+	 * than uploadSpillThreshold are written to temporary files, which are deleted once the
+	 * request completes. File parts bind to FileUpload parameters of the action, the other
+	 * parts bind like form fields.
+	 * 
+	 * @return this RouteBuilder to facilitate method chaining.
 	 */
 	public RouteBuilder useStreamingMultipartUpload()
 	{
-		// TODO: complete supportMultipart()
-		return this;
+		return flag(Flags.Upload.STREAMING);
 	}
 	
 	/**
-	 * NOT IMPLEMENTED.
+	 * Send java.io.File results of this route's action as file downloads, the same as
+	 * returning a FileDownload: the file is written with sendfile (or in chunks under SSL
+	 * or compression) instead of being serialized, and Range and If-Modified-Since are honored.
 	 * 
-	 * @return
-	 * @deprecated
+	 * @return this RouteBuilder to facilitate method chaining.
 	 */
 	public RouteBuilder useStreamingDownload()
 	{
-		// TODO: complete useStreamingdownload()
-		return this;
+		return flag(Flags.Download.STREAMING);
 	}
 	
 	
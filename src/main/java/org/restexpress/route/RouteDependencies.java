@@ -0,0 +1,61 @@
+package org.restexpress.route;
+
+import org.restexpress.intf.DistributeLock;
+import org.restexpress.intf.HttpRequestParameterParseIntf;
+import org.restexpress.intf.impl.LocalLeaseDistributeLock;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * 路由调用时需要的spring服务的快照,在绑定端口创建路由的时候从spring容器里取一次,
+ * 而不是每个请求都去DefaultListableBeanFactory里按类型查找。spring容器refresh后重新生成
+ * <p/>
+ * 实例是不可变的，可以被多个线程共享
+ * @author hanst
+ *
+ */
+public final class RouteDependencies {
+	private final HttpRequestParameterParseIntf parameterParser;
+	private final DistributeLock distributeLock;
+
+	public RouteDependencies(HttpRequestParameterParseIntf parameterParser, DistributeLock distributeLock) {
+		this.parameterParser = parameterParser;
+		this.distributeLock = distributeLock;
+	}
+
+	/**
+	 * 从spring容器里解析路由依赖的服务,参数解析服务没有定义的话为null,
+	 * DistributeLock没有定义的话使用进程内的LocalLeaseDistributeLock
+	 * @param ctx
+	 * @return
+	 */
+	public static RouteDependencies resolve(ApplicationContext ctx) {
+		if (ctx == null)
+			return new RouteDependencies(null, LocalLeaseDistributeLock.getDefault());
+		DistributeLock lock = getBean(ctx, DistributeLock.class);
+		return new RouteDependencies(getBean(ctx, HttpRequestParameterParseIntf.class),
+				lock == null ? LocalLeaseDistributeLock.getDefault() : lock);
+	}
+
+	private static <T> T getBean(ApplicationContext ctx, Class<T> cls) {
+		try {
+			return ctx.getBean(cls);
+		} catch (BeansException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return 参数解析服务,没有定义的话为null
+	 */
+	public HttpRequestParameterParseIntf getParameterParser() {
+		return parameterParser;
+	}
+
+	/**
+	 * @return 防重复提交用的锁服务
+	 */
+	public DistributeLock getDistributeLock() {
+		return distributeLock;
+	}
+}
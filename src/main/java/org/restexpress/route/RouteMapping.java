@@ -23,7 +23,6 @@ import java.util.List;
 import java.util.Map;
 
 import io.netty.handler.codec.http.HttpMethod;
-import org.restexpress.url.UrlMatch;
 
 /**
  * Contains the routes for a given service implementation. Sub-classes will
@@ -38,6 +37,7 @@ public class RouteMapping
 	// SECTION: INSTANCE VARIABLES
 
 	private Map<HttpMethod, List<Route>> routes;
+	private Map<HttpMethod, RouteTrie> tries;
 	private List<Route> deleteRoutes = new ArrayList<Route>();
 	private List<Route> getRoutes = new ArrayList<Route>();
 	private List<Route> postRoutes = new ArrayList<Route>();
@@ -62,6 +62,16 @@ public class RouteMapping
 		routes.put(HttpMethod.PUT, putRoutes);
 		routes.put(HttpMethod.HEAD, headRoutes);
 		routes.put(HttpMethod.OPTIONS, optionRoutes);
+
+		// one trie per route list, so GET and POST share theirs just like the lists above
+		RouteTrie getTrie = new RouteTrie();
+		tries = new HashMap<HttpMethod, RouteTrie>();
+		tries.put(HttpMethod.DELETE, new RouteTrie());
+		tries.put(HttpMethod.GET, getTrie);
+		tries.put(HttpMethod.POST, getTrie);
+		tries.put(HttpMethod.PUT, new RouteTrie());
+		tries.put(HttpMethod.HEAD, new RouteTrie());
+		tries.put(HttpMethod.OPTIONS, new RouteTrie());
 	}
 
 
@@ -87,9 +97,30 @@ public class RouteMapping
 		return Collections.unmodifiableList(routesFor);
 	}
 
+	/**
+	 * Return every Route in this mapping, in registration order per URL pattern.
+	 * 
+	 * @return a new List of all routes. Never null.
+	 */
+	public List<Route> getAllRoutes()
+	{
+		List<Route> all = new ArrayList<Route>();
+
+		for (List<Route> patternRoutes : routesByPattern.values())
+		{
+			all.addAll(patternRoutes);
+		}
+
+		return all;
+	}
+
 	/**
 	 * Attempts to match the path and method to an appropriate Route, returning an
 	 * Action instance if a match is found.  Returns null if no match is found.
+	 * <p/>
+	 * Parameterized routes are resolved through a segment trie in O(path segments);
+	 * only routes the trie can't represent (e.g. RegexRoute) are matched by regex.
+	 * The first route in registration order that matches still wins.
 	 * 
 	 * @param method
 	 *            the HTTP method (GET, PUT, POST, DELETE) for which to retrieve
@@ -99,17 +130,11 @@ public class RouteMapping
 	 */
 	public Action getActionFor(HttpMethod method, String path)
 	{
-		for (Route route : routes.get(method))
-		{
-			UrlMatch match = route.match(path);
+		RouteTrie trie = tries.get(method);
 
-			if (match != null)
-			{
-				return new Action(route, match);
-			}
-		}
-		
-		return null;
+		if (trie == null) return null;
+
+		return trie.match(path);
 	}
 
 	/**
@@ -186,9 +211,11 @@ public class RouteMapping
 		{
 			list = new ArrayList<Route>();
 			routes.put(route.getMethod(), list);
+			tries.put(route.getMethod(), new RouteTrie());
 		}
 
 		list.add(route);
+		tries.get(route.getMethod()).add(route);
 		addByPattern(route);
 
 		if (route.hasName())
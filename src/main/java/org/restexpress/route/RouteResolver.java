@@ -30,6 +30,10 @@ import org.restexpress.util.Resolver;
 public class RouteResolver
 implements Resolver<Action>
 {
+	// Constant messages, so the serialized 404/405 bodies can be cached (see ErrorBodyCache).
+	private static final String NOT_FOUND_MESSAGE = "Unresolvable URL";
+	private static final String METHOD_NOT_ALLOWED_MESSAGE = "Method not allowed for URL";
+
 	private RouteMapping routeMapping;
 	
 	public RouteResolver(RouteMapping routes)
@@ -43,6 +47,34 @@ implements Resolver<Action>
 		return routeMapping.getNamedRoute(name, method);
 	}
 	
+	/**
+	 * Looks up the route for the method and path, without a Request and without throwing
+	 * when nothing matches. Used in the pipeline before the request body has been read.
+	 * 
+	 * @param method the HTTP method of the request.
+	 * @param path the request URI, the query string is ignored.
+	 * @return the matching Route, or null.
+	 */
+	public Route findRoute(HttpMethod method, String path)
+	{
+		Action action = routeMapping.getActionFor(method, path);
+		return (action == null ? null : action.getRoute());
+	}
+
+	/**
+	 * @param flag
+	 * @return true if any route is flagged with the given flag.
+	 */
+	public boolean hasFlaggedRoute(String flag)
+	{
+		for (Route route : routeMapping.getAllRoutes())
+		{
+			if (route.isFlagged(flag)) return true;
+		}
+
+		return false;
+	}
+	
 	@Override
 	public Action resolve(Request request)
 	{
@@ -54,9 +86,9 @@ implements Resolver<Action>
 
 		if (allowedMethods != null && !allowedMethods.isEmpty())
 		{
-			throw new MethodNotAllowedException(request.getUrl(), allowedMethods);
+			throw new MethodNotAllowedException(METHOD_NOT_ALLOWED_MESSAGE, allowedMethods, false);
 		}
 
-		throw new NotFoundException("Unresolvable URL: " + request.getUrl());
+		throw new NotFoundException(NOT_FOUND_MESSAGE, false);
 	}
 }
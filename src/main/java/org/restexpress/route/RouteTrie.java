@@ -0,0 +1,501 @@
+/*
+    Copyright 2016, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package org.restexpress.route;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.restexpress.route.parameterized.ParameterizedRoute;
+import org.restexpress.url.UrlMatch;
+import org.restexpress.url.UrlPattern;
+
+/**
+ * A segment trie over the URL patterns of the routes for one HTTP method. Literal
+ * segments, '{param}' segments and a trailing '.{format}' (the same syntax
+ * UrlPattern compiles into a regex) are resolved by walking the path segment by
+ * segment instead of matching every route's regex in turn.
+ * <p/>
+ * Routes whose pattern can't be expressed as whole-segment literals/parameters
+ * (e.g. RegexRoute, or '/user-{id}') are kept in registration order and matched
+ * by their regex. The result is always the route that a linear scan in
+ * registration order would have returned: every pattern carries its registration
+ * order and the lowest order wins.
+ *
+ * @author hanst
+ * @since Oct 18, 2016
+ */
+public class RouteTrie
+{
+	private static final String FORMAT_SUFFIX = ".{format}";
+	private static final String FORMAT_NAME = "format";
+
+	// SECTION: INSTANCE VARIABLES
+
+	private Node root = new Node();
+	private List<Route> regexRoutes = new ArrayList<Route>();
+	private List<Long> regexOrders = new ArrayList<Long>();
+	private int maxDepth = 0;
+	private long routeCount = 0;
+
+
+	// SECTION: BUILDING
+
+	/**
+	 * Add a route to the trie. Routes must be added in registration order.
+	 *
+	 * @param route
+	 */
+	public void add(Route route)
+	{
+		long order = (routeCount++) << 16;
+
+		if (route instanceof ParameterizedRoute)
+		{
+			ParameterizedRoute pr = (ParameterizedRoute) route;
+			List<Leaf> leaves = new ArrayList<Leaf>();
+			UrlPattern[] aliases = pr.getAliases();
+			boolean compiled = addPattern(pr.getUrlPattern(), route, order, leaves);
+
+			for (int i = 0; compiled && i < aliases.length; i++)
+			{
+				compiled = addPattern(aliases[i], route, order + i + 1, leaves);
+			}
+
+			if (compiled)
+			{
+				for (Leaf leaf : leaves)
+				{
+					leaf.attach();
+				}
+
+				return;
+			}
+		}
+
+		regexRoutes.add(route);
+		regexOrders.add(order);
+	}
+
+	/**
+	 * Compile a single URL pattern into a (not yet attached) leaf.
+	 *
+	 * @return false if the pattern can't be represented by the trie.
+	 */
+	private boolean addPattern(UrlPattern pattern, Route route, long order, List<Leaf> leaves)
+	{
+		String uri = pattern.getUrlPattern();
+
+		if (uri == null || !uri.startsWith("/")) return false;
+
+		boolean hasFormat = uri.endsWith(FORMAT_SUFFIX);
+
+		if (hasFormat)
+		{
+			uri = uri.substring(0, uri.length() - FORMAT_SUFFIX.length());
+		}
+
+		String[] segments = uri.substring(1).split("/", -1);
+		String[] paramNames = new String[segments.length];
+		List<Node> path = new ArrayList<Node>(segments.length + 1);
+		Node node = root;
+		path.add(node);
+
+		for (int i = 0; i < segments.length; i++)
+		{
+			String segment = segments[i];
+
+			if (isParameter(segment))
+			{
+				paramNames[i] = segment.substring(1, segment.length() - 1);
+				node = node.paramChild(true);
+			}
+			else if (isLiteral(segment))
+			{
+				node = node.literalChild(segment, true);
+			}
+			else
+			{
+				return false;
+			}
+
+			path.add(node);
+		}
+
+		leaves.add(new Leaf(route, order, paramNames, hasFormat, path));
+		return true;
+	}
+
+
+	// SECTION: MATCHING
+
+	/**
+	 * Resolve the path (with or without query string) to an Action.
+	 *
+	 * @param path the path portion of the url.
+	 * @return a new Action or null, if no route matches.
+	 */
+	public Action match(String path)
+	{
+		Search search = null;
+
+		if (path.length() > 0 && path.charAt(0) == '/' && root.minOrder != Long.MAX_VALUE)
+		{
+			int end = path.indexOf('?');
+			search = new Search(path, (end < 0 ? path.length() : end), maxDepth);
+			search.walk(root, 1, 0);
+		}
+
+		long bestOrder = (search == null || search.best == null ? Long.MAX_VALUE : search.best.order);
+
+		for (int i = 0; i < regexRoutes.size(); i++)
+		{
+			if (regexOrders.get(i) > bestOrder) break;
+
+			UrlMatch match = regexRoutes.get(i).match(path);
+
+			if (match != null)
+			{
+				return new Action(regexRoutes.get(i), match);
+			}
+		}
+
+		if (search == null || search.best == null) return null;
+
+		return new Action(search.best.route, search.toUrlMatch());
+	}
+
+
+	// SECTION: UTILITY - PRIVATE
+
+	private static boolean isParameter(String segment)
+	{
+		if (segment.length() < 3 || segment.charAt(0) != '{' || segment.charAt(segment.length() - 1) != '}') return false;
+
+		for (int i = 1; i < segment.length() - 1; i++)
+		{
+			if (!isWordChar(segment.charAt(i))) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Literal segments are compared for equality, so they must not contain anything
+	 * that means something else inside the regex UrlPattern would have built.
+	 */
+	private static boolean isLiteral(String segment)
+	{
+		for (int i = 0; i < segment.length(); i++)
+		{
+			char c = segment.charAt(i);
+
+			if (!(isWordChar(c) || c == '-' || c == '~' || c == '%' || c == '!' || c == '\'' || c == ','
+				|| c == ';' || c == '=' || c == ':' || c == '@' || c == '&'))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isWordChar(char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	/**
+	 * Characters accepted in a '{param}' value by UrlPattern.
+	 */
+	private static boolean isParameterChar(char c)
+	{
+		switch (c)
+		{
+			case '%': case '-': case '.': case '~': case '!': case '$': case '&': case '\'':
+			case '(': case ')': case '*': case '+': case ',': case ';': case '=': case ':':
+			case '[': case ']': case '@':
+				return true;
+			default:
+				return isWordChar(c);
+		}
+	}
+
+	/**
+	 * Characters accepted in a '.{format}' value by UrlPattern.
+	 */
+	private static boolean isFormatChar(char c)
+	{
+		return isWordChar(c) || c == '%';
+	}
+
+	private static boolean isParameterValue(String s, int start, int end)
+	{
+		if (start >= end) return false;
+
+		for (int i = start; i < end; i++)
+		{
+			if (!isParameterChar(s.charAt(i))) return false;
+		}
+
+		return true;
+	}
+
+	private static boolean isFormatValue(String s, int start, int end)
+	{
+		if (start >= end) return false;
+
+		for (int i = start; i < end; i++)
+		{
+			if (!isFormatChar(s.charAt(i))) return false;
+		}
+
+		return true;
+	}
+
+
+	// SECTION: INNER CLASSES
+
+	private static class Node
+	{
+		Map<String, Node> literals;
+		Node param;
+		List<Leaf> leaves;
+		long minOrder = Long.MAX_VALUE;
+
+		Node literalChild(String segment, boolean create)
+		{
+			if (literals == null)
+			{
+				if (!create) return null;
+
+				literals = new HashMap<String, Node>();
+			}
+
+			Node child = literals.get(segment);
+
+			if (child == null && create)
+			{
+				child = new Node();
+				literals.put(segment, child);
+			}
+
+			return child;
+		}
+
+		Node paramChild(boolean create)
+		{
+			if (param == null && create)
+			{
+				param = new Node();
+			}
+
+			return param;
+		}
+	}
+
+	private class Leaf
+	{
+		final Route route;
+		final long order;
+		final String[] paramNames;
+		final boolean hasFormat;
+		final List<Node> path;
+
+		Leaf(Route route, long order, String[] paramNames, boolean hasFormat, List<Node> path)
+		{
+			this.route = route;
+			this.order = order;
+			this.paramNames = paramNames;
+			this.hasFormat = hasFormat;
+			this.path = path;
+		}
+
+		void attach()
+		{
+			Node last = path.get(path.size() - 1);
+
+			if (last.leaves == null)
+			{
+				last.leaves = new ArrayList<Leaf>(1);
+			}
+
+			last.leaves.add(this);
+
+			for (Node node : path)
+			{
+				node.minOrder = Math.min(node.minOrder, order);
+			}
+
+			maxDepth = Math.max(maxDepth, paramNames.length);
+		}
+	}
+
+	/**
+	 * Per-call matching state. Depth-first, literal before parameter, pruning any
+	 * sub-trie that can't beat the best (lowest order) leaf found so far.
+	 */
+	private static class Search
+	{
+		final String path;
+		final int end;
+		final int[] starts;
+		final int[] ends;
+		Leaf best;
+		int[] bestStarts;
+		int[] bestEnds;
+		int bestFormatStart = -1;
+
+		Search(String path, int end, int depth)
+		{
+			this.path = path;
+			this.end = end;
+			this.starts = new int[depth];
+			this.ends = new int[depth];
+		}
+
+		void walk(Node node, int pos, int depth)
+		{
+			if (depth >= starts.length) return;
+
+			int slash = path.indexOf('/', pos);
+			boolean last = (slash < 0 || slash >= end);
+			int segEnd = (last ? end : slash);
+			starts[depth] = pos;
+			ends[depth] = segEnd;
+
+			Node literal = node.literalChild(path.substring(pos, segEnd), false);
+
+			if (literal != null && isCandidate(literal))
+			{
+				if (last)
+				{
+					offer(literal, depth, -1, false);
+				}
+				else
+				{
+					walk(literal, segEnd + 1, depth + 1);
+				}
+			}
+
+			if (last)
+			{
+				// '/literal.{format}'
+				int dot = path.indexOf('.', pos);
+
+				if (dot > pos && dot < segEnd && isFormatValue(path, dot + 1, segEnd))
+				{
+					Node prefix = node.literalChild(path.substring(pos, dot), false);
+
+					if (prefix != null && isCandidate(prefix))
+					{
+						offer(prefix, depth, dot + 1, true);
+					}
+				}
+			}
+
+			Node param = node.param;
+
+			if (param != null && isCandidate(param))
+			{
+				if (last)
+				{
+					offerParameter(param, depth, pos, segEnd);
+				}
+				else if (isParameterValue(path, pos, segEnd))
+				{
+					walk(param, segEnd + 1, depth + 1);
+				}
+			}
+		}
+
+		private void offerParameter(Node node, int depth, int pos, int segEnd)
+		{
+			if (node.leaves == null) return;
+
+			int dot = path.lastIndexOf('.', segEnd - 1);
+			boolean canSplit = (dot > pos && isFormatValue(path, dot + 1, segEnd) && isParameterValue(path, pos, dot));
+
+			for (Leaf leaf : node.leaves)
+			{
+				if (best != null && leaf.order >= best.order) continue;
+
+				if (leaf.hasFormat && canSplit)
+				{
+					ends[depth] = dot;
+					accept(leaf, depth, dot + 1);
+				}
+				else if (isParameterValue(path, pos, segEnd))
+				{
+					ends[depth] = segEnd;
+					accept(leaf, depth, -1);
+				}
+			}
+
+			ends[depth] = segEnd;
+		}
+
+		private void offer(Node node, int depth, int formatStart, boolean formatOnly)
+		{
+			if (node.leaves == null) return;
+
+			for (Leaf leaf : node.leaves)
+			{
+				if (best != null && leaf.order >= best.order) continue;
+				if (formatOnly && !leaf.hasFormat) continue;
+
+				accept(leaf, depth, formatStart);
+			}
+		}
+
+		private void accept(Leaf leaf, int depth, int formatStart)
+		{
+			if (leaf.paramNames.length != depth + 1) return;
+
+			best = leaf;
+			bestStarts = starts.clone();
+			bestEnds = ends.clone();
+			bestFormatStart = formatStart;
+		}
+
+		private boolean isCandidate(Node node)
+		{
+			return (best == null || node.minOrder < best.order);
+		}
+
+		UrlMatch toUrlMatch()
+		{
+			Map<String, String> values = new HashMap<String, String>();
+			String[] names = best.paramNames;
+
+			for (int i = 0; i < names.length; i++)
+			{
+				if (names[i] != null)
+				{
+					values.put(names[i], path.substring(bestStarts[i], bestEnds[i]));
+				}
+			}
+
+			if (bestFormatStart >= 0)
+			{
+				values.put(FORMAT_NAME, path.substring(bestFormatStart, end));
+			}
+
+			return new UrlMatch(values);
+		}
+	}
+}
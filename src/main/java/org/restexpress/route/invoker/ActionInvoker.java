@@ -0,0 +1,11 @@
+package org.restexpress.route.invoker;
+
+/**
+ * 调用controller里的action方法,和Method.invoke一样,参数类型不对抛出IllegalArgumentException,
+ * action抛出的异常包装成InvocationTargetException
+ * @author hanst
+ *
+ */
+public interface ActionInvoker {
+	Object invoke(Object controller, Object[] args) throws Exception;
+}
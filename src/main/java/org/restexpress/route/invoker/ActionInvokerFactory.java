@@ -0,0 +1,209 @@
+package org.restexpress.route.invoker;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.restexpress.RestExpress;
+import org.restexpress.util.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 为每个action方法创建ActionInvoker。默认用javassist给每个action生成一个小类，直接调用controller的方法，
+ * 省掉Method.invoke的参数检查和本地调用;生成失败(controller类不是public,内部类等)时回退到反射调用。
+ * <p/>
+ * netty.properties里配置actionInvoker=reflect可以关闭字节码生成
+ * @author hanst
+ *
+ */
+public final class ActionInvokerFactory {
+	private static final Logger logger = LoggerFactory.getLogger(ActionInvokerFactory.class);
+
+	public static final String MODE_JAVASSIST = "javassist";
+	public static final String MODE_REFLECT = "reflect";
+
+	private static final String GENERATED_PREFIX = ActionInvoker.class.getPackage().getName() + ".generated.";
+	private static final AtomicInteger sequence = new AtomicInteger();
+	//Route在asMetadata的时候也会被构建，同一个方法只生成一次
+	private static final ConcurrentMap<Method, ActionInvoker> invokers = new ConcurrentHashMap<Method, ActionInvoker>();
+
+	private ActionInvokerFactory() {}
+
+	public static ActionInvoker getInvoker(Method action) {
+		ActionInvoker invoker = invokers.get(action);
+		if (invoker == null) {
+			invoker = create(action);
+			ActionInvoker exists = invokers.putIfAbsent(action, invoker);
+			if (exists != null)
+				invoker = exists;
+		}
+		return invoker;
+	}
+
+	private static ActionInvoker create(Method action) {
+		Configuration config = RestExpress.getConfig();
+		if (config != null && MODE_REFLECT.equals(config.getActionInvoker()))
+			return new ReflectionActionInvoker(action);
+		try {
+			return generate(action);
+		} catch (Throwable e) {
+			logger.warn("generate invoker for " + action + " failed, use reflection: " + e);
+			return new ReflectionActionInvoker(action);
+		}
+	}
+
+	/**
+	 * 生成的invoke方法和Method.invoke的语义保持一致:基本类型参数拆箱,返回值装箱,void返回null,
+	 * controller或参数的类型不对(包括基本类型参数为null,参数个数不对)抛出IllegalArgumentException,
+	 * action抛出的异常包装成InvocationTargetException。转换参数和调用action分成两个try,
+	 * action里抛出的ClassCastException不会被当成参数错误
+	 */
+	private static ActionInvoker generate(Method action) throws Exception {
+		Class<?> target = accessibleOwner(action);
+		if (target == null)
+			throw new IllegalStateException("no public owner class");
+		Class<?>[] params = action.getParameterTypes();
+		for (Class<?> p : params)
+			if (!isNameable(p))
+				throw new IllegalStateException("parameter type " + p.getName() + " is not accessible");
+
+		StringBuilder body = new StringBuilder();
+		body.append("public Object invoke(Object controller, Object[] args) throws Exception {");
+		body.append(target.getName()).append(" c = null;");
+		for (int i = 0; i < params.length; i++)
+			body.append(typeName(params[i])).append(" a").append(i).append(" = ").append(defaultValue(params[i])).append(';');
+
+		body.append("try{");
+		body.append("if($2==null?").append(params.length).append("!=0:$2.length!=").append(params.length)
+				.append(")throw new java.lang.IllegalArgumentException(\"wrong number of arguments\");");
+		body.append("c=(").append(target.getName()).append(")$1;");
+		for (int i = 0; i < params.length; i++)
+			body.append('a').append(i).append('=').append(unbox(params[i], "$2[" + i + "]")).append(';');
+		body.append("}catch(java.lang.ClassCastException e){throw new java.lang.IllegalArgumentException(\"argument type mismatch\", e);}");
+		body.append("catch(java.lang.NullPointerException e){throw new java.lang.IllegalArgumentException(e);}");
+
+		StringBuilder call = new StringBuilder();
+		call.append("c.").append(action.getName()).append('(');
+		for (int i = 0; i < params.length; i++) {
+			if (i > 0)
+				call.append(',');
+			call.append('a').append(i);
+		}
+		call.append(')');
+
+		body.append("try{");
+		Class<?> ret = action.getReturnType();
+		if (ret == void.class)
+			body.append(call).append(";return null;");
+		else
+			body.append("return ").append(box(ret, call.toString())).append(';');
+		body.append("}catch(java.lang.Throwable t){throw new java.lang.reflect.InvocationTargetException(t);}}");
+
+		ClassLoader loader = target.getClassLoader();
+		if (loader == null)
+			loader = ActionInvokerFactory.class.getClassLoader();
+		ClassPool pool = new ClassPool(true);
+		pool.appendClassPath(new LoaderClassPath(loader));
+		pool.appendClassPath(new LoaderClassPath(ActionInvokerFactory.class.getClassLoader()));
+
+		CtClass cc = pool.makeClass(GENERATED_PREFIX + target.getSimpleName() + "$" + action.getName() + "$" + sequence.incrementAndGet());
+		try {
+			cc.addInterface(pool.get(ActionInvoker.class.getName()));
+			cc.addConstructor(CtNewConstructor.defaultConstructor(cc));
+			cc.addMethod(CtNewMethod.make(body.toString(), cc));
+			Class<?> cls = cc.toClass(loader, target.getProtectionDomain());
+			return (ActionInvoker) cls.newInstance();
+		} finally {
+			cc.detach();
+		}
+	}
+
+	/**
+	 * 找到可以在生成的代码里直接引用并调用该方法的类。spring的cglib代理类名字带$,
+	 * 这时往父类找声明了同样public方法的类,虚方法调用仍然会走到代理的实现上
+	 */
+	private static Class<?> accessibleOwner(Method action) {
+		if (!Modifier.isPublic(action.getModifiers()) || Modifier.isStatic(action.getModifiers()))
+			return null;
+		for (Class<?> cls = action.getDeclaringClass(); cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+			if (!isNameable(cls))
+				continue;
+			try {
+				Method m = cls.getMethod(action.getName(), action.getParameterTypes());
+				if (m.getReturnType() == action.getReturnType())
+					return cls;
+			} catch (NoSuchMethodException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isNameable(Class<?> cls) {
+		while (cls.isArray())
+			cls = cls.getComponentType();
+		if (cls.isPrimitive())
+			return true;
+		return Modifier.isPublic(cls.getModifiers()) && cls.getName().indexOf('$') < 0;
+	}
+
+	private static String typeName(Class<?> cls) {
+		if (cls.isArray())
+			return typeName(cls.getComponentType()) + "[]";
+		return cls.getName();
+	}
+
+	private static String unbox(Class<?> type, String expr) {
+		if (!type.isPrimitive())
+			return "(" + typeName(type) + ")" + expr;
+		String wrapper = wrapperOf(type).getName();
+		return "((" + wrapper + ")" + expr + ")." + type.getName() + "Value()";
+	}
+
+	private static String defaultValue(Class<?> type) {
+		if (!type.isPrimitive())
+			return "null";
+		if (type == boolean.class)
+			return "false";
+		if (type == long.class)
+			return "0L";
+		if (type == float.class)
+			return "0.0F";
+		if (type == double.class)
+			return "0.0D";
+		return "(" + type.getName() + ")0";
+	}
+
+	private static String box(Class<?> type, String expr) {
+		if (!type.isPrimitive())
+			return expr;
+		return wrapperOf(type).getName() + ".valueOf(" + expr + ")";
+	}
+
+	private static Class<?> wrapperOf(Class<?> type) {
+		if (type == int.class)
+			return Integer.class;
+		if (type == long.class)
+			return Long.class;
+		if (type == boolean.class)
+			return Boolean.class;
+		if (type == double.class)
+			return Double.class;
+		if (type == float.class)
+			return Float.class;
+		if (type == short.class)
+			return Short.class;
+		if (type == byte.class)
+			return Byte.class;
+		return Character.class;
+	}
+}
@@ -0,0 +1,22 @@
+package org.restexpress.route.invoker;
+
+import java.lang.reflect.Method;
+
+/**
+ * 通过反射调用action,生成字节码失败时的默认实现
+ * @author hanst
+ *
+ */
+public class ReflectionActionInvoker implements ActionInvoker {
+	private final Method action;
+
+	public ReflectionActionInvoker(Method action) {
+		this.action = action;
+		this.action.setAccessible(true);
+	}
+
+	@Override
+	public Object invoke(Object controller, Object[] args) throws Exception {
+		return action.invoke(controller, args);
+	}
+}
@@ -76,6 +76,22 @@ extends Route
     	}
     }
 
+    /**
+     * @return the primary URL pattern of this route.
+     */
+    public UrlPattern getUrlPattern()
+    {
+    	return (UrlPattern) getUrlMatcher();
+    }
+
+    /**
+     * @return the alias URL patterns of this route. Never null.
+     */
+    public UrlPattern[] getAliases()
+    {
+    	return (aliases == null ? new UrlPattern[0] : aliases);
+    }
+
     @Override
     public UrlMatch match(String url)
     {
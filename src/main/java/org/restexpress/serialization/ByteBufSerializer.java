@@ -0,0 +1,21 @@
+package org.restexpress.serialization;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Optional capability of a Serializer: write the serialized form straight into a
+ * (pooled) ByteBuf instead of producing a heap ByteBuffer that must be copied
+ * into the response.
+ * 
+ * @author hanst
+ */
+public interface ByteBufSerializer
+{
+	/**
+	 * Serialize the object, appending the bytes to the buffer's writer index.
+	 * 
+	 * @param object the object to serialize. May be null.
+	 * @param out the buffer to write into.
+	 */
+	public void serialize(Object object, ByteBuf out);
+}
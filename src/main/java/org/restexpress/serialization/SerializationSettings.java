@@ -17,6 +17,8 @@ package org.restexpress.serialization;
 
 import java.nio.ByteBuffer;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.handler.codec.http.HttpHeaders;
 import org.restexpress.Request;
 import org.restexpress.Response;
@@ -65,4 +67,21 @@ public class SerializationSettings
 
 		return processor.serialize(response);
     }
+
+	/**
+	 * Serialize the response into a ByteBuf obtained from the allocator.
+	 * 
+	 * @param response
+	 * @param allocator
+	 * @return a ByteBuf owned by the caller, or null.
+	 */
+	public ByteBuf serialize(Response response, ByteBufAllocator allocator)
+	{
+		if (!response.hasHeader(HttpHeaders.Names.CONTENT_TYPE))
+		{
+			response.setContentType(mediaType);
+		}
+
+		return processor.serialize(response, allocator);
+	}
 }
@@ -0,0 +1,23 @@
+package org.restexpress.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Optional capability of a Serializer: hand out a streaming generator that writes
+ * values the same way serialize() does, so a large collection can be written one
+ * element at a time (see StreamingCollection).
+ * 
+ * @author hanst
+ */
+public interface StreamingSerializer
+{
+	/**
+	 * @param out where the generator writes its output.
+	 * @return a new generator; the caller closes it.
+	 * @throws IOException
+	 */
+	public JsonGenerator createGenerator(OutputStream out) throws IOException;
+}
@@ -17,14 +17,20 @@
 
 package org.restexpress.serialization.json;
 
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.util.Date;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import org.restexpress.ContentType;
 import org.restexpress.common.util.StringUtils;
+import org.restexpress.serialization.ByteBufSerializer;
+import org.restexpress.serialization.SerializationException;
 
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
@@ -45,6 +51,7 @@ import com.strategicgains.util.date.DateAdapterConstants;
  */
 public class GsonJsonProcessor
 extends JsonSerializationProcessor
+implements ByteBufSerializer
 {
 	private static final byte[] EMPTY_STRING_BYTES = StringUtils.EMPTY_STRING.getBytes(ContentType.CHARSET);
 
@@ -107,4 +114,23 @@ extends JsonSerializationProcessor
 //		return ByteBuffer.wrap(b.toByteArray());
 		return ByteBuffer.wrap(gson.toJson(object).getBytes(ContentType.CHARSET));
 	}
+
+	@Override
+	public void serialize(Object object, ByteBuf out)
+	{
+		if (object == null) return;
+
+		// The writer buffers internally, so it must be flushed (the commented-out stream version above wasn't).
+		Writer writer = new OutputStreamWriter(new ByteBufOutputStream(out), ContentType.CHARSET);
+
+		try
+		{
+			gson.toJson(object, writer);
+			writer.flush();
+		}
+		catch (IOException e)
+		{
+			throw new SerializationException(e);
+		}
+	}
 }
@@ -20,21 +20,26 @@ package org.restexpress.serialization.json;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import org.restexpress.ContentType;
 import org.restexpress.Format;
 import org.restexpress.common.util.StringUtils;
+import org.restexpress.serialization.ByteBufSerializer;
 import org.restexpress.serialization.DeserializationException;
 import org.restexpress.serialization.SerializationException;
+import org.restexpress.serialization.StreamingSerializer;
+import org.restexpress.util.ConcurrentDateFormat;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -57,6 +62,7 @@ import com.strategicgains.util.date.DateAdapterConstants;
  */
 public class JacksonJsonProcessor
 extends JsonSerializationProcessor
+implements ByteBufSerializer, StreamingSerializer
 {
 	private static final byte[] EMPTY_STRING_BYTES = StringUtils.EMPTY_STRING.getBytes(ContentType.CHARSET);
 	private ObjectMapper mapper;
@@ -152,7 +158,7 @@ extends JsonSerializationProcessor
 			
 			// Set default date output format.
 //			.setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
-			.setDateFormat(new SimpleDateFormat(DateAdapterConstants.TIME_POINT_OUTPUT_FORMAT));
+			.setDateFormat(new ConcurrentDateFormat(DateAdapterConstants.TIME_POINT_OUTPUT_FORMAT));
     }
 
 	@Override
@@ -210,4 +216,26 @@ extends JsonSerializationProcessor
 			throw new SerializationException(e);
 		}
 	}
+
+	@Override
+	public void serialize(Object object, ByteBuf out)
+	{
+		if (object == null) return;
+
+		try
+		{
+			mapper.writeValue(new ByteBufOutputStream(out), object);
+		}
+		catch (IOException e)
+		{
+			throw new SerializationException(e);
+		}
+	}
+
+	@Override
+	public JsonGenerator createGenerator(OutputStream out)
+	throws IOException
+	{
+		return mapper.getFactory().createGenerator(out);
+	}
 }
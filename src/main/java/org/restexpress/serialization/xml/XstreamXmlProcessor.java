@@ -25,10 +25,12 @@ import java.util.Map;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import org.restexpress.ContentType;
 import org.restexpress.Format;
 import org.restexpress.common.util.StringUtils;
 import org.restexpress.domain.JsendResultWrapper;
+import org.restexpress.serialization.ByteBufSerializer;
 
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.SingleValueConverter;
@@ -42,6 +44,7 @@ import com.thoughtworks.xstream.converters.SingleValueConverter;
  */
 public class XstreamXmlProcessor
 extends XmlSerializationProcessor
+implements ByteBufSerializer
 {
 	private static final byte[] EMPTY_STRING_BYTES = StringUtils.EMPTY_STRING.getBytes(ContentType.CHARSET);
 
@@ -104,6 +107,14 @@ extends XmlSerializationProcessor
 		return ByteBuffer.wrap(b.toByteArray());
 	}
 
+	@Override
+	public void serialize(Object object, ByteBuf out)
+	{
+		if (object == null) return;
+
+		xstream.toXML(object, new ByteBufOutputStream(out));
+	}
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T> T deserialize(String xml, Class<T> type)
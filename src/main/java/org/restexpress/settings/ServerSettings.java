@@ -40,6 +40,10 @@ public class ServerSettings
 	
 	private int ioSubThreadCount = DEFAULT_IO_THREAD_COUNT;
 
+	// Number of listening channels bound with SO_REUSEPORT (epoll only),
+	// each accepting on its own boss event loop.
+	private int acceptorCount = 1;
+
 	// This controls the size of the thread pool for back-end executors.  In essence,
 	// this is the number of blocking requests the application can process simultaneously.
 	private int executorThreadPoolSize = DEFAULT_EXECUTOR_THREAD_POOL_SIZE;
@@ -144,4 +148,12 @@ public class ServerSettings
 	public void setIoSubThreadCount(int ioSubThreadCount) {
 		this.ioSubThreadCount = ioSubThreadCount;
 	}
+
+	public int getAcceptorCount() {
+		return acceptorCount;
+	}
+
+	public void setAcceptorCount(int acceptorCount) {
+		this.acceptorCount = acceptorCount;
+	}
 }
@@ -0,0 +1,205 @@
+package org.restexpress.url;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * application/x-www-form-urlencoded请求体的解析:直接在ByteBuf上扫描一遍,记录每个参数名和值的位置,
+ * 不先转成String,取值时才做百分号解码(按utf-8,'+'为空格),没有用到的参数不解码。
+ * 同名参数都保留,可以用getAll取出全部的值。
+ * <p/>
+ * 和QueryStringDecoder一样'&'和';'都是分隔符,最多maxParams个参数;不合法的%xx原样保留,不抛异常。
+ * 只读取ByteBuf的readerIndex到writerIndex,不改变索引,ByteBuf释放后不能再使用
+ * @author hanst
+ *
+ */
+public class FormParameters {
+	private static final int DEFAULT_MAX_PARAMS = 1024;
+	private static final int[] NONE = new int[0];
+
+	private final ByteBuf body;
+	//每个参数3个int:名字开始,名字结束,值结束(值从名字结束+1开始,没有'='时和名字结束相同)
+	private final int[] bounds;
+	private final int count;
+
+	public FormParameters(ByteBuf body) {
+		this(body, DEFAULT_MAX_PARAMS);
+	}
+
+	public FormParameters(ByteBuf body, int maxParams) {
+		this.body = body;
+		int pos = body.readerIndex();
+		int limit = body.writerIndex();
+		if (pos >= limit) {
+			bounds = NONE;
+			count = 0;
+			return;
+		}
+		int[] b = new int[24];
+		int n = 0;
+		while (pos <= limit && n < maxParams) {
+			int end = pos;
+			int eq = -1;
+			while (end < limit) {
+				byte c = body.getByte(end);
+				if (c == '&' || c == ';')
+					break;
+				if (c == '=' && eq < 0)
+					eq = end;
+				end++;
+			}
+			//跳过"&&"和"=x"这样没有名字的参数
+			if (end > pos && eq != pos) {
+				if (b.length < (n + 1) * 3) {
+					int[] grown = new int[b.length * 2];
+					System.arraycopy(b, 0, grown, 0, b.length);
+					b = grown;
+				}
+				b[n * 3] = pos;
+				b[n * 3 + 1] = (eq < 0 ? end : eq);
+				b[n * 3 + 2] = end;
+				n++;
+			}
+			pos = end + 1;
+		}
+		bounds = b;
+		count = n;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	public String getName(int index) {
+		return decode(bounds[index * 3], bounds[index * 3 + 1]);
+	}
+
+	/**
+	 * @return 解码后的值,没有'='的参数为空串
+	 */
+	public String getValue(int index) {
+		int nameEnd = bounds[index * 3 + 1];
+		int end = bounds[index * 3 + 2];
+		return nameEnd == end ? "" : decode(nameEnd + 1, end);
+	}
+
+	/**
+	 * @return 第一个同名参数的序号,没有时为-1
+	 */
+	public int indexOf(String name) {
+		for (int i = 0; i < count; i++)
+			if (nameEquals(i, name))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * @return 第一个同名参数的值,没有时为null
+	 */
+	public String get(String name) {
+		int index = indexOf(name);
+		return index < 0 ? null : getValue(index);
+	}
+
+	/**
+	 * @return 所有同名参数的值,按出现的顺序
+	 */
+	public List<String> getAll(String name) {
+		List<String> values = null;
+		for (int i = 0; i < count; i++) {
+			if (nameEquals(i, name)) {
+				if (values == null)
+					values = new ArrayList<String>(1);
+				values.add(getValue(i));
+			}
+		}
+		return values == null ? Collections.<String>emptyList() : values;
+	}
+
+	/**
+	 * @return 全部参数解码后的值,和QueryStringDecoder.parameters()的内容一致
+	 */
+	public Map<String, List<String>> toMap() {
+		Map<String, List<String>> map = new LinkedHashMap<String, List<String>>(count * 2);
+		for (int i = 0; i < count; i++) {
+			String name = getName(i);
+			List<String> values = map.get(name);
+			if (values == null) {
+				values = new ArrayList<String>(1);
+				map.put(name, values);
+			}
+			values.add(getValue(i));
+		}
+		return map;
+	}
+
+	/**
+	 * 不解码直接比较:名字里没有'%'和'+'时逐个字节和ascii字符比较,否则解码后再比较
+	 */
+	private boolean nameEquals(int index, String name) {
+		int start = bounds[index * 3];
+		int end = bounds[index * 3 + 1];
+		int length = name.length();
+		for (int i = 0; i < length; i++) {
+			char c = name.charAt(i);
+			if (start + i >= end)
+				return false;
+			byte b = body.getByte(start + i);
+			if (c >= 0x80 || b == '%' || b == '+')
+				return name.equals(decode(start, end));
+			if (b != c)
+				return false;
+		}
+		//前面的部分都没有编码,剩下的字节解码后至少还有一个字符
+		return start + length == end;
+	}
+
+	private String decode(int start, int end) {
+		int length = end - start;
+		boolean plain = true;
+		for (int i = start; i < end; i++) {
+			byte c = body.getByte(i);
+			if (c == '%' || c == '+') {
+				plain = false;
+				break;
+			}
+		}
+		if (plain)
+			return body.toString(start, length, CharsetUtil.UTF_8);
+
+		byte[] bytes = new byte[length];
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			byte c = body.getByte(i);
+			if (c == '+') {
+				bytes[n++] = ' ';
+			} else if (c == '%' && i + 2 < end && hex(body.getByte(i + 1)) >= 0 && hex(body.getByte(i + 2)) >= 0) {
+				bytes[n++] = (byte) (hex(body.getByte(i + 1)) << 4 | hex(body.getByte(i + 2)));
+				i += 2;
+			} else {
+				bytes[n++] = c;
+			}
+		}
+		return new String(bytes, 0, n, CharsetUtil.UTF_8);
+	}
+
+	private static int hex(byte c) {
+		if (c >= '0' && c <= '9')
+			return c - '0';
+		if (c >= 'a' && c <= 'f')
+			return c - 'a' + 10;
+		if (c >= 'A' && c <= 'F')
+			return c - 'A' + 10;
+		return -1;
+	}
+}
@@ -0,0 +1,187 @@
+package org.restexpress.url;
+
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.restexpress.ContentType;
+
+/**
+ * uri查询参数的轻量视图:创建时只扫描一遍uri,记录每个参数名和值在uri里的位置(一个int数组),
+ * 不创建子串和Map,取参数时才截取和解码。和QueryStringParser的规则一致:';'和'&'都是分隔符,
+ * 参数名不解码,没有'='的参数值为空串,最多maxParams个参数
+ * @author hanst
+ *
+ */
+public class QueryParameters {
+	private static final int DEFAULT_MAX_PARAMS = 1024;
+	private static final int[] NONE = new int[0];
+
+	private final String uri;
+	//每个参数3个int:名字开始,名字结束,值结束(值从名字结束+1开始,没有'='时和名字结束相同)
+	private final int[] bounds;
+	private final int count;
+
+	public QueryParameters(String uri) {
+		this(uri, DEFAULT_MAX_PARAMS);
+	}
+
+	/**
+	 * @param uri 完整的uri(带path),只解析'?'后面的部分
+	 * @param maxParams
+	 */
+	public QueryParameters(String uri, int maxParams) {
+		this.uri = uri;
+		int start = uri.indexOf('?');
+		if (start < 0 || start == uri.length() - 1) {
+			bounds = NONE;
+			count = 0;
+			return;
+		}
+		int[] b = new int[12];
+		int n = 0;
+		int pos = start + 1;
+		int length = uri.length();
+		while (pos <= length && n < maxParams) {
+			int end = pos;
+			int eq = -1;
+			while (end < length) {
+				char c = uri.charAt(end);
+				if (c == '&' || c == ';')
+					break;
+				if (c == '=' && eq < 0)
+					eq = end;
+				end++;
+			}
+			//跳过"&&"和"=x"这样没有名字的参数
+			if (end > pos && eq != pos) {
+				if (b.length < (n + 1) * 3) {
+					int[] grown = new int[b.length * 2];
+					System.arraycopy(b, 0, grown, 0, b.length);
+					b = grown;
+				}
+				b[n * 3] = pos;
+				b[n * 3 + 1] = (eq < 0 ? end : eq);
+				b[n * 3 + 2] = end;
+				n++;
+			}
+			pos = end + 1;
+		}
+		bounds = b;
+		count = n;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	public String getName(int index) {
+		return uri.substring(bounds[index * 3], bounds[index * 3 + 1]);
+	}
+
+	/**
+	 * @return 没有解码的值
+	 */
+	public String getRawValue(int index) {
+		int nameEnd = bounds[index * 3 + 1];
+		int end = bounds[index * 3 + 2];
+		return nameEnd == end ? "" : uri.substring(nameEnd + 1, end);
+	}
+
+	/**
+	 * @return url解码后的值(按utf-8,和以前加到header里的一致,解码失败时返回原值)
+	 */
+	public String getValue(int index) {
+		return decode(getRawValue(index));
+	}
+
+	/**
+	 * @return 第一个同名参数的序号,没有时为-1
+	 */
+	public int indexOf(String name) {
+		return indexOf(name, false);
+	}
+
+	/**
+	 * @param ignoreCase 按header的规则忽略大小写
+	 * @return 第一个同名参数的序号,没有时为-1
+	 */
+	public int indexOf(String name, boolean ignoreCase) {
+		for (int i = 0; i < count; i++)
+			if (nameEquals(i, name, ignoreCase))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * @return 第一个同名参数解码后的值,没有时为null
+	 */
+	public String get(String name) {
+		return get(name, false);
+	}
+
+	public String get(String name, boolean ignoreCase) {
+		int index = indexOf(name, ignoreCase);
+		return index < 0 ? null : getValue(index);
+	}
+
+	/**
+	 * @return 所有同名参数解码后的值
+	 */
+	public List<String> getAll(String name) {
+		List<String> values = null;
+		for (int i = 0; i < count; i++) {
+			if (nameEquals(i, name, false)) {
+				if (values == null)
+					values = new ArrayList<String>(1);
+				values.add(getValue(i));
+			}
+		}
+		return values == null ? Collections.<String>emptyList() : values;
+	}
+
+	public Set<String> names() {
+		Set<String> names = new LinkedHashSet<String>(count * 2);
+		for (int i = 0; i < count; i++)
+			names.add(getName(i));
+		return names;
+	}
+
+	/**
+	 * @return 每个参数名第一个没有解码的值(Request.getQueryStringMap()以前的内容)
+	 */
+	public Map<String, String> toFirstRawValueMap() {
+		Map<String, String> map = new LinkedHashMap<String, String>(count * 2);
+		for (int i = 0; i < count; i++) {
+			String name = getName(i);
+			if (!map.containsKey(name))
+				map.put(name, getRawValue(i));
+		}
+		return map;
+	}
+
+	private boolean nameEquals(int index, String name, boolean ignoreCase) {
+		int start = bounds[index * 3];
+		int length = name.length();
+		return bounds[index * 3 + 1] - start == length && uri.regionMatches(ignoreCase, start, name, 0, length);
+	}
+
+	private static String decode(String value) {
+		if (value.indexOf('%') < 0 && value.indexOf('+') < 0)
+			return value;
+		try {
+			return URLDecoder.decode(value, ContentType.ENCODING);
+		} catch (Exception e) {
+			return value;
+		}
+	}
+}
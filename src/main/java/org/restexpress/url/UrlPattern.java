@@ -120,9 +120,9 @@ implements UrlMatcher
 	// SECTION: ACCESSORS/MUTATORS - PRIVATE
 
 	/**
-     * @return the pattern
+     * @return the pattern as given, including any trailing '.{format}'.
      */
-    private String getUrlPattern()
+    public String getUrlPattern()
     {
     	return urlPattern;
     }
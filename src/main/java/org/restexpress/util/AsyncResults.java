@@ -0,0 +1,130 @@
+package org.restexpress.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutionException;
+
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+
+/**
+ * action返回的异步结果:spring的ListenableFuture,netty的Future,以及java8的CompletableFuture(CompletionStage)。
+ * 工程还是按java7编译,CompletionStage通过反射和动态代理支持,运行在java7上时没有这个类型
+ * @author hanst
+ *
+ */
+public final class AsyncResults {
+	private static final Class<?> COMPLETION_STAGE = load("java.util.concurrent.CompletionStage");
+	private static final Class<?> BI_CONSUMER = load("java.util.function.BiConsumer");
+	private static final Class<?> COMPLETION_EXCEPTION = load("java.util.concurrent.CompletionException");
+	private static final Method WHEN_COMPLETE = whenComplete();
+
+	/**
+	 * 异步结果完成后的回调,可能在任意线程里执行
+	 */
+	public interface Listener {
+		void onSuccess(Object value);
+
+		void onFailure(Throwable cause);
+	}
+
+	private AsyncResults() {}
+
+	public static boolean isAsync(Object result) {
+		if (result == null)
+			return false;
+		return result instanceof ListenableFuture || result instanceof Future
+				|| (WHEN_COMPLETE != null && COMPLETION_STAGE.isInstance(result));
+	}
+
+	/**
+	 * 注册完成的回调,已经完成的话在当前线程里立即回调
+	 * @param future isAsync为true的对象
+	 * @param listener
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static void addListener(Object future, final Listener listener) {
+		if (future instanceof ListenableFuture) {
+			((ListenableFuture<Object>) future).addCallback(new ListenableFutureCallback<Object>() {
+				@Override
+				public void onSuccess(Object value) {
+					listener.onSuccess(value);
+				}
+
+				@Override
+				public void onFailure(Throwable cause) {
+					listener.onFailure(unwrap(cause));
+				}
+			});
+		} else if (future instanceof Future) {
+			((Future) future).addListener(new GenericFutureListener<Future<Object>>() {
+				@Override
+				public void operationComplete(Future<Object> f) {
+					if (f.isSuccess())
+						listener.onSuccess(f.getNow());
+					else
+						listener.onFailure(unwrap(f.cause()));
+				}
+			});
+		} else if (WHEN_COMPLETE != null && COMPLETION_STAGE.isInstance(future)) {
+			Object consumer = Proxy.newProxyInstance(AsyncResults.class.getClassLoader(), new Class<?>[] { BI_CONSUMER },
+					new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) {
+							if (!"accept".equals(method.getName()))
+								return objectMethod(proxy, method, args);
+							if (args[1] != null)
+								listener.onFailure(unwrap((Throwable) args[1]));
+							else
+								listener.onSuccess(args[0]);
+							return null;
+						}
+					});
+			try {
+				WHEN_COMPLETE.invoke(future, consumer);
+			} catch (Exception e) {
+				listener.onFailure(unwrap(e));
+			}
+		} else {
+			listener.onSuccess(future);
+		}
+	}
+
+	private static Throwable unwrap(Throwable cause) {
+		while (cause.getCause() != null && (cause instanceof ExecutionException
+				|| cause instanceof java.lang.reflect.InvocationTargetException
+				|| (COMPLETION_EXCEPTION != null && COMPLETION_EXCEPTION.isInstance(cause))))
+			cause = cause.getCause();
+		return cause;
+	}
+
+	private static Object objectMethod(Object proxy, Method method, Object[] args) {
+		if ("equals".equals(method.getName()))
+			return proxy == args[0];
+		if ("hashCode".equals(method.getName()))
+			return System.identityHashCode(proxy);
+		return "AsyncResults$Listener@" + Integer.toHexString(System.identityHashCode(proxy));
+	}
+
+	private static Class<?> load(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	private static Method whenComplete() {
+		if (COMPLETION_STAGE == null || BI_CONSUMER == null)
+			return null;
+		try {
+			return COMPLETION_STAGE.getMethod("whenComplete", BI_CONSUMER);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
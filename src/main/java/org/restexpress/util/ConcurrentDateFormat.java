@@ -0,0 +1,145 @@
+package org.restexpress.util;
+
+import java.text.DateFormat;
+import java.text.FieldPosition;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * 线程安全的日期格式,每个线程一个SimpleDateFormat。
+ * jackson每次序列化/反序列化都会clone一次设置的DateFormat,用SimpleDateFormat的话每个带日期的请求
+ * 都要复制一份Calendar和NumberFormat;这里clone只创建一个新对象,和原来的共用每个线程的SimpleDateFormat,
+ * clone出来的实例修改时区或lenient(ObjectMapper.setTimeZone)以后才换成自己的
+ * @author hanst
+ *
+ */
+public class ConcurrentDateFormat extends DateFormat {
+	private static final long serialVersionUID = 1L;
+
+	private final String pattern;
+	private TimeZone timeZone;
+	private boolean lenient = true;
+	private transient ThreadLocal<SimpleDateFormat> formats;
+
+	/**
+	 * 使用默认时区,和new SimpleDateFormat(pattern)一样
+	 * @param pattern
+	 */
+	public ConcurrentDateFormat(String pattern) {
+		this(pattern, TimeZone.getDefault());
+	}
+
+	public ConcurrentDateFormat(String pattern, TimeZone timeZone) {
+		this.pattern = pattern;
+		this.timeZone = timeZone;
+		reset();
+	}
+
+	private ConcurrentDateFormat(ConcurrentDateFormat source) {
+		this.pattern = source.pattern;
+		this.timeZone = source.timeZone;
+		this.lenient = source.lenient;
+		this.formats = source.formats;
+		this.calendar = source.calendar;
+		this.numberFormat = source.numberFormat;
+	}
+
+	/**
+	 * 时区或lenient改变后,后面的格式化用新的SimpleDateFormat
+	 */
+	private void reset() {
+		//DateFormat自己的方法(getCalendar,getNumberFormat)用到,不参与格式化
+		SimpleDateFormat prototype = create();
+		this.calendar = prototype.getCalendar();
+		this.numberFormat = prototype.getNumberFormat();
+		this.formats = new ThreadLocal<SimpleDateFormat>() {
+			@Override
+			protected SimpleDateFormat initialValue() {
+				return create();
+			}
+		};
+	}
+
+	private SimpleDateFormat create() {
+		SimpleDateFormat format = new SimpleDateFormat(pattern);
+		format.setTimeZone(timeZone);
+		format.setLenient(lenient);
+		return format;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	@Override
+	public StringBuffer format(Date date, StringBuffer toAppendTo, FieldPosition fieldPosition) {
+		return formats.get().format(date, toAppendTo, fieldPosition);
+	}
+
+	@Override
+	public Date parse(String source, ParsePosition pos) {
+		return formats.get().parse(source, pos);
+	}
+
+	@Override
+	public TimeZone getTimeZone() {
+		return timeZone;
+	}
+
+	/**
+	 * 和SimpleDateFormat一样不能在格式化的同时修改,jackson只在clone出来的实例上设置
+	 */
+	@Override
+	public void setTimeZone(TimeZone zone) {
+		if (timeZone.hasSameRules(zone))
+			return;
+		timeZone = zone;
+		reset();
+	}
+
+	@Override
+	public boolean isLenient() {
+		return lenient;
+	}
+
+	@Override
+	public void setLenient(boolean lenient) {
+		if (this.lenient == lenient)
+			return;
+		this.lenient = lenient;
+		reset();
+	}
+
+	@Override
+	public Object clone() {
+		return new ConcurrentDateFormat(this);
+	}
+
+	private Object readResolve() {
+		ConcurrentDateFormat copy = new ConcurrentDateFormat(pattern, timeZone);
+		copy.setLenient(lenient);
+		return copy;
+	}
+
+	@Override
+	public int hashCode() {
+		return pattern.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ConcurrentDateFormat))
+			return false;
+		ConcurrentDateFormat other = (ConcurrentDateFormat) obj;
+		return pattern.equals(other.pattern) && timeZone.hasSameRules(other.timeZone) && lenient == other.lenient;
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+}
@@ -3,6 +3,7 @@ package org.restexpress.util;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Properties;
 
 import org.restexpress.common.exception.ConfigurationException;
@@ -46,7 +47,37 @@ public class Configuration extends Environment {
 	private long bothIdleTimeOut = 0;
 	private int ioRation = 50;
 	private int ioSubThreadCount = 0;
+	//epoll下用SO_REUSEPORT绑定多个侦听channel,每个在boss线程池的一个线程上accept,由内核分配连接
+	private int acceptorCount = 1;
 	private String requestToken = "ticket";
+	//action的调用方式，javassist为每个action生成调用类，reflect使用反射
+	private String actionInvoker = "javassist";
+	//DupRequestAspect幂等接口保存响应的堆外内存上限(字节)和条目上限
+	private long idempotentCacheMaxBytes = 64 * 1024 * 1024;
+	private int idempotentCacheMaxEntries = 10000;
+	//路由独占的线程池,名字=线程数:队列长度,以及路由路径前缀=线程池名字
+	private HashMap<String,String> bulkheads;
+	private LinkedHashMap<String,String> bulkheadRoutes;
+	//按路由统计请求数,状态码和延迟直方图(RouteMetricsObserver)
+	private boolean routeMetrics = true;
+	//prometheus格式指标的路径,在I/O线程里处理(MetricsHandler),为空时不提供
+	private String metricsPath = "/metrics";
+	//EventLoopMonitor在每个I/O线程和业务线程上探测排队延迟的间隔(毫秒),0不监控
+	private long eventLoopMonitorInterval = 1000;
+	//AdmissionController:请求在业务线程池队列里的等待时间目标(毫秒,0不限流)和观察窗口(毫秒)
+	private long loadShedTarget = 0;
+	private long loadShedInterval = 100;
+	//这些flag的路由不限流,以及只要等待超过目标时间就拒绝的低优先级flag
+	private String[] loadShedPriorityFlags = new String[0];
+	private String[] loadShedLowPriorityFlags = new String[0];
+	//客户端传递剩余处理时限(毫秒)的header,以及没有header和@RequestTimeout时的默认时限(毫秒,0不限制)
+	private String deadlineHeader = "X-Request-Timeout";
+	private long defaultRequestTimeout = 0;
+	//流式上传的路由(RouteBuilder.useStreamingMultipartUpload):超过uploadSpillThreshold字节的part写到uploadTempDir
+	//(为空时用java.io.tmpdir)下的临时文件,以及一个上传请求body的上限(字节,0不限制)
+	private long uploadSpillThreshold = 16384;
+	private String uploadTempDir = null;
+	private long maxUploadSize = 100 * 1024 * 1024;
 	
 	public HashMap<String, String> getSessionByPath() {
 		return sessionByPath;
@@ -107,6 +138,24 @@ public class Configuration extends Environment {
 		}
 		
 		
+		sessionStr = p.getProperty("bulkheads");
+		if (sessionStr != null){
+			bulkheads = new HashMap<>();
+			String[] str = sessionStr.split(";");
+			for(String s: str)
+				if (s.indexOf("=") > 0)
+					bulkheads.put(s.substring(0,s.indexOf("=")).trim(),s.substring(s.indexOf("=")+1).trim());
+		}
+		
+		sessionStr = p.getProperty("bulkheadRoutes");
+		if (sessionStr != null){
+			bulkheadRoutes = new LinkedHashMap<>();
+			String[] str = sessionStr.split(";");
+			for(String s: str)
+				if (s.indexOf("=") > 0)
+					bulkheadRoutes.put(s.substring(0,s.indexOf("=")).trim(),s.substring(s.indexOf("=")+1).trim());
+		}
+		
 		value = p.getProperty("permissionCheck");
 		if (value != null){
 			value = value.trim();
@@ -200,6 +249,16 @@ public class Configuration extends Environment {
 			}catch(Exception e){				
 			}
 		}
+		
+		value = p.getProperty("acceptorCount");
+		if (value != null){
+			value = value.trim();
+			try{
+				if (Integer.parseInt(value) > 0)
+					acceptorCount = Integer.parseInt(value);
+			}catch(Exception e){				
+			}
+		}
 			
 		value = p.getProperty("backLog");
 		if (value != null){
@@ -252,6 +311,121 @@ public class Configuration extends Environment {
 		if (value != null){
 			requestToken = value.trim();
 		}
+		
+		value = p.getProperty("actionInvoker");
+		if (value != null && value.trim().length() > 0){
+			actionInvoker = value.trim();
+		}
+		
+		value = p.getProperty("idempotentCacheMaxBytes");
+		if (value != null){
+			value = value.trim();
+			try{
+				if (Long.parseLong(value) > 0)
+					idempotentCacheMaxBytes = Long.parseLong(value);
+			}catch(Exception e){				
+			}
+		}
+		
+		value = p.getProperty("idempotentCacheMaxEntries");
+		if (value != null){
+			value = value.trim();
+			try{
+				if (Integer.parseInt(value) > 0)
+					idempotentCacheMaxEntries = Integer.parseInt(value);
+			}catch(Exception e){				
+			}
+		}
+				
+		value = p.getProperty("routeMetrics");
+		if (value != null){
+			if (value.trim().equals("true"))
+				routeMetrics = true;
+			else if (value.trim().equals("false"))
+				routeMetrics = false;
+		}
+		
+		value = p.getProperty("metricsPath");
+		if (value != null){
+			metricsPath = value.trim();
+		}
+		
+		value = p.getProperty("eventLoopMonitorInterval");
+		if (value != null){
+			value = value.trim();
+			try{
+				if (Long.parseLong(value) >= 0)
+					eventLoopMonitorInterval = Long.parseLong(value);
+			}catch(Exception e){				
+			}
+		}
+		
+		value = p.getProperty("loadShedTarget");
+		if (value != null){
+			value = value.trim();
+			try{
+				if (Long.parseLong(value) >= 0)
+					loadShedTarget = Long.parseLong(value);
+			}catch(Exception e){				
+			}
+		}
+		
+		value = p.getProperty("loadShedInterval");
+		if (value != null){
+			value = value.trim();
+			try{
+				if (Long.parseLong(value) > 0)
+					loadShedInterval = Long.parseLong(value);
+			}catch(Exception e){				
+			}
+		}
+		
+		value = p.getProperty("loadShedPriorityFlags");
+		if (value != null && value.trim().length() > 0){
+			loadShedPriorityFlags = value.trim().split("\\s*[,;]\\s*");
+		}
+		
+		value = p.getProperty("loadShedLowPriorityFlags");
+		if (value != null && value.trim().length() > 0){
+			loadShedLowPriorityFlags = value.trim().split("\\s*[,;]\\s*");
+		}
+		
+		value = p.getProperty("deadlineHeader");
+		if (value != null){
+			deadlineHeader = value.trim();
+		}
+		
+		value = p.getProperty("defaultRequestTimeout");
+		if (value != null){
+			value = value.trim();
+			try{
+				defaultRequestTimeout = Long.parseLong(value);
+			}catch(Exception e){				
+			}
+		}
+		
+		value = p.getProperty("uploadSpillThreshold");
+		if (value != null){
+			value = value.trim();
+			try{
+				uploadSpillThreshold = Long.parseLong(value);
+			}catch(Exception e){				
+			}
+		}
+		
+		value = p.getProperty("uploadTempDir");
+		if (value != null && value.trim().length() > 0){
+			uploadTempDir = value.trim();
+		}
+		
+		value = p.getProperty("maxUploadSize");
+		if (value != null){
+			value = value.trim();
+			try{
+				maxUploadSize = Long.parseLong(value);
+			}catch(Exception e){				
+			}
+		}
 				
 		springConfigFile = p.getProperty("springConfigFile");		 
 	}
@@ -360,6 +534,10 @@ public class Configuration extends Environment {
 		return ioSubThreadCount ;
 	}
 
+	public int getAcceptorCount() {
+		return acceptorCount;
+	}
+
 	public HashMap<String,String> getSessionByClass() {
 		return sessionByClass;
 	}
@@ -372,4 +550,72 @@ public class Configuration extends Environment {
 		this.requestToken = requestToken;
 	}
 
+	public String getActionInvoker() {
+		return actionInvoker;
+	}
+
+	public long getIdempotentCacheMaxBytes() {
+		return idempotentCacheMaxBytes;
+	}
+
+	public int getIdempotentCacheMaxEntries() {
+		return idempotentCacheMaxEntries;
+	}
+
+	public boolean isRouteMetrics() {
+		return routeMetrics;
+	}
+
+	public String getMetricsPath() {
+		return metricsPath;
+	}
+
+	public long getEventLoopMonitorInterval() {
+		return eventLoopMonitorInterval;
+	}
+
+	public long getLoadShedTarget() {
+		return loadShedTarget;
+	}
+
+	public long getLoadShedInterval() {
+		return loadShedInterval;
+	}
+
+	public String[] getLoadShedPriorityFlags() {
+		return loadShedPriorityFlags;
+	}
+
+	public String[] getLoadShedLowPriorityFlags() {
+		return loadShedLowPriorityFlags;
+	}
+
+	public String getDeadlineHeader() {
+		return deadlineHeader;
+	}
+
+	public long getDefaultRequestTimeout() {
+		return defaultRequestTimeout;
+	}
+
+	public long getUploadSpillThreshold() {
+		return uploadSpillThreshold;
+	}
+
+	public String getUploadTempDir() {
+		return uploadTempDir;
+	}
+
+	public long getMaxUploadSize() {
+		return maxUploadSize;
+	}
+
+	public HashMap<String,String> getBulkheads() {
+		return bulkheads;
+	}
+
+	public LinkedHashMap<String,String> getBulkheadRoutes() {
+		return bulkheadRoutes;
+	}
+
 }
@@ -0,0 +1,77 @@
+package org.restexpress.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 限制打印频率的错误日志:同一个key(例如路由+异常类型)每个间隔内最多打印一次堆栈,
+ * 间隔内省略的次数在下一次打印时带上。用在错误请求多的热路径上,代替e.printStackTrace(),
+ * 避免大量相同的堆栈拖慢业务线程和写满日志
+ * @author hanst
+ *
+ */
+public class RateLimitedLog {
+	//key太多时(例如key里带了客户端的输入)共用一个窗口
+	private static final int MAX_KEYS = 1024;
+	private static final String OVERFLOW_KEY = "*";
+
+	private final Logger logger;
+	private final long intervalNanos;
+	private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<String, Window>();
+
+	/**
+	 * @param type 日志的logger
+	 * @param intervalMillis 同一个key两次打印的最小间隔
+	 */
+	public RateLimitedLog(Class<?> type, long intervalMillis) {
+		this.logger = LoggerFactory.getLogger(type);
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+	}
+
+	public void error(String key, String message, Throwable t) {
+		if (!logger.isErrorEnabled())
+			return;
+		long suppressed = acquire(key);
+		if (suppressed < 0)
+			return;
+		if (suppressed == 0)
+			logger.error(message, t);
+		else
+			logger.error(message + " (省略了" + suppressed + "次相同的错误)", t);
+	}
+
+	/**
+	 * @return 可以打印时返回上次打印后省略的次数,否则为-1
+	 */
+	private long acquire(String key) {
+		Window window = window(key);
+		long now = System.nanoTime();
+		long last = window.last.get();
+		if (last != 0 && now - last < intervalNanos || !window.last.compareAndSet(last, now == 0 ? 1 : now)) {
+			window.suppressed.incrementAndGet();
+			return -1;
+		}
+		return window.suppressed.getAndSet(0);
+	}
+
+	private Window window(String key) {
+		Window window = windows.get(key);
+		if (window != null)
+			return window;
+		if (windows.size() >= MAX_KEYS)
+			key = OVERFLOW_KEY;
+		window = new Window();
+		Window exists = windows.putIfAbsent(key, window);
+		return exists == null ? window : exists;
+	}
+
+	private static class Window {
+		final AtomicLong last = new AtomicLong();
+		final AtomicLong suppressed = new AtomicLong();
+	}
+}
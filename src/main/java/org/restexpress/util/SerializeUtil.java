@@ -1,47 +1,76 @@
 package org.restexpress.util;
 
-import java.text.SimpleDateFormat;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+
+import java.io.IOException;
 import java.util.TimeZone;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+/**
+ * 注入参数用的json绑定,全局共享一个配置好的ObjectMapper(创建后不再修改配置,是线程安全的),
+ * 反序列化使用按JavaType缓存的ObjectReader,action的参数绑定计划编译的时候就预先创建好
+ */
 public class SerializeUtil {
-	private static String DATE_TIME_PATTERN2 = "yyyy-MM-dd HH:mm:ss";
-	private static SimpleDateFormat dateTimeSdf2 = new SimpleDateFormat(DATE_TIME_PATTERN2);
-	private static final Logger logger = LoggerFactory
-			 .getLogger(SerializeUtil.class); 
-	 
+	private static final String DATE_TIME_PATTERN2 = "yyyy-MM-dd HH:mm:ss";
+	//注意日期格式序列化和反序列化的时候yyyy-MM-dd HH:mm:ss,如果不同，请创建自己的objectMapper
+	private static final ObjectMapper objectMapper = createObjectMapper();
+	private static final ConcurrentMap<JavaType, ObjectReader> readers = new ConcurrentHashMap<JavaType, ObjectReader>();
+
+	/**
+	 * 共享的ObjectMapper,不要修改它的配置
+	 * @return
+	 */
 	public static ObjectMapper get(){
-		return getObjectMapper().get(); 
+		return objectMapper; 
+	}
+
+	/**
+	 * 类型对应的ObjectReader,第一次获取的时候创建并解析好反序列化器
+	 * @param type
+	 * @return
+	 */
+	public static ObjectReader reader(JavaType type){
+		ObjectReader reader = readers.get(type);
+		if (reader == null){
+			reader = objectMapper.readerFor(type);
+			ObjectReader exists = readers.putIfAbsent(type, reader);
+			if (exists != null)
+				reader = exists;
+		}
+		return reader;
+	}
+
+	/**
+	 * 直接从请求的body反序列化,堆内存的ByteBuf直接解析底层数组,不复制也不改变readerIndex
+	 * @param body
+	 * @param type
+	 * @return
+	 * @throws IOException
+	 */
+	public static <T> T readValue(ByteBuf body, JavaType type) throws IOException{
+		ObjectReader reader = reader(type);
+		if (body.hasArray())
+			return reader.readValue(body.array(), body.arrayOffset() + body.readerIndex(), body.readableBytes());
+		return reader.readValue(new ByteBufInputStream(body.duplicate()));
+	}
+
+	/**
+	 * 默认使用yyyy-MM-dd HH:mm:ss序列化和反序列化日期
+	 * @return
+	 */
+	private static ObjectMapper createObjectMapper(){
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		//因为objectmapper默认是使用UTC时间，但是我们创建的时间是使用默认时区
+		objectMapper.setTimeZone(TimeZone.getDefault());
+		objectMapper.setDateFormat(new ConcurrentDateFormat(DATE_TIME_PATTERN2, TimeZone.getDefault()));
+		return objectMapper;
 	}
-	
-	//注意日期格式序列化和反序列化的时候yyyy-MM-dd HH:mm:ss,如果不同，请创建自己的objectMapper
-    private static ThreadLocal<ObjectMapper> getObjectMapper(){  
-    	return	new ThreadLocal<ObjectMapper>(){
-    		@Override 
-    		protected ObjectMapper initialValue() {
-    			return createObjectMapper();
-    		}
-    	};
-    }
-    
-    private static ObjectMapper createObjectMapper(SimpleDateFormat des,SimpleDateFormat ser){
-    	ObjectMapper objectMapper = new ObjectMapper();
-    	objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-    	objectMapper.setDateFormat(dateTimeSdf2);
-    	//因为objectmapper默认是使用UTC时间，但是我们创建的时间是使用默认时区
-    	objectMapper.setTimeZone(TimeZone.getDefault());
-   	 	return objectMapper;
-    }
-    
-    /**
-     * 默认使用yyyy-MM-dd HH:mm:ss序列化和反序列化日期
-     * @return
-     */
-    private static ObjectMapper createObjectMapper(){    	 
-   	 	return createObjectMapper(dateTimeSdf2,dateTimeSdf2);
-    }
-    
 }